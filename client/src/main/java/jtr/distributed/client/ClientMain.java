@@ -8,11 +8,15 @@
 package jtr.distributed.client;
 
 import com.esotericsoftware.minlog.Log;
-import jtr.distributed.client.john.JTRunner;
+import jtr.distributed.client.engine.CrackingEngine;
+import jtr.distributed.client.engine.CrackingRun;
+import jtr.distributed.client.engine.SimulatedEngine;
+import jtr.distributed.client.john.JohnEngine;
 import jtr.distributed.core.LocalTimeLogger;
 import jtr.distributed.core.events.*;
-import jtr.distributed.core.wordlist.ExampleWordlistGenerator;
+import jtr.distributed.core.wordlist.GeneratorSpec;
 import jtr.distributed.core.wordlist.WordlistGenerator;
+import jtr.distributed.core.wordlist.WordlistGeneratorRegistry;
 import lombok.SneakyThrows;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
@@ -20,6 +24,7 @@ import org.glassfish.jersey.jackson.JacksonFeature;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.*;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.xml.bind.DatatypeConverter;
@@ -30,43 +35,75 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientMain {
 
     private static final int TIMEOUT = 5 * 1000; // ms
     private static final int ERROR_RESTART_DELAY = 10 * 1000; // ms
+    // The latest status of every device is sent to the server this often, in one request in multi-device mode
+    private static final int STATUS_INTERVAL = 2 * 1000; // ms
+    // Threads for the assignment and exit requests to the server, shared by all devices. Statuses are sent by a thread
+    // of their own, so that a slow request cannot delay them past the server's timeout.
+    private static final int THREADS = 2;
     private static final int LOG_LEVEL = Log.LEVEL_DEBUG;
+    // Passed instead of the John path to crack with a SimulatedEngine
+    private static final String SIMULATED_ENGINE = "simulated";
 
     @SneakyThrows
     public static void main(String[] args) {
         Log.set(LOG_LEVEL);
         Log.setLogger(new LocalTimeLogger());
 
-        if(args.length < 5) {
+        boolean simulated = args.length >= 3 && args[2].startsWith(SIMULATED_ENGINE);
+        if(args.length < (simulated ? 4 : 5)) {
             Log.error("Usage: <clientId> <apikey> <johnPath> <devices> <hashfile> <john_extra_args ..>");
+            Log.error("   or: <clientId> <apikey> " + SIMULATED_ENGINE + "[:<options>] <devices>");
+            Log.error("<devices> is a single device, a comma-separated list, or \"all\". With more than one device, "
+                    + "each device is a separate worker named <clientId>-gpu<device>");
+            Log.error("The simulated engine cracks without John, <options> are e.g. "
+                    + "rate=1000000,jitter=0.1,crash=0.01,password=secret,seed=1,devices=2");
             System.exit(1);
             return;
         }
 
         String clientId = args[0];
         String apiKey = args[1];
-        File johnPath = new File(args[2]);
         String devices = args[3];
-        File hashfilePath = new File(args[4]);
-        String[] johnExtraArgs = Arrays.copyOfRange(args, 5, args.length);
-        if(!johnPath.isDirectory()) {
-            Log.error("John path \"" + johnPath.getAbsolutePath() + "\" is not a directory");
-            System.exit(1);
-            return;
-        }
-        if(!hashfilePath.isFile()) {
-            Log.error("Hashfile path \"" + hashfilePath.getAbsolutePath() + "\" is not a file");
-            System.exit(1);
-            return;
+        CrackingEngine engine;
+        if(simulated) {
+            String options = args[2].substring(SIMULATED_ENGINE.length());
+            try {
+                engine = SimulatedEngine.parse(options.startsWith(":") ? options.substring(1) : options);
+            } catch (IllegalArgumentException e) {
+                Log.error("Invalid options of the simulated engine: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            Log.info(LOG_MAIN, "Using " + engine);
+        } else {
+            File johnPath = new File(args[2]);
+            File hashfilePath = new File(args[4]);
+            String[] johnExtraArgs = Arrays.copyOfRange(args, 5, args.length);
+            if(!johnPath.isDirectory()) {
+                Log.error("John path \"" + johnPath.getAbsolutePath() + "\" is not a directory");
+                System.exit(1);
+                return;
+            }
+            if(!hashfilePath.isFile()) {
+                Log.error("Hashfile path \"" + hashfilePath.getAbsolutePath() + "\" is not a file");
+                System.exit(1);
+                return;
+            }
+            engine = new JohnEngine(johnPath, hashfilePath, johnExtraArgs);
         }
 
-        new ClientMain(clientId, apiKey, johnPath, devices, hashfilePath, johnExtraArgs);
+        new ClientMain(clientId, apiKey, engine, devices);
     }
 
     private final ClientConfig webClientConfig = new ClientConfig();
@@ -74,91 +111,232 @@ public class ClientMain {
 
     private final String apiUrl;
     private final String apiKey;
-    private final String clientId;
+    private final CrackingEngine engine;
+    // Shared by all devices, so that they share one connection pool
+    private final Client webClient;
+    // Runs the requests to the server except for statuses. The threads are not daemons, they keep the client running.
+    private final ScheduledExecutorService executor;
+    // Sends the statuses every STATUS_INTERVAL
+    private final ScheduledExecutorService statusExecutor;
+    // Creates the generators, which can take minutes if an index has to be built
+    private final ExecutorService generatorExecutor;
+    // The generator of the previous assignment, reused as long as the server sends the same spec
+    private GeneratorSpec cachedGeneratorSpec = null;
+    private WordlistGenerator cachedGenerator = null;
+    // True if statuses of all workers are sent in one request
+    private final boolean batchStatuses;
+    private final Map<String, DeviceWorker> workers = new LinkedHashMap<>();
 
-    @SneakyThrows(InterruptedException.class)
-    public ClientMain(String clientId, String apiKey, File johnPath, String devices, File hashfilePath,
-                      String[] johnExtraArgs) {
-        this.clientId = clientId;
+    public ClientMain(String clientId, String apiKey, CrackingEngine engine, String devices) throws IOException {
         if("local".equals(apiKey)) {
             this.apiUrl = "http://localhost:45678/jtr-distributed/api/";
         } else {
             this.apiUrl = "https://example.com/jtr-distributed/api/";
         }
         this.apiKey = apiKey;
+        this.engine = engine;
+        this.webClient = ClientBuilder.newClient(webClientConfig)
+                .register(JacksonFeature.class)
+                .register(JacksonObjectMapperProvider.class);
+        webClient.property(ClientProperties.CONNECT_TIMEOUT, TIMEOUT);
+        webClient.property(ClientProperties.READ_TIMEOUT, TIMEOUT);
+
+        List<String> deviceList = "all".equals(devices) ? engine.listDevices()
+                : Arrays.asList(devices.split(","));
+        // A single device keeps the client ID, and reports its status on its own
+        this.batchStatuses = deviceList.size() > 1 || "all".equals(devices);
+        Log.info(LOG_MAIN, "Running " + deviceList.size() + " device(s): " + deviceList);
+        for(String device : deviceList) {
+            DeviceWorker worker = new DeviceWorker(batchStatuses ? clientId + "-gpu" + device : clientId, device);
+            workers.put(worker.workerId, worker);
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("client-" + threadNumber.incrementAndGet());
+            return thread;
+        });
+        this.statusExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("client-status");
+            return thread;
+        });
+        this.generatorExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("client-generator");
+            return thread;
+        });
+        for(DeviceWorker worker : workers.values()) {
+            executor.execute(worker::startAssignment);
+        }
+        statusExecutor.scheduleWithFixedDelay(this::sendStatuses, STATUS_INTERVAL, STATUS_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs assignments on one device, as a separate worker from the server's point of view. A worker has no thread of
+     * its own: its steps run on the executor, except for creating the generator, and the next step is scheduled when
+     * the engine finishes the range.
+     */
+    private class DeviceWorker {
+        private final String workerId, device;
+        private volatile CrackingRun runner = null;
+
+        DeviceWorker(String workerId, String device) {
+            this.workerId = workerId;
+            this.device = device;
+        }
 
-        while(true) {
-            JTRunner runner = null;
+        void startAssignment() {
+            final WordlistAssignment assignment;
             try {
-                Log.info(LOG_MAIN, "Retrieving assignment...");
-                WordlistAssignment assignment = getAssignment();
-                Log.info(LOG_MAIN,"Starting JTR...");
-                WordlistGenerator wg = new ExampleWordlistGenerator();
-                runner = new JTRunner(johnPath, devices, hashfilePath, wg, assignment.getBeginIndex(),
-                                                assignment.getEndIndex(), johnExtraArgs);
-                Log.info(LOG_MAIN,"Waiting for events...");
-                while (true) {
-                    JTEvent event = runner.takeNextEvent();
-                    Log.trace(LOG_MAIN, "Got Event: " + event.toString());
-                    if(event instanceof StatusEvent){
-                        updateStatus((StatusEvent) event);
-                    } else if(event instanceof ExitEvent) {
-                        if(event instanceof PasswordNotFoundEvent) {
-                            updatePasswordNotFound((PasswordNotFoundEvent) event);
-                        } else if(event instanceof PasswordFoundEvent) {
-                            updatePasswordFound((PasswordFoundEvent) event);
-                        } else if(event instanceof ErrorEvent) {
-                            ErrorEvent errorEvent = (ErrorEvent) event;
-                            updateError(errorEvent);
-                            throw new IOException("ErrorEvent: " + errorEvent.getMessage(), errorEvent.getException());
-                        }
-                        Log.trace(LOG_MAIN, "|| EventBus complete ||");
-                        break;
-                    }
+                Log.info(workerId, "Retrieving assignment...");
+                assignment = getAssignment(workerId);
+            } catch (IOException | ProcessingException e) {
+                fail(e);
+                return;
+            }
+            generatorExecutor.execute(() -> {
+                try {
+                    WordlistGenerator wg = getGenerator(assignment.getGenerator());
+                    executor.execute(() -> startEngine(assignment, wg));
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
                 }
-                Log.info(LOG_MAIN,"Assignment done, killing process...");
+            });
+        }
+
+        private void startEngine(WordlistAssignment assignment, WordlistGenerator wg) {
+            try {
+                Log.info(workerId, "Starting engine...");
+                CrackingRun runner = engine.start(device, wg, assignment.getBeginIndex(), assignment.getEndIndex());
+                this.runner = runner;
+                Log.info(workerId, "Waiting for events...");
+                runner.getExitFuture().thenAccept(event -> executor.execute(() -> finishAssignment(runner, event)));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void finishAssignment(CrackingRun runner, ExitEvent event) {
+            Log.trace(workerId, "Got Event: " + event.toString());
+            try {
+                if(event instanceof PasswordNotFoundEvent) {
+                    updatePasswordNotFound(workerId, (PasswordNotFoundEvent) event);
+                } else if(event instanceof PasswordFoundEvent) {
+                    updatePasswordFound(workerId, (PasswordFoundEvent) event);
+                } else if(event instanceof ErrorEvent) {
+                    ErrorEvent errorEvent = (ErrorEvent) event;
+                    updateError(workerId, errorEvent);
+                    throw new IOException("ErrorEvent: " + errorEvent.getMessage(), errorEvent.getException());
+                }
+                Log.info(workerId, "Assignment done, killing process...");
                 runner.kill();
+                startAssignment();
             } catch (IOException | ProcessingException e) {
-                if(runner != null) {
-                    runner.kill();
-                }
-                Log.warn("Client failed due to Exception. ", e);
-                Log.info("Restarting in " + ClientMain.ERROR_RESTART_DELAY + " ms");
-                Thread.sleep(ClientMain.ERROR_RESTART_DELAY);
+                fail(e);
+            }
+        }
+
+        private void fail(Exception e) {
+            CrackingRun runner = this.runner;
+            if(runner != null) {
+                runner.kill();
+            }
+            Log.warn(workerId, "Client failed due to Exception. ", e);
+            Log.info(workerId, "Restarting in " + ClientMain.ERROR_RESTART_DELAY + " ms");
+            executor.schedule(this::startAssignment, ERROR_RESTART_DELAY, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Stops the given assignment if it is still running, the worker then reports an error and restarts.
+         */
+        void restart(CrackingRun runner) {
+            if(runner == this.runner) {
+                runner.kill();
+            }
+        }
+    }
+
+    private synchronized WordlistGenerator getGenerator(GeneratorSpec spec) throws IOException {
+        if(spec == null) { throw new IOException("Assignment does not specify a wordlist generator"); }
+        if(!spec.equals(cachedGeneratorSpec)) {
+            Log.info(LOG_MAIN, "Creating wordlist generator " + spec);
+            try {
+                cachedGenerator = WordlistGeneratorRegistry.getDefault().create(spec);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid wordlist generator " + spec, e);
             }
+            cachedGeneratorSpec = spec;
         }
+        return cachedGenerator;
     }
 
-    private Invocation.Builder createWebRequest(String path) {
+    private Invocation.Builder createWebRequest(String path, String clientId) {
         /*JacksonJsonProvider jackson_json_provider = new JacksonJaxbJsonProvider();
         ObjectMapper objectMapper = jackson_json_provider.locateMapper(Object.class, MediaType.APPLICATION_JSON_TYPE);
         objectMapper.registerModule(new JavaTimeModule());*/
 
-        Client client = ClientBuilder.newClient(webClientConfig)
-                .register(JacksonFeature.class)
-                .register(JacksonObjectMapperProvider.class);
-        client.property(ClientProperties.CONNECT_TIMEOUT, TIMEOUT);
-        client.property(ClientProperties.READ_TIMEOUT, TIMEOUT);
-        return client.target(apiUrl)
+        Invocation.Builder request = webClient.target(apiUrl)
                 .path(path)
                 .request()
                 .accept(MediaType.APPLICATION_JSON)
-                .header("clientId", clientId)
                 .header("Authorization", "BASIC " +
                         DatatypeConverter.printBase64Binary(("apiuser:" + apiKey).getBytes(StandardCharsets.UTF_8)));
+        return clientId != null ? request.header("clientId", clientId) : request;
     }
 
-    private void updateStatus(StatusEvent event) throws IOException {
-        checkResponse(createWebRequest("/event/updateStatus")
-                .post(Entity.json(event)));
+    /**
+     * Sends the latest status of each running assignment. Workers whose status the server rejected are restarted,
+     * as is a worker whose status update fails in single-device mode.
+     */
+    private void sendStatuses() {
+        Map<String, StatusEvent> statuses = new LinkedHashMap<>();
+        Map<String, CrackingRun> runners = new HashMap<>();
+        for(DeviceWorker worker : workers.values()) {
+            CrackingRun runner = worker.runner;
+            StatusEvent status = runner != null ? runner.takeLatestStatus() : null;
+            // A status that is still pending when the assignment ended would be rejected
+            if(status != null && !runner.getExitFuture().isDone()) {
+                statuses.put(worker.workerId, status);
+                runners.put(worker.workerId, runner);
+            }
+        }
+        if(statuses.isEmpty()) { return; }
+        try {
+            if(!batchStatuses) {
+                Map.Entry<String, StatusEvent> status = statuses.entrySet().iterator().next();
+                try {
+                    post("/event/updateStatus", status.getKey(), Entity.json(status.getValue()));
+                } catch (UnsuccessfulResponseException e) {
+                    Log.warn(status.getKey(), "Server rejected status, restarting", e);
+                    workers.get(status.getKey()).restart(runners.get(status.getKey()));
+                }
+                return;
+            }
+            final List<String> rejectedStatuses;
+            try(Response response = createWebRequest("/event/updateStatuses", null).post(Entity.json(statuses))) {
+                checkResponse(response);
+                rejectedStatuses = response.readEntity(new GenericType<List<String>>() {});
+            }
+            for(String rejected : rejectedStatuses) {
+                Log.warn(rejected, "Server rejected status, restarting");
+                DeviceWorker worker = workers.get(rejected);
+                if(worker != null) { worker.restart(runners.get(rejected)); }
+            }
+        } catch (IOException | ProcessingException e) {
+            Log.warn(LOG_MAIN, "Could not send statuses of " + statuses.keySet(), e);
+        }
     }
 
-    private void updateError(ErrorEvent event) throws IOException {
-        checkResponse(createWebRequest("/event/exit/error")
-                .post(Entity.json(event)));
+    private void updateError(String clientId, ErrorEvent event) throws IOException {
+        post("/event/exit/error", clientId, Entity.json(event));
     }
 
-    private void updatePasswordFound(PasswordFoundEvent event) throws IOException {
+    private void updatePasswordFound(String clientId, PasswordFoundEvent event) throws IOException {
         final String password = event.getPassword();
         new Thread(new Runnable() {
             @Override
@@ -173,13 +351,20 @@ public class ClientMain {
                 }
             }
         }).start();
-        checkResponse(createWebRequest("/event/exit/found")
-                .post(Entity.json(event)));
+        post("/event/exit/found", clientId, Entity.json(event));
     }
 
-    private void updatePasswordNotFound(PasswordNotFoundEvent event) throws IOException {
-        checkResponse(createWebRequest("/event/exit/notFound")
-                .post(Entity.json(event)));
+    private void updatePasswordNotFound(String clientId, PasswordNotFoundEvent event) throws IOException {
+        post("/event/exit/notFound", clientId, Entity.json(event));
+    }
+
+    /**
+     * Posts the entity and checks the response. The response is closed, so that its connection can be reused.
+     */
+    private void post(String path, String clientId, Entity<?> entity) throws IOException {
+        try(Response response = createWebRequest(path, clientId).post(entity)) {
+            checkResponse(response);
+        }
     }
 
     private void checkResponse(Response response) throws IOException {
@@ -188,10 +373,11 @@ public class ClientMain {
         }
     }
 
-    private WordlistAssignment getAssignment() throws IOException {
-        Response response = createWebRequest("/getTask").post(Entity.text(""));
-        checkResponse(response);
-        return response.readEntity(WordlistAssignment.class);
+    private WordlistAssignment getAssignment(String clientId) throws IOException {
+        try(Response response = createWebRequest("/getTask", clientId).post(Entity.text(""))) {
+            checkResponse(response);
+            return response.readEntity(WordlistAssignment.class);
+        }
     }
 
     public static class UnsuccessfulResponseException extends IOException {
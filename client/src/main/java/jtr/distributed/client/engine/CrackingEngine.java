@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.engine;
+
+import jtr.distributed.core.wordlist.WordlistGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Cracks ranges of a wordlist on the devices of this machine. ClientMain only talks to this interface, so that the
+ * client can run on John or on a simulated engine.
+ */
+public interface CrackingEngine {
+    /**
+     * Returns the devices that can be passed to start when the client is told to use "all" devices.
+     */
+    List<String> listDevices() throws IOException;
+
+    /**
+     * Starts cracking the words [begin, end) of the given generator on the given device.
+     */
+    CrackingRun start(String device, WordlistGenerator wg, long begin, long end) throws IOException;
+}
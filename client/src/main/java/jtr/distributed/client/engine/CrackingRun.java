@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.engine;
+
+import jtr.distributed.core.events.ExitEvent;
+import jtr.distributed.core.events.StatusEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One range being cracked by a CrackingEngine.
+ */
+public interface CrackingRun {
+    /**
+     * Returns the most recent status that was not taken yet, or null if there is none.
+     */
+    StatusEvent takeLatestStatus();
+
+    /**
+     * Completes with a PasswordFoundEvent, PasswordNotFoundEvent or ErrorEvent when the range is over.
+     */
+    CompletableFuture<ExitEvent> getExitFuture();
+
+    /**
+     * Stops cracking. If the exit future is not completed yet, it is completed with an ErrorEvent.
+     */
+    void kill();
+}
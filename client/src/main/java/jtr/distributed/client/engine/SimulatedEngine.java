@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.engine;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.core.events.*;
+import jtr.distributed.core.wordlist.WordlistGenerator;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cracks in the JVM instead of running John, so that the client and the server can be exercised without GPUs. The
+ * words are really generated and checked against a planted password, at most at the configured rate, so a slow
+ * generator limits the simulated hashrate like it would limit John. Jitter and crashes are drawn from a random
+ * generator seeded with the seed, the device and the beginning of the range, so a run is repeatable.
+ *
+ * Options are given like "rate=1000000,jitter=0.1,crash=0.01,password=secret,seed=1,devices=2", all are optional.
+ */
+@Getter
+@ToString
+public class SimulatedEngine implements CrackingEngine {
+    // The words of one tick are generated at once
+    private static final long TICK = 100; // ms
+    // A status is reported this often, like John's --progress-every
+    private static final long STATUS_INTERVAL = 4 * 1000; // ms
+    private static final String GPU_MODEL = "Simulated GPU";
+    private static final String LOG_SIM = "sim";
+
+    private final long guessesPerSecond;
+    // The rate of each tick varies uniformly by up to this fraction
+    private final double jitter;
+    // Probability of crashing at each status report
+    private final double crashProbability;
+    // Null if the password is never found
+    private final String plantedPassword;
+    private final long seed;
+    private final int devices;
+    // Set once the planted password was found. Like John with its pot file, the engine has nothing left to crack then.
+    @ToString.Exclude
+    private volatile boolean cracked = false;
+
+    public SimulatedEngine(long guessesPerSecond, double jitter, double crashProbability, String plantedPassword,
+                           long seed, int devices) {
+        if(guessesPerSecond <= 0) { throw new IllegalArgumentException("Rate must be positive"); }
+        if(jitter < 0 || jitter > 1) { throw new IllegalArgumentException("Jitter must be between 0 and 1"); }
+        if(crashProbability < 0 || crashProbability > 1) {
+            throw new IllegalArgumentException("Crash probability must be between 0 and 1");
+        }
+        if(devices <= 0) { throw new IllegalArgumentException("Number of devices must be positive"); }
+        this.guessesPerSecond = guessesPerSecond;
+        this.jitter = jitter;
+        this.crashProbability = crashProbability;
+        this.plantedPassword = plantedPassword;
+        this.seed = seed;
+        this.devices = devices;
+    }
+
+    /**
+     * Creates an engine from options like "rate=1000000,password=secret", see the class documentation.
+     */
+    public static SimulatedEngine parse(String options) {
+        Map<String, String> values = new HashMap<>();
+        for(String option : options.split(",")) {
+            if(option.isEmpty()) { continue; }
+            int separator = option.indexOf('=');
+            if(separator < 0) { throw new IllegalArgumentException("Option " + option + " has no value"); }
+            values.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+        SimulatedEngine engine = new SimulatedEngine(
+                Long.parseLong(values.getOrDefault("rate", "1000000")),
+                Double.parseDouble(values.getOrDefault("jitter", "0")),
+                Double.parseDouble(values.getOrDefault("crash", "0")),
+                values.get("password"),
+                Long.parseLong(values.getOrDefault("seed", "0")),
+                Integer.parseInt(values.getOrDefault("devices", "1")));
+        values.keySet().removeAll(Arrays.asList("rate", "jitter", "crash", "password", "seed", "devices"));
+        if(!values.isEmpty()) { throw new IllegalArgumentException("Unknown options " + values.keySet()); }
+        return engine;
+    }
+
+    @Override
+    public List<String> listDevices() {
+        List<String> list = new ArrayList<>();
+        for(int device = 1; device <= devices; device++) { list.add(String.valueOf(device)); }
+        return list;
+    }
+
+    @Override
+    public CrackingRun start(String device, WordlistGenerator wg, long begin, long end) {
+        Run run = new Run(device, wg, begin, end);
+        Thread thread = new Thread(run);
+        thread.setDaemon(true);
+        thread.setName("sim-" + device);
+        run.thread = thread;
+        thread.start();
+        return run;
+    }
+
+    private class Run implements CrackingRun, Runnable {
+        private final WordlistGenerator wg;
+        private final long begin, end;
+        private final Random random;
+        private final CandidateSink sink;
+        private final AtomicReference<StatusEvent> latestStatus = new AtomicReference<>();
+        private final CompletableFuture<ExitEvent> exit = new CompletableFuture<>();
+        private volatile Thread thread;
+
+        Run(String device, WordlistGenerator wg, long begin, long end) {
+            this.wg = wg;
+            this.begin = begin;
+            this.end = end;
+            this.random = new Random(seed * 31 + device.hashCode() * 1000003L + begin);
+            this.sink = new CandidateSink(plantedPassword);
+        }
+
+        @Override
+        public void run() {
+            if(cracked) {
+                complete(new ErrorEvent("No password hashes left to crack",
+                        new IllegalStateException("Planted password already found")));
+                return;
+            }
+            try {
+                long position = begin, statusPosition = begin;
+                long tickStart = System.nanoTime(), statusTime = tickStart;
+                while(position < end && !exit.isDone()) {
+                    double factor = 1 + jitter * (2 * random.nextDouble() - 1);
+                    long words = Math.max(1, Math.round(guessesPerSecond * factor * TICK / 1000));
+                    long next = Math.min(end, position + words);
+                    wg.outputWords(position, next, sink);
+                    if(sink.isFound()) {
+                        cracked = true;
+                        Log.info(LOG_SIM, "Found planted password \"" + plantedPassword + "\"");
+                        complete(new PasswordFoundEvent(plantedPassword));
+                        return;
+                    }
+                    position = next;
+
+                    long now = System.nanoTime();
+                    if(now - statusTime >= TimeUnit.MILLISECONDS.toNanos(STATUS_INTERVAL)) {
+                        if(random.nextDouble() < crashProbability) {
+                            complete(new ErrorEvent("Simulated crash", new IllegalStateException("Simulated crash")));
+                            return;
+                        }
+                        long rate = (position - statusPosition) * TimeUnit.SECONDS.toNanos(1) / (now - statusTime);
+                        latestStatus.set(new StatusEvent(rate, begin, position - 1, end, sink.getLastWord(),
+                                GPU_MODEL, Instant.now(), null));
+                        statusTime = now;
+                        statusPosition = position;
+                    }
+
+                    // A generator that is slower than the rate is not given the chance to catch up, as with John
+                    tickStart += TimeUnit.MILLISECONDS.toNanos(TICK);
+                    long sleep = tickStart - System.nanoTime();
+                    if(sleep > 0) {
+                        TimeUnit.NANOSECONDS.sleep(sleep);
+                    } else {
+                        tickStart = System.nanoTime();
+                    }
+                }
+                complete(new PasswordNotFoundEvent(begin, end));
+            } catch (InterruptedException e) {
+                complete(new ErrorEvent("Killed", e));
+            } catch (IOException | RuntimeException e) {
+                complete(new ErrorEvent("Simulation failed", e));
+            }
+        }
+
+        private void complete(ExitEvent event) {
+            if(!exit.complete(event)) {
+                Log.debug(LOG_SIM, "Ignoring ExitEvent " + event + " due to previously posted one");
+            }
+        }
+
+        @Override
+        public StatusEvent takeLatestStatus() {
+            return latestStatus.getAndSet(null);
+        }
+
+        @Override
+        public CompletableFuture<ExitEvent> getExitFuture() {
+            return exit;
+        }
+
+        @Override
+        public void kill() {
+            complete(new ErrorEvent("Killed", new IllegalStateException("Killed")));
+            Thread thread = this.thread;
+            if(thread != null) { thread.interrupt(); }
+        }
+    }
+
+    /**
+     * Discards the generated words, remembering the last one and whether the planted password was among them.
+     */
+    private static class CandidateSink extends OutputStream {
+        private final byte[] planted;
+        private byte[] word = new byte[64], lastWord = new byte[64];
+        private int length = 0, lastLength = 0;
+        @Getter
+        private boolean found = false;
+
+        CandidateSink(String plantedPassword) {
+            this.planted = plantedPassword != null ? plantedPassword.getBytes(StandardCharsets.UTF_8) : null;
+        }
+
+        @Override
+        public void write(int b) {
+            if(b == '\n') {
+                found |= isPlanted();
+                byte[] swap = lastWord;
+                lastWord = word;
+                lastLength = length;
+                word = swap;
+                length = 0;
+                return;
+            }
+            if(length == word.length) { word = Arrays.copyOf(word, word.length * 2); }
+            word[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for(int i = off; i < off + len; i++) { write(b[i]); }
+        }
+
+        private boolean isPlanted() {
+            if(planted == null || length != planted.length) { return false; }
+            for(int i = 0; i < length; i++) {
+                if(word[i] != planted[i]) { return false; }
+            }
+            return true;
+        }
+
+        String getLastWord() {
+            return new String(lastWord, 0, lastLength, StandardCharsets.UTF_8);
+        }
+    }
+}
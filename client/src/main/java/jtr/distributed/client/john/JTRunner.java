@@ -8,68 +8,177 @@
 package jtr.distributed.client.john;
 
 import com.esotericsoftware.minlog.Log;
+import jtr.distributed.client.engine.CrackingRun;
 import jtr.distributed.core.wordlist.WordlistGenerator;
 import jtr.distributed.core.events.*;
-import lombok.Getter;
-import lombok.SneakyThrows;
-import lombok.Synchronized;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class JTRunner {
+/**
+ * Runs John on an assignment. The output of John is read by the ProcessIoLoop, so a JTRunner needs no threads of its
+ * own. Each piece is prepared (named pipe or chunk file, and the John process) on the delivery executor of the engine,
+ * which also feeds the words to John if John does not generate them itself, so that this blocking work does not hold
+ * up the output of other runs. Only the latest status is kept, the outcome is reported once through the exit future.
+ */
+public class JTRunner implements CrackingRun {
     private static final String[] args = new String[]{
-            "--stdin", "--progress-every=4", "--format=ZIP-opencl",
+            "--progress-every=4",
     };
-
-    private static final Pattern STATUSLINE_PATTERN = Pattern.compile(
-            "^[0-9]+g.+ ([0-9]+[A-Z]?)p/s.* ([^ ]+)\\.\\.[^ ]+$");
-    private static final Pattern PASSWORD_FOUND_PATTERN = Pattern.compile(
-            "^([^ ]+) \\([^()]+\\)$");
-    private static final Pattern GPU_MODEL_PATTERN = Pattern.compile(
-            "^Device [^: ]+: (.+)$");
+    // Format used unless the extra arguments select another one with --format
+    private static final JohnFormatProfile DEFAULT_PROFILE = JohnFormatProfile.ZIP_OPENCL;
+    // Mask ranges with fewer words are fed through --stdin rather than paying for another John startup
+    private static final long NATIVE_MIN_PIECE_SIZE = 1L << 26;
+    // How words that are not generated by John are handed to it. FIFO transfers dictionary slices without copying them
+    // through the JVM and falls back to PIPE for other ranges, CHUNK_FILE writes the whole range to disk before John
+    // starts
+    private static final WordlistDelivery.Mode DELIVERY_MODE = WordlistDelivery.Mode.FIFO;
 
     private static final String LOG_JTR = "jtr", LOG_JTR_STDOUT = "jtr-stdout", LOG_JTR_STDERR = "jtr-stderr";
 
-    private final Process process;
+    private final File johnDirectory, hashfile;
+    private final String devices;
+    private final String[] johnExtraArgs;
+    // Prepares the pieces and runs the feeders, shared by the runners of an engine
+    private final Executor deliveryExecutor;
+    private final WordlistGenerator wg;
+    private final long begin, end;
+    private final Iterator<KeyspacePlan.Piece> pieces;
+    private final JohnFormatProfile profile;
+    // True if the extra arguments contain --format
+    private final boolean formatSelected;
+    private final JohnOutputParser parser;
 
-    private final BlockingQueue<JTEvent> eventBus = new LinkedBlockingQueue<>();
+    private volatile Process process = null;
+    private volatile boolean killed = false;
+
+    private final AtomicReference<StatusEvent> latestStatus = new AtomicReference<>();
+    private final CompletableFuture<ExitEvent> exit = new CompletableFuture<>();
 
-    private final AtomicBoolean exitEventPosted = new AtomicBoolean(false);
     private final AtomicBoolean passwordFound = new AtomicBoolean(false);
     private volatile String gpuModel = null;
+    // Profiler of the current piece, null if John generates the words itself
+    private volatile PipelineProfiler profiler = null;
 
-
-    private final Semaphore stdErrReaderComplete = new Semaphore(1, true);
+    // State of the current piece, only accessed from the ProcessIoLoop
+    private WordlistDelivery delivery = null;
+    private boolean sessionCompleted = false;
 
     private void onPasswordFound(String foundPassword) {
         //stop.set(true);
         passwordFound.set(true);
         System.out.println("PW FOUND: " + foundPassword);
         Log.info(LOG_JTR, "!!! PASSWORD FOUND: \"" + foundPassword + "\" !!!");
-        postEvent(new PasswordFoundEvent(foundPassword));
+        complete(new PasswordFoundEvent(foundPassword));
     }
 
-    @SneakyThrows
     public JTRunner(final File johnDirectory, String devices, File hashfile,
-                    WordlistGenerator wg, long begin, long end, String[] johnExtraArgs) throws IOException {
+                    WordlistGenerator wg, long begin, long end, String[] johnExtraArgs, Executor deliveryExecutor)
+            throws IOException {
         if(!johnDirectory.isDirectory()) throw new IOException("JohnDirectory is not a dir");
+        this.johnDirectory = johnDirectory;
+        this.devices = devices;
+        this.hashfile = hashfile;
+        this.wg = wg;
+        this.begin = begin;
+        this.end = end;
+        this.johnExtraArgs = johnExtraArgs;
+        this.deliveryExecutor = deliveryExecutor;
+        JohnFormatProfile selectedProfile = JohnFormatProfile.select(johnExtraArgs);
+        this.profile = selectedProfile != null ? selectedProfile : DEFAULT_PROFILE;
+        this.formatSelected = selectedProfile != null;
+        Log.debug(LOG_JTR, "Using " + profile);
+        this.parser = new JohnOutputParser(profile, new OutputListener());
+
+        // Each piece is a separate John run. Status lines are mapped back to global indices through wg.indexOf,
+        // so the server sees the same events no matter how the assignment was split.
+        final List<KeyspacePlan.Piece> pieces = KeyspacePlan.create(wg, begin, end, NATIVE_MIN_PIECE_SIZE);
+        Log.debug(LOG_JTR, "Running " + pieces.size() + " piece(s): " + pieces);
+        this.pieces = pieces.iterator();
+        startNextPiece();
+    }
+
+    @Override
+    public StatusEvent takeLatestStatus() {
+        return latestStatus.getAndSet(null);
+    }
 
+    @Override
+    public CompletableFuture<ExitEvent> getExitFuture() {
+        return exit;
+    }
+
+    private void complete(ExitEvent event) {
+        if(!exit.complete(event)) {
+            Log.debug(LOG_JTR, "Ignoring ExitEvent " + event + " due to previously posted one");
+        }
+    }
+
+    private void startNextPiece() {
+        if(killed || exit.isDone()) { return; }
+        if(!pieces.hasNext()) {
+            Log.info(LOG_JTR, "--- Password not found ---");
+            complete(new PasswordNotFoundEvent(begin, end));
+            return;
+        }
+        KeyspacePlan.Piece piece = pieces.next();
+        deliveryExecutor.execute(() -> preparePiece(piece));
+    }
+
+    /**
+     * Creates the delivery and starts John on the given piece, then hands both to the ProcessIoLoop.
+     */
+    private void preparePiece(KeyspacePlan.Piece piece) {
+        WordlistDelivery delivery = null;
+        try {
+            delivery = piece.getMask() != null ? null
+                    : new WordlistDelivery(DELIVERY_MODE, wg, piece.getBeginIndex(), piece.getEndIndex(),
+                            deliveryExecutor);
+            Process process = startProcess(piece, delivery);
+            if(process == null) {
+                if(delivery != null) { delivery.close(); }
+                return;
+            }
+            final WordlistDelivery pieceDelivery = delivery;
+            ProcessIoLoop.execute(() -> {
+                this.delivery = pieceDelivery;
+                sessionCompleted = false;
+                ProcessIoLoop.register(process, this::onStdOutLine, this::onStdErrLine, this::onPieceExit);
+            });
+        } catch (IOException e) {
+            if(delivery != null) { delivery.close(); }
+            Log.debug(LOG_JTR, "John run failed", e);
+            complete(new ErrorEvent("John run failed", e));
+        }
+    }
+
+    /**
+     * Starts John on the given piece.
+     *
+     * @param delivery The delivery of the words, null if John generates them itself.
+     * @return The process, or null if the runner was killed.
+     */
+    private Process startProcess(KeyspacePlan.Piece piece, WordlistDelivery delivery) throws IOException {
         List<String> command = new ArrayList();
         command.add(new File(johnDirectory, "john").getPath());
         command.add("--devices=" + devices);
         command.add("--session=device" + devices);
+        if(delivery != null) {
+            command.addAll(delivery.getJohnArgs());
+        } else {
+            command.add("--mask=" + piece.getMask());
+        }
         command.addAll(Arrays.asList(args));
+        if(!formatSelected) { command.add("--format=" + profile.getHashFormat()); }
         if(johnExtraArgs.length > 0) { command.addAll(Arrays.asList(johnExtraArgs)); }
         command.add(hashfile.getAbsolutePath());
 
@@ -79,146 +188,109 @@ public class JTRunner {
         pb.environment().putAll(System.getenv());
         pb.redirectError(ProcessBuilder.Redirect.PIPE);
         pb.redirectOutput(ProcessBuilder.Redirect.PIPE);
-        process = pb.start();
-        final OutputStream os = process.getOutputStream();
+        profiler = delivery != null ? delivery.getProfiler() : null;
+        synchronized(this) {
+            if(killed) { return null; }
+            Process process;
+            if(delivery != null) {
+                process = delivery.start(pb);
+            } else {
+                process = pb.start();
+                process.getOutputStream().close();
+            }
+            this.process = process;
+            return process;
+        }
+    }
 
-        stdErrReaderComplete.acquire();
+    private void onPieceExit(int exitCode) {
+        Log.debug(LOG_JTR, "Exit code: " + exitCode);
+        closeDelivery();
+        if(killed) { return; }
+        if(!sessionCompleted || passwordFound.get()) {
+            complete(new ErrorEvent("John exited", new IllegalStateException("John exited with " + exitCode)));
+            return;
+        }
+        startNextPiece();
+    }
 
-        Thread stdOutReader = new Thread(() -> {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            try {
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    Log.debug(LOG_JTR_STDOUT, line);
-
-                    Matcher passwordFoundMatcher = PASSWORD_FOUND_PATTERN.matcher(line);
-                    if(passwordFoundMatcher.matches()) {
-                        onPasswordFound(passwordFoundMatcher.group(1));
-                    }
-                    // Ignore all output on program end, but still consume it to allow it to exit gracefully
-                    //if(stop.get()) { continue; }
-                }
-            }
-            catch (IOException e) {
-                Log.debug(LOG_JTR, "StdOut reader failed", e);
-                //if(!stop.compareAndSet(false, true)) { return; }
-                postEvent(new ErrorEvent("StdOut reader failed", e));
-                process.destroyForcibly();
-            }
-            Log.debug(LOG_JTR, "StdOut reader complete, waiting for StdErrReader...");
-            try {
-                stdErrReaderComplete.acquire();
-            } catch (InterruptedException e) {
-                postEvent(new ErrorEvent("Interrupted", e));
-            }
-            Log.debug(LOG_JTR, "StdOut reader complete, posting exit event");
-            postEvent(new ErrorEvent("StdOut reader complete", new IllegalStateException("StdOut reader complete")));
-        });
-        stdOutReader.start();
-        Thread stdErrReader = new Thread(() -> {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String line;
+    private void closeDelivery() {
+        if(delivery != null) {
+            delivery.close();
+            delivery = null;
+        }
+    }
+
+    private void onStdOutLine(byte[] line, int length) {
+        if(Log.DEBUG) { Log.debug(LOG_JTR_STDOUT, decode(line, 0, length).trim()); }
+        parser.parseStdOut(line, length);
+    }
+
+    private void onStdErrLine(byte[] line, int length) {
+        if(Log.DEBUG) { Log.debug(LOG_JTR_STDERR, decode(line, 0, length)); }
+        parser.parseStdErr(line, length);
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, Charset.defaultCharset());
+    }
+
+    /**
+     * Receives the parsed output of John, on the ProcessIoLoop.
+     */
+    private class OutputListener implements JohnOutputParser.Listener {
+        @Override
+        public void onStatus(long guessesPerSecond, byte[] line, int candidateOffset, int candidateLength) {
+            String lastGuessedPassword = decode(line, candidateOffset, candidateLength);
             try {
-                while ((line = reader.readLine()) != null) {
-                    Log.debug(LOG_JTR_STDERR, line);
-                    // Ignore all output on program end, but still consume it to allow it to exit gracefully
-                    //if(stop.get()) { continue; }
-                    Matcher passwordFoundMatcher = PASSWORD_FOUND_PATTERN.matcher(line);
-                    if(passwordFoundMatcher.find()) {
-                        onPasswordFound(passwordFoundMatcher.group(1));
-                    }
-                    Matcher matcher = STATUSLINE_PATTERN.matcher(line);
-                    if(matcher.find()) {
-                        String guessesPerSecondStr = matcher.group(1);
-                        String lastGuessedPassword = matcher.group(2);
-                        long factor = 1;
-                        if(guessesPerSecondStr.endsWith("K")) {
-                            factor = 1000;
-                            guessesPerSecondStr = guessesPerSecondStr.substring(0, guessesPerSecondStr.length() - 1);
-                        }
-                        if(guessesPerSecondStr.endsWith("M")) {
-                            factor = 1000 * 1000;
-                            guessesPerSecondStr = guessesPerSecondStr.substring(0, guessesPerSecondStr.length() - 1);
-                        }
-                        try {
-                            long guessesPerSecond = Long.parseLong(guessesPerSecondStr) * factor;
-                            long lastGuessedIndex = wg.indexOf(lastGuessedPassword);
-                            double percentProgress = ((double) lastGuessedIndex - begin) / (end - begin) * 100.0;
-                            Log.trace(LOG_JTR, String.format("Guessed %d / %d words (%.2f %%) @ %d p/s, last: %s%n",
-                                    lastGuessedIndex - begin, end - begin, percentProgress, guessesPerSecond,
-                                    lastGuessedPassword));
-                            postEvent(new StatusEvent(guessesPerSecond, begin, lastGuessedIndex, end,
-                                    lastGuessedPassword, gpuModel, Instant.now()));
-                        } catch (IllegalArgumentException e) {
-                            Log.warn(LOG_JTR, "Warning: Could not parse stdErr line!");
-                            e.printStackTrace();
-                        }
-                    }
-                    else if(line.contains("option to display all of the cracked passwords reliably")) {
-                        passwordFound.set(true);
-                    } else if(line.contains("Session completed") && !passwordFound.get()) {
-                        //stop.set(true);
-                        Log.info(LOG_JTR, "--- Password not found ---");
-                        postEvent(new PasswordNotFoundEvent(begin, end));
-                    } else if((matcher = GPU_MODEL_PATTERN.matcher(line)).find()) {
-                        gpuModel = matcher.group(1);
-                    }
+                long lastGuessedIndex = wg.indexOf(lastGuessedPassword, begin, end);
+                double percentProgress = ((double) lastGuessedIndex - begin) / (end - begin) * 100.0;
+                Log.trace(LOG_JTR, String.format("Guessed %d / %d words (%.2f %%) @ %d p/s, last: %s%n",
+                        lastGuessedIndex - begin, end - begin, percentProgress, guessesPerSecond,
+                        lastGuessedPassword));
+                PipelineProfiler profiler = JTRunner.this.profiler;
+                PipelineProfile profile = profiler != null ? profiler.snapshot(guessesPerSecond) : null;
+                if(profile != null) {
+                    Log.trace(LOG_JTR, String.format("Pipeline: generator busy %.0f %%, blocked %.0f %%, "
+                            + "%d words/s, %d bytes/s: %s bottleneck", profile.getGeneratorBusyFraction()
+                            * 100, profile.getWriterBlockedFraction() * 100, profile.getWordsPerSecond(),
+                            profile.getBytesPerSecond(), profile.getBottleneck()));
                 }
+                latestStatus.set(new StatusEvent(guessesPerSecond, begin, lastGuessedIndex, end,
+                        lastGuessedPassword, gpuModel, Instant.now(), profile));
+            } catch (IllegalArgumentException e) {
+                Log.warn(LOG_JTR, "Warning: Could not parse stdErr line!");
+                e.printStackTrace();
             }
-            catch (IOException e) {
-                Log.debug(LOG_JTR, "StdErr reader failed", e);
-                //if(!stop.compareAndSet(false, true)) { return; }
-                //postEvent(new ErrorEvent("StdOut reader failed", e));
-                //process.destroyForcibly();
-            }
-            Log.debug(LOG_JTR, "StdErr reader complete");
-            stdErrReaderComplete.release();
-        });
-        stdErrReader.start();
+        }
 
-        Thread t = new Thread(() -> {
-            try {
-                wg.outputWords(begin, end, os);
-                Log.debug(LOG_JTR, "Closing StdIn wordlist stream");
-                try {
-                    os.flush();
-                    os.close();
-                } catch (IOException ignored) {}
-                Log.debug(LOG_JTR, "Waiting for exit");
-                Log.debug(LOG_JTR, "Exit code: " + process.waitFor());
-            }
-            catch (IOException | InterruptedException e) {
-                //if(!stop.compareAndSet(false, true)) { return; }
-                Log.debug(LOG_JTR, "StdIn writer failed", e);
-                //postEvent(new ErrorEvent("StdIn writer failed", e));
-                //process.destroyForcibly();
-            }
-            Log.debug(LOG_JTR, "StdIn writer complete");
-        });
-        t.start();
-    }
+        @Override
+        public void onPasswordFound(byte[] line, int offset, int length) {
+            JTRunner.this.onPasswordFound(decode(line, offset, length));
+        }
 
-    @SneakyThrows
-    private void postEvent(JTEvent event) {
-        if(event instanceof ExitEvent && exitEventPosted.getAndSet(true)) {
-            Log.debug(LOG_JTR, "Ignoring ExitEvent " + event + " due to previously posted one");
-            return;
+        @Override
+        public void onGpuModel(byte[] line, int offset, int length) {
+            gpuModel = decode(line, offset, length);
         }
-        eventBus.put(event);
-    }
 
-    @Synchronized
-    public JTEvent takeNextEvent() throws InterruptedException {
-        JTEvent event = eventBus.take();
-        // If several StatusEvents have queued up, ignore all except the most recent one.
-        while(event instanceof StatusEvent && eventBus.peek() instanceof StatusEvent) {
-            event = eventBus.poll();
+        @Override
+        public void onSessionCompleted() {
+            sessionCompleted = true;
+        }
+
+        @Override
+        public void onPasswordsHidden() {
+            passwordFound.set(true);
         }
-        return event;
     }
 
-    public void kill() {
-        process.destroyForcibly();
+    @Override
+    public synchronized void kill() {
+        killed = true;
+        if(process != null) {
+            process.destroyForcibly();
+        }
+        complete(new ErrorEvent("Killed", new IllegalStateException("Killed")));
     }
 }
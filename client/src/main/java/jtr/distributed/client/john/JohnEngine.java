@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import jtr.distributed.client.engine.CrackingEngine;
+import jtr.distributed.client.engine.CrackingRun;
+import jtr.distributed.core.wordlist.WordlistGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cracks with the John binary in the given directory, one JTRunner per range.
+ */
+public class JohnEngine implements CrackingEngine {
+    // E.g. "    Device #0 (1) name:     NVIDIA GeForce RTX 3090". The index after '#' counts within the platform, the
+    // number in parentheses is the one --devices takes.
+    private static final Pattern DEVICE_PATTERN = Pattern.compile("^\\s+Device #[0-9]+ \\(([0-9]+)\\)");
+    // A runner prepares its next piece only after the previous John run exited, and feeds at most one run at a time
+    private static final int DELIVERY_THREADS_PER_DEVICE = 2;
+    private static final long DELIVERY_THREAD_KEEP_ALIVE = 60; // s
+
+    private final File johnDirectory, hashfile;
+    private final String[] johnExtraArgs;
+    // Prepares the pieces of all runners and feeds them their words, grows with the devices runners are started on
+    private final ThreadPoolExecutor deliveryExecutor;
+    // Guarded by deliveryExecutor
+    private final Set<String> devices = new HashSet<>();
+
+    public JohnEngine(File johnDirectory, File hashfile, String[] johnExtraArgs) {
+        this.johnDirectory = johnDirectory;
+        this.hashfile = hashfile;
+        this.johnExtraArgs = johnExtraArgs;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.deliveryExecutor = new ThreadPoolExecutor(DELIVERY_THREADS_PER_DEVICE, DELIVERY_THREADS_PER_DEVICE,
+                DELIVERY_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("jtr-delivery-" + threadNumber.incrementAndGet());
+            return thread;
+        });
+        this.deliveryExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the numbers of all OpenCL devices that John can see.
+     */
+    @Override
+    public List<String> listDevices() throws IOException {
+        Process process = new ProcessBuilder(new File(johnDirectory, "john").getPath(), "--list=opencl-devices")
+                .directory(johnDirectory)
+                .redirectErrorStream(true)
+                .start();
+        List<String> devices = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                Matcher matcher = DEVICE_PATTERN.matcher(line);
+                if(matcher.find()) { devices.add(matcher.group(1)); }
+            }
+        }
+        if(devices.isEmpty()) { throw new IOException("John did not list any OpenCL devices"); }
+        return devices;
+    }
+
+    @Override
+    public CrackingRun start(String device, WordlistGenerator wg, long begin, long end) throws IOException {
+        synchronized(deliveryExecutor) {
+            if(devices.add(device)) {
+                final int threads = DELIVERY_THREADS_PER_DEVICE * devices.size();
+                deliveryExecutor.setMaximumPoolSize(threads);
+                deliveryExecutor.setCorePoolSize(threads);
+            }
+        }
+        return new JTRunner(johnDirectory, device, hashfile, wg, begin, end, johnExtraArgs, deliveryExecutor);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Describes how John reports progress for one hash format: the value passed as --format and the suffixes that scale
+ * the rate in status lines (each one 1000 times the previous). All OpenCL formats of current jumbo versions print the
+ * same status and cracked password lines, see the recorded logs the tests replay.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class JohnFormatProfile {
+    private static final String JUMBO_RATE_SUFFIXES = "KMGT";
+
+    public static final JohnFormatProfile ZIP_OPENCL = forFormat("ZIP-opencl");
+
+    private final String hashFormat;
+    private final String rateSuffixes;
+
+    /**
+     * Returns the profile of the given format.
+     */
+    public static JohnFormatProfile forFormat(String hashFormat) {
+        return new JohnFormatProfile(hashFormat, JUMBO_RATE_SUFFIXES);
+    }
+
+    /**
+     * Returns the profile of the format selected by a --format argument, or null if there is none.
+     */
+    public static JohnFormatProfile select(String[] johnArgs) {
+        for(String arg : johnArgs) {
+            if(arg.startsWith("--format=")) { return forFormat(arg.substring("--format=".length())); }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the factor of the given rate suffix, or 0 if it is not a rate suffix of this format.
+     */
+    long getRateFactor(byte suffix) {
+        long factor = 1;
+        for(int i = 0; i < rateSuffixes.length(); i++) {
+            factor *= 1000;
+            if(rateSuffixes.charAt(i) == suffix) { return factor; }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses the output lines of John according to a JohnFormatProfile. The lines are scanned byte by byte in the buffer
+ * they were read into, so lines that carry no information (most of them) cost no allocation at all. Results are
+ * passed to the listener as ranges of that buffer, which are only valid during the call.
+ */
+class JohnOutputParser {
+    private static final byte[] SESSION_COMPLETED = ascii("Session completed"),
+                                PASSWORDS_HIDDEN = ascii("to display all of the cracked passwords reliably"),
+                                DEVICE = ascii("Device "),
+                                JUMBO_RATE_UNIT = ascii("p/s"),
+                                JUMBO_CANDIDATE_SEPARATOR = ascii("..");
+
+    interface Listener {
+        void onStatus(long guessesPerSecond, byte[] line, int candidateOffset, int candidateLength);
+
+        void onPasswordFound(byte[] line, int offset, int length);
+
+        void onGpuModel(byte[] line, int offset, int length);
+
+        void onSessionCompleted();
+
+        /**
+         * John cracked passwords that it did not print, e.g. because they were already in the pot file.
+         */
+        void onPasswordsHidden();
+    }
+
+    private final JohnFormatProfile profile;
+    private final Listener listener;
+    // Result of the last parseRate call
+    private long rate;
+
+    JohnOutputParser(JohnFormatProfile profile, Listener listener) {
+        this.profile = profile;
+        this.listener = listener;
+    }
+
+    void parseStdOut(byte[] line, int length) {
+        int begin = skipSpaces(line, 0, length);
+        parseFound(line, begin, trimEnd(line, begin, length));
+    }
+
+    void parseStdErr(byte[] line, int length) {
+        int begin = skipSpaces(line, 0, length);
+        int end = trimEnd(line, begin, length);
+        parseFound(line, begin, end);
+        if(parseStatus(line, begin, end)) { return; }
+        if(indexOf(line, begin, end, PASSWORDS_HIDDEN) >= 0) {
+            listener.onPasswordsHidden();
+        } else if(indexOf(line, begin, end, SESSION_COMPLETED) >= 0) {
+            listener.onSessionCompleted();
+        } else {
+            parseGpuModel(line, begin, end);
+        }
+    }
+
+    /**
+     * Parses "password (login)", where the password contains no spaces and the login no parentheses.
+     */
+    private void parseFound(byte[] line, int begin, int end) {
+        int passwordEnd = begin;
+        while(passwordEnd < end && line[passwordEnd] != ' ') { passwordEnd++; }
+        if(passwordEnd == begin) { return; }
+        int loginBegin = passwordEnd;
+        while(loginBegin < end && line[loginBegin] == ' ') { loginBegin++; }
+        if(loginBegin == passwordEnd || loginBegin == end || line[loginBegin] != '(' || line[end - 1] != ')'
+                || end - loginBegin < 3) { return; }
+        for(int i = loginBegin + 1; i < end - 1; i++) {
+            if(line[i] == '(' || line[i] == ')') { return; }
+        }
+        listener.onPasswordFound(line, begin, passwordEnd - begin);
+    }
+
+    /**
+     * Parses "0g 0:00:00:04 12.34% 0g/s 1234Kp/s 1234Kc/s 1234KC/s aaaa..zzzz": the guess count, the rate of the
+     * token ending with "p/s", and the first word of the last token.
+     */
+    private boolean parseStatus(byte[] line, int begin, int end) {
+        int i = skipDigits(line, begin, end);
+        if(i == begin || i + 1 >= end || line[i] != 'g' || line[i + 1] != ' ') { return false; }
+
+        boolean rateFound = false;
+        int lastToken = i + 1;
+        while(i < end) {
+            while(i < end && line[i] == ' ') { i++; }
+            int tokenBegin = i;
+            while(i < end && line[i] != ' ') { i++; }
+            if(tokenBegin == i) { break; }
+            lastToken = tokenBegin;
+            if(!rateFound && i < end && endsWith(line, tokenBegin, i, JUMBO_RATE_UNIT)) {
+                rateFound = parseRate(line, tokenBegin, i - JUMBO_RATE_UNIT.length);
+            }
+        }
+        if(!rateFound) { return false; }
+
+        // Words may contain "..", so prefer the split into two words of the same length, as with masks
+        int length = end - lastToken;
+        int separator = lastToken + (length - JUMBO_CANDIDATE_SEPARATOR.length) / 2;
+        if(length % 2 != 0 || !startsWith(line, separator, end, JUMBO_CANDIDATE_SEPARATOR)) {
+            separator = lastIndexOf(line, lastToken + 1, end - 1, JUMBO_CANDIDATE_SEPARATOR);
+        }
+        if(separator <= lastToken) { return false; }
+        listener.onStatus(rate, line, lastToken, separator - lastToken);
+        return true;
+    }
+
+    /**
+     * Parses a rate like "1234", "12.5" or "1234K" into the rate field.
+     *
+     * @return False if the range is not a rate, or the rate does not fit into a long.
+     */
+    private boolean parseRate(byte[] line, int begin, int end) {
+        int i = skipDigits(line, begin, end);
+        if(i == begin) { return false; }
+        long value = 0;
+        for(int j = begin; j < i; j++) { value = value * 10 + (line[j] - '0'); }
+        long fraction = 0, fractionScale = 1;
+        if(i < end && line[i] == '.') {
+            int fractionBegin = ++i;
+            i = skipDigits(line, i, end);
+            for(int j = fractionBegin; j < i && fractionScale < 1000000000L; j++) {
+                fraction = fraction * 10 + (line[j] - '0');
+                fractionScale *= 10;
+            }
+        }
+        long factor = 1;
+        if(i < end) {
+            factor = profile.getRateFactor(line[i++]);
+            if(factor == 0) { return false; }
+        }
+        if(i != end) { return false; }
+        try {
+            // factor and fractionScale are powers of ten, so whichever is larger divides by the other without a rest
+            long fractionValue = factor >= fractionScale ? fraction * (factor / fractionScale)
+                    : fraction / (fractionScale / factor);
+            rate = Math.addExact(Math.multiplyExact(value, factor), fractionValue);
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses "Device 1: GeForce RTX 3090".
+     */
+    private void parseGpuModel(byte[] line, int begin, int end) {
+        if(!startsWith(line, begin, end, DEVICE)) { return; }
+        int i = begin + DEVICE.length;
+        int idBegin = i;
+        while(i < end && line[i] != ':' && line[i] != ' ') { i++; }
+        if(i == idBegin || i + 2 >= end || line[i] != ':' || line[i + 1] != ' ') { return; }
+        listener.onGpuModel(line, i + 2, end - i - 2);
+    }
+
+    private static int skipSpaces(byte[] line, int begin, int end) {
+        while(begin < end && (line[begin] == ' ' || line[begin] == '\t')) { begin++; }
+        return begin;
+    }
+
+    private static int trimEnd(byte[] line, int begin, int end) {
+        while(end > begin && (line[end - 1] == ' ' || line[end - 1] == '\t')) { end--; }
+        return end;
+    }
+
+    private static int skipDigits(byte[] line, int begin, int end) {
+        while(begin < end && line[begin] >= '0' && line[begin] <= '9') { begin++; }
+        return begin;
+    }
+
+    private static boolean startsWith(byte[] line, int begin, int end, byte[] prefix) {
+        if(begin < 0 || end - begin < prefix.length) { return false; }
+        for(int i = 0; i < prefix.length; i++) {
+            if(line[begin + i] != prefix[i]) { return false; }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(byte[] line, int begin, int end, byte[] suffix) {
+        return end - begin >= suffix.length && startsWith(line, end - suffix.length, end, suffix);
+    }
+
+    /**
+     * Returns the first occurrence of the pattern in [begin, end), or -1.
+     */
+    private static int indexOf(byte[] line, int begin, int end, byte[] pattern) {
+        for(int i = begin; i <= end - pattern.length; i++) {
+            if(startsWith(line, i, end, pattern)) { return i; }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the last occurrence of the pattern that starts at or after begin and ends at or before end, or -1.
+     */
+    private static int lastIndexOf(byte[] line, int begin, int end, byte[] pattern) {
+        for(int i = end - pattern.length; i >= begin; i--) {
+            if(startsWith(line, i, end, pattern)) { return i; }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import jtr.distributed.core.wordlist.MaskWordlistGenerator;
+import jtr.distributed.core.wordlist.WordlistGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits an assignment into John runs. Words of a MaskWordlistGenerator are generated by John itself: since the
+ * leftmost position changes fastest, a range of indices that is aligned to the product of the charset sizes of the
+ * first k positions is a mask with the first k positions unchanged, a subset of the charset at position k and
+ * literals after it. Any range is the concatenation of at most 2 * length - 1 such masks, the small ones at both ends
+ * are fed through --stdin instead to save John's startup time. All other generators are fed through --stdin.
+ */
+class KeyspacePlan {
+    @Data
+    @AllArgsConstructor
+    static class Piece {
+        long beginIndex, endIndex;
+        // The John mask covering [beginIndex, endIndex), or null if the words are fed through --stdin
+        String mask;
+    }
+
+    static List<Piece> create(WordlistGenerator wg, long begin, long end, long minNativeSize) {
+        if(!(wg instanceof MaskWordlistGenerator) || !isAscii((MaskWordlistGenerator) wg)) {
+            return Collections.singletonList(new Piece(begin, end, null));
+        }
+        MaskWordlistGenerator mask = (MaskWordlistGenerator) wg;
+        final int length = mask.getLength();
+        // blockSizes[k]: number of words until position k changes
+        final long[] blockSizes = new long[length + 1];
+        blockSizes[0] = 1;
+        for(int p = 0; p < length; p++) {
+            blockSizes[p + 1] = blockSizes[p] * mask.getCharset(p).length();
+        }
+
+        List<Piece> pieces = new ArrayList<>();
+        long current = begin;
+        int level = 0;
+        // Upwards: complete the block of each level, as long as it ends before the end of the range
+        for(; level < length && current < end; level++) {
+            long next = (current + blockSizes[level + 1] - 1) / blockSizes[level + 1] * blockSizes[level + 1];
+            if(next > end) { break; }
+            if(current < next) { addPiece(pieces, mask, blockSizes, level, current, next, minNativeSize); }
+            current = next;
+        }
+        // Downwards: the remaining range lies within one block of level + 1
+        for(level = Math.min(level, length - 1); level >= 0 && current < end; level--) {
+            long chunk = (end - current) / blockSizes[level] * blockSizes[level];
+            if(chunk > 0) { addPiece(pieces, mask, blockSizes, level, current, current + chunk, minNativeSize); }
+            current += chunk;
+        }
+        return pieces;
+    }
+
+    private static void addPiece(List<Piece> pieces, MaskWordlistGenerator mask, long[] blockSizes, int level,
+                                 long begin, long end, long minNativeSize) {
+        if(end - begin < minNativeSize) {
+            // Merge with the previous --stdin piece
+            Piece previous = pieces.isEmpty() ? null : pieces.get(pieces.size() - 1);
+            if(previous != null && previous.mask == null && previous.endIndex == begin) {
+                previous.endIndex = end;
+            } else {
+                pieces.add(new Piece(begin, end, null));
+            }
+            return;
+        }
+        StringBuilder johnMask = new StringBuilder();
+        for(int p = 0; p < mask.getLength(); p++) {
+            String charset = mask.getCharset(p);
+            if(p < level) {
+                appendSet(johnMask, charset);
+            } else {
+                int first = (int) (begin / blockSizes[p] % charset.length());
+                int last = p == level ? (int) ((end - 1) / blockSizes[p] % charset.length()) : first;
+                appendSet(johnMask, charset.substring(first, last + 1));
+            }
+        }
+        pieces.add(new Piece(begin, end, johnMask.toString()));
+    }
+
+    /**
+     * Appends the characters as a John mask set, e.g. "[a-z\x21]". Runs of consecutive characters become ranges, all
+     * characters except letters and digits are hex-escaped.
+     */
+    private static void appendSet(StringBuilder johnMask, String charset) {
+        johnMask.append('[');
+        for(int i = 0; i < charset.length(); ) {
+            int runEnd = i + 1;
+            while(runEnd < charset.length() && charset.charAt(runEnd) == charset.charAt(runEnd - 1) + 1) { runEnd++; }
+            if(runEnd - i >= 3) {
+                appendChar(johnMask, charset.charAt(i));
+                johnMask.append('-');
+                appendChar(johnMask, charset.charAt(runEnd - 1));
+            } else {
+                for(int j = i; j < runEnd; j++) { appendChar(johnMask, charset.charAt(j)); }
+            }
+            i = runEnd;
+        }
+        johnMask.append(']');
+    }
+
+    private static void appendChar(StringBuilder johnMask, char c) {
+        if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            johnMask.append(c);
+        } else {
+            johnMask.append(String.format("\\x%02x", (int) c));
+        }
+    }
+
+    /**
+     * Masks are passed to John as bytes, so only single-byte charsets can be generated natively.
+     */
+    private static boolean isAscii(MaskWordlistGenerator mask) {
+        for(int p = 0; p < mask.getLength(); p++) {
+            for(char c : mask.getCharset(p).toCharArray()) {
+                if(c >= 0x80 || c == 0) { return false; }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import jtr.distributed.core.events.PipelineProfile;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Measures how the thread that feeds words to John spends its time: blocked writing to John (back-pressure, so John
+ * and the GPU are the bottleneck) or busy generating words (John may be starved). The counters are written by the
+ * feeding thread only, and read by the thread that parses John's status lines.
+ */
+class PipelineProfiler {
+    // Minimum fraction of the interval that one side has to spend waiting or busy to be called the bottleneck
+    private static final double VERDICT_THRESHOLD = 0.5;
+    // John's p/s must be at least this fraction of the words produced to count as keeping up with the generator
+    private static final double KEEPING_UP_RATIO = 0.8;
+
+    private volatile long feedBegin = 0, feedEnd = 0;
+    private volatile long blockedNanos = 0, bytes = 0, words = 0;
+
+    // State of the previous snapshot, only accessed by the status line thread
+    private long previousTime = System.nanoTime(), previousBlockedNanos = 0, previousBytes = 0, previousWords = 0;
+
+    void feedStarted() {
+        feedBegin = System.nanoTime();
+    }
+
+    void feedCompleted() {
+        feedEnd = System.nanoTime();
+    }
+
+    /**
+     * Records a write that was not done through a metered stream, e.g. a FileChannel.transferTo.
+     */
+    void recordWrite(long bytes, long words, long nanos) {
+        this.blockedNanos += nanos;
+        this.bytes += bytes;
+        this.words += words;
+    }
+
+    /**
+     * Wraps the stream that goes to John, counting the time spent in write as blocked and the newlines as words.
+     */
+    OutputStream meter(OutputStream os) {
+        return new FilterOutputStream(os) {
+            @Override
+            public void write(int b) throws IOException {
+                long begin = System.nanoTime();
+                out.write(b);
+                recordWrite(1, b == '\n' ? 1 : 0, System.nanoTime() - begin);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                int newlines = 0;
+                for(int i = off; i < off + len; i++) {
+                    if(b[i] == '\n') { newlines++; }
+                }
+                long begin = System.nanoTime();
+                out.write(b, off, len);
+                recordWrite(len, newlines, System.nanoTime() - begin);
+            }
+        };
+    }
+
+    /**
+     * Returns the measurements since the previous snapshot.
+     *
+     * @param johnGuessesPerSecond The p/s from John's status line.
+     */
+    PipelineProfile snapshot(long johnGuessesPerSecond) {
+        final long now = System.nanoTime();
+        final long elapsed = Math.max(1, now - previousTime);
+        final long begin = feedBegin, end = feedEnd;
+        // Time the feeding thread was running during the interval
+        long active = 0;
+        if(begin != 0) {
+            active = Math.max(0, (end != 0 ? end : now) - Math.max(begin, previousTime));
+        }
+        final long currentBlockedNanos = blockedNanos, currentBytes = bytes, currentWords = words;
+        final long blocked = currentBlockedNanos - previousBlockedNanos;
+        final long wordsPerSecond = (long) ((currentWords - previousWords) * 1e9 / elapsed);
+        final long bytesPerSecond = (long) ((currentBytes - previousBytes) * 1e9 / elapsed);
+        final double blockedFraction = Math.min(1.0, (double) blocked / elapsed);
+        final double busyFraction = Math.min(1.0, (double) Math.max(0, active - blocked) / elapsed);
+
+        PipelineProfile.Bottleneck bottleneck;
+        if(end != 0 || blockedFraction >= VERDICT_THRESHOLD) {
+            // Either all words have been handed over, or John is not reading them fast enough
+            bottleneck = PipelineProfile.Bottleneck.GPU;
+        } else if(busyFraction >= VERDICT_THRESHOLD && johnGuessesPerSecond >= KEEPING_UP_RATIO * wordsPerSecond) {
+            bottleneck = PipelineProfile.Bottleneck.GENERATOR;
+        } else {
+            bottleneck = PipelineProfile.Bottleneck.UNDETERMINED;
+        }
+
+        previousTime = now;
+        previousBlockedNanos = currentBlockedNanos;
+        previousBytes = currentBytes;
+        previousWords = currentWords;
+        return new PipelineProfile(busyFraction, blockedFraction, wordsPerSecond, bytesPerSecond, bottleneck);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import com.esotericsoftware.minlog.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the output of all John processes on a small fixed pool of threads, no matter how many processes there are.
+ * Java 8 cannot select on process pipes, so each process is polled: whatever is available is read without blocking,
+ * split into lines and passed to the handlers. Once the process has exited, the rest of its output is read (which
+ * does not block anymore) and the exit handler is called. All handlers of one process are called one after another,
+ * though not necessarily on the same thread. Lines are passed as undecoded bytes in a buffer that is reused for the
+ * next line, so that handlers can skip uninteresting lines without allocating.
+ */
+class ProcessIoLoop {
+    private static final int THREADS = 2;
+    private static final long POLL_INTERVAL = 20; // ms
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final String LOG_IO = "jtr-io";
+
+    private static final ScheduledExecutorService executor;
+    static {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("jtr-io-" + threadNumber.incrementAndGet());
+            return thread;
+        });
+    }
+
+    interface LineHandler {
+        /**
+         * Handles the first length bytes of line, without the line terminator. The array must not be kept.
+         */
+        void onLine(byte[] line, int length);
+    }
+
+    interface ExitHandler {
+        void onExit(int exitCode);
+    }
+
+    /**
+     * Runs the given task on the loop, e.g. to take over a process that was started elsewhere.
+     */
+    static void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Polls the stdout and stderr of the given process until it has exited.
+     */
+    static void register(Process process, LineHandler stdout, LineHandler stderr, ExitHandler onExit) {
+        Watch watch = new Watch(process, stdout, stderr, onExit);
+        watch.future = executor.scheduleWithFixedDelay(watch::poll, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Watch {
+        private final Process process;
+        private final LineSplitter stdout, stderr;
+        private final ExitHandler onExit;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private volatile ScheduledFuture<?> future = null;
+        private boolean exited = false;
+
+        Watch(Process process, LineHandler stdout, LineHandler stderr, ExitHandler onExit) {
+            this.process = process;
+            this.stdout = new LineSplitter(stdout);
+            this.stderr = new LineSplitter(stderr);
+            this.onExit = onExit;
+        }
+
+        void poll() {
+            if(exited) { cancel(); return; }
+            try {
+                // Checked before reading, so that no output written before the exit is missed
+                boolean alive = process.isAlive();
+                readAvailable(process.getInputStream(), stdout, !alive);
+                readAvailable(process.getErrorStream(), stderr, !alive);
+                if(alive) { return; }
+            } catch (IOException e) {
+                Log.debug(LOG_IO, "Reading John's output failed", e);
+                process.destroyForcibly();
+                try {
+                    process.waitFor();
+                } catch (InterruptedException ignored) {}
+            } catch (RuntimeException e) {
+                // An exception would silently end the polling, so handlers must not throw
+                Log.warn(LOG_IO, "Line handler failed", e);
+                return;
+            }
+            exited = true;
+            cancel();
+            stdout.flush();
+            stderr.flush();
+            onExit.onExit(process.exitValue());
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> future = this.future;
+            if(future != null) { future.cancel(false); }
+        }
+
+        private void readAvailable(InputStream in, LineSplitter lines, boolean untilEnd) throws IOException {
+            int available;
+            while((available = in.available()) > 0 || untilEnd) {
+                int read = in.read(buffer, 0, Math.max(1, Math.min(available, buffer.length)));
+                if(read < 0) { return; }
+                lines.append(buffer, read);
+            }
+        }
+    }
+
+    /**
+     * Splits bytes into lines like BufferedReader.readLine, i.e. at "\n", "\r" or "\r\n".
+     */
+    private static class LineSplitter {
+        private final LineHandler handler;
+        private byte[] line = new byte[256];
+        private int length = 0;
+        private boolean skipLineFeed = false;
+
+        LineSplitter(LineHandler handler) {
+            this.handler = handler;
+        }
+
+        void append(byte[] bytes, int count) {
+            for(int i = 0; i < count; i++) {
+                byte b = bytes[i];
+                if(b == '\n' || b == '\r') {
+                    if(b == '\n' && skipLineFeed) {
+                        skipLineFeed = false;
+                        continue;
+                    }
+                    skipLineFeed = b == '\r';
+                    emit();
+                    continue;
+                }
+                skipLineFeed = false;
+                if(length == line.length) { line = Arrays.copyOf(line, line.length * 2); }
+                line[length++] = b;
+            }
+        }
+
+        /**
+         * Passes on the last line if it was not terminated.
+         */
+        void flush() {
+            if(length > 0) { emit(); }
+        }
+
+        private void emit() {
+            int length = this.length;
+            this.length = 0;
+            handler.onLine(line, length);
+        }
+    }
+}
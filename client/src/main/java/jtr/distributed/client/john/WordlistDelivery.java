@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.core.wordlist.FileSlice;
+import jtr.distributed.core.wordlist.WordlistGenerator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Hands a range of a wordlist to John. If the generator stores the words in a local file (see
+ * WordlistGenerator.getFileSlice), the slice is copied by the kernel with FileChannel.transferTo instead of passing
+ * every byte through the JVM.
+ */
+class WordlistDelivery implements Closeable {
+    private static final String LOG_DELIVERY = "delivery";
+
+    enum Mode {
+        /** Words are written to John's stdin, as before. */
+        PIPE,
+        /**
+         * John's stdin is a named pipe, so that file slices can be transferred into it without a copy. Ranges without
+         * a file slice are delivered as PIPE.
+         */
+        FIFO,
+        /** The range is written to a local chunk file before John starts, John reads it with --wordlist. */
+        CHUNK_FILE
+    }
+
+    private final Mode mode;
+    private final WordlistGenerator wg;
+    private final long begin, end;
+    private final FileSlice slice;
+    private final File directory, file;
+    // Runs the feeder
+    private final Executor executor;
+    private final PipelineProfiler profiler = new PipelineProfiler();
+
+    WordlistDelivery(Mode mode, WordlistGenerator wg, long begin, long end, Executor executor) throws IOException {
+        this.wg = wg;
+        this.executor = executor;
+        this.begin = begin;
+        this.end = end;
+        this.slice = wg.getFileSlice(begin, end);
+        // Generated words pass through the JVM either way, a named pipe would only add the mkfifo and a directory
+        if(mode == Mode.FIFO && slice == null) { mode = Mode.PIPE; }
+        if(mode == Mode.PIPE) {
+            this.mode = mode;
+            this.directory = this.file = null;
+            return;
+        }
+
+        this.directory = Files.createTempDirectory("jtr-wordlist").toFile();
+        if(mode == Mode.FIFO) {
+            this.file = new File(directory, "wordlist.fifo");
+            Mode actualMode = mode;
+            try {
+                Process mkfifo = new ProcessBuilder("mkfifo", file.getPath()).redirectErrorStream(true).start();
+                if(mkfifo.waitFor() != 0) { throw new IOException("mkfifo exited with " + mkfifo.exitValue()); }
+            } catch (IOException | InterruptedException e) {
+                Log.warn(LOG_DELIVERY, "Could not create a named pipe, falling back to stdin", e);
+                actualMode = Mode.PIPE;
+            }
+            this.mode = actualMode;
+        } else {
+            this.mode = mode;
+            this.file = new File(directory, "chunk-" + begin + "-" + end + ".txt");
+            try(FileChannel chunk = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                final long startTime = System.nanoTime();
+                writeTo(chunk);
+                Log.debug(LOG_DELIVERY, "Wrote " + chunk.size() + " bytes to " + file + " in "
+                        + (System.nanoTime() - startTime) / 1000000 + " ms");
+            }
+        }
+    }
+
+    /**
+     * Returns the John options that select the wordlist.
+     */
+    List<String> getJohnArgs() {
+        return Collections.singletonList(mode == Mode.CHUNK_FILE ? "--wordlist=" + file.getAbsolutePath() : "--stdin");
+    }
+
+    /**
+     * Returns the profiler of the thread that feeds John, or null if John reads a chunk file that was written
+     * beforehand.
+     */
+    PipelineProfiler getProfiler() {
+        return mode == Mode.CHUNK_FILE ? null : profiler;
+    }
+
+    /**
+     * Starts the process, and the feeder on the executor if necessary.
+     */
+    Process start(ProcessBuilder pb) throws IOException {
+        switch(mode) {
+            case PIPE: {
+                Process process = pb.start();
+                startFeeder(() -> {
+                    try(OutputStream os = process.getOutputStream()) {
+                        writeTo(os);
+                    }
+                });
+                return process;
+            }
+            case FIFO: {
+                // Opening a named pipe blocks until the other end is opened as well, so the feeder has to wait for
+                // the process in its own thread
+                startFeeder(() -> {
+                    try(FileChannel fifo = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        writeTo(fifo);
+                    }
+                });
+                pb.redirectInput(file);
+                try {
+                    return pb.start();
+                } catch (IOException e) {
+                    // Unblock the feeder, it fails with a broken pipe
+                    new FileInputStream(file).close();
+                    throw e;
+                }
+            }
+            default: {
+                // The chunk file was written in the constructor
+                Process process = pb.start();
+                process.getOutputStream().close();
+                return process;
+            }
+        }
+    }
+
+    private interface Feeder {
+        void feed() throws IOException;
+    }
+
+    private void startFeeder(Feeder feeder) {
+        executor.execute(() -> {
+            try {
+                profiler.feedStarted();
+                feeder.feed();
+                profiler.feedCompleted();
+                Log.debug(LOG_DELIVERY, "Wordlist complete");
+            } catch (IOException e) {
+                Log.debug(LOG_DELIVERY, "Wordlist writer failed", e);
+            }
+        });
+    }
+
+    private void writeTo(OutputStream os) throws IOException {
+        if(slice == null) {
+            wg.outputWords(begin, end, profiler.meter(os));
+        } else {
+            // Without a channel to transfer into, a plain copy is all we can do
+            writeTo(Channels.newChannel(os));
+        }
+    }
+
+    private void writeTo(WritableByteChannel channel) throws IOException {
+        if(slice == null) {
+            OutputStream os = new BufferedOutputStream(profiler.meter(Channels.newOutputStream(channel)), 64 * 1024);
+            wg.outputWords(begin, end, os);
+            os.flush();
+            return;
+        }
+        try(FileChannel source = FileChannel.open(slice.getFile().toPath(), StandardOpenOption.READ)) {
+            long position = slice.getOffset(), remaining = slice.getLength();
+            // Words are not counted in a transfer, so they are estimated from the average line length of the slice
+            final double wordsPerByte = (double) (end - begin) / Math.max(1, slice.getLength());
+            while(remaining > 0) {
+                long transferBegin = System.nanoTime();
+                long transferred = source.transferTo(position, remaining, channel);
+                profiler.recordWrite(transferred, Math.round(transferred * wordsPerByte),
+                        System.nanoTime() - transferBegin);
+                if(transferred == 0) { throw new EOFException(slice.getFile() + " is shorter than expected"); }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        if(slice.isNewlineMissing()) {
+            channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        }
+    }
+
+    @Override
+    public void close() {
+        if(directory == null) { return; }
+        if(file != null && file.exists() && !file.delete()) { Log.warn(LOG_DELIVERY, "Could not delete " + file); }
+        if(!directory.delete()) { Log.warn(LOG_DELIVERY, "Could not delete " + directory); }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+
+package jtr.distributed.client.john;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the recorded output of John jumbo runs, one per format (<format>.stderr and <format>.stdout next to this
+ * class), through the parser of the format's profile.
+ */
+public class JohnOutputParserTest {
+    private static class RecordingListener implements JohnOutputParser.Listener {
+        // "<rate> <first candidate>"
+        final List<String> statuses = new ArrayList<>();
+        final List<String> passwords = new ArrayList<>();
+        String gpuModel = null;
+        boolean sessionCompleted = false, passwordsHidden = false;
+
+        @Override
+        public void onStatus(long guessesPerSecond, byte[] line, int candidateOffset, int candidateLength) {
+            statuses.add(guessesPerSecond + " " + decode(line, candidateOffset, candidateLength));
+        }
+
+        @Override
+        public void onPasswordFound(byte[] line, int offset, int length) {
+            passwords.add(decode(line, offset, length));
+        }
+
+        @Override
+        public void onGpuModel(byte[] line, int offset, int length) {
+            gpuModel = decode(line, offset, length);
+        }
+
+        @Override
+        public void onSessionCompleted() {
+            sessionCompleted = true;
+        }
+
+        @Override
+        public void onPasswordsHidden() {
+            passwordsHidden = true;
+        }
+    }
+
+    @Test
+    public void zipOpencl() throws IOException {
+        RecordingListener listener = replay("ZIP-opencl");
+        assertEquals(Arrays.asList("4999000 amkzaa", "5015000 bkyaaa", "5012000 cjaaaa"), listener.statuses);
+        assertEquals(Collections.singletonList("cjsecret"), listener.passwords);
+        assertEquals("NVIDIA GeForce RTX 3090", listener.gpuModel);
+        assertTrue(listener.passwordsHidden);
+        assertTrue(listener.sessionCompleted);
+    }
+
+    @Test
+    public void rawMd5Opencl() throws IOException {
+        RecordingListener listener = replay("raw-MD5-opencl");
+        // A candidate range of two words of the same length is split in the middle, even if the words contain ".."
+        assertEquals(Arrays.asList("12591000000 Aabcdfgh", "12580000000 Baaaaaaa", "12600000000 a..b..cd"),
+                listener.statuses);
+        assertTrue(listener.passwords.isEmpty());
+        assertFalse(listener.passwordsHidden);
+        assertTrue(listener.sessionCompleted);
+    }
+
+    @Test
+    public void ntOpencl() throws IOException {
+        RecordingListener listener = replay("NT-opencl");
+        // The GPU sensor readings before the candidates are skipped
+        assertEquals(Arrays.asList("24896000000 aa1234", "25140000000 Password1"), listener.statuses);
+        assertEquals(Collections.singletonList("Password1"), listener.passwords);
+        assertEquals("AMD Radeon RX 6900 XT", listener.gpuModel);
+        assertTrue(listener.passwordsHidden);
+        assertTrue(listener.sessionCompleted);
+    }
+
+    @Test
+    public void largeRates() {
+        RecordingListener listener = new RecordingListener();
+        JohnOutputParser parser = new JohnOutputParser(JohnFormatProfile.forFormat("raw-MD5-opencl"), listener);
+        parseStdErr(parser, "0g 0:00:00:04  0g/s 9223372.036854775Tp/s 1Tc/s 1TC/s aa..zz");
+        parseStdErr(parser, "0g 0:00:00:04  0g/s 9223372.036854776Tp/s 1Tc/s 1TC/s aa..zz");
+        parseStdErr(parser, "0g 0:00:00:04  0g/s 99999999Tp/s 1Tc/s 1TC/s aa..zz");
+        // Rates that do not fit into a long are ignored instead of overflowing
+        assertEquals(Collections.singletonList(Long.MAX_VALUE - 807 + " aa"), listener.statuses);
+    }
+
+    private static RecordingListener replay(String format) throws IOException {
+        RecordingListener listener = new RecordingListener();
+        JohnOutputParser parser = new JohnOutputParser(JohnFormatProfile.forFormat(format), listener);
+        for(byte[] line : readLines(format + ".stderr")) { parser.parseStdErr(line, line.length); }
+        for(byte[] line : readLines(format + ".stdout")) { parser.parseStdOut(line, line.length); }
+        return listener;
+    }
+
+    private static void parseStdErr(JohnOutputParser parser, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        parser.parseStdErr(bytes, bytes.length);
+    }
+
+    private static List<byte[]> readLines(String resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(InputStream is = JohnOutputParserTest.class.getResourceAsStream(resource)) {
+            if(is == null) { throw new IOException("Missing recorded output " + resource); }
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = is.read(buffer)) > 0) { bytes.write(buffer, 0, read); }
+        }
+        List<byte[]> lines = new ArrayList<>();
+        byte[] all = bytes.toByteArray();
+        int lineBegin = 0;
+        for(int i = 0; i < all.length; i++) {
+            if(all[i] == '\n') {
+                lines.add(Arrays.copyOfRange(all, lineBegin, i));
+                lineBegin = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.client.john;
+
+import jtr.distributed.core.wordlist.ConcatWordlistGenerator;
+import jtr.distributed.core.wordlist.MaskWordlistGenerator;
+import jtr.distributed.core.wordlist.WordlistGenerator;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the pieces of a plan tile the range, and that the John mask of each piece expands to the words the
+ * generator outputs for it.
+ */
+public class KeyspacePlanTest {
+    @Test
+    public void masksCoverTheirRange() throws IOException {
+        Random random = new Random(1);
+        MaskWordlistGenerator[] masks = {
+                new MaskWordlistGenerator("?l?d?d"),
+                new MaskWordlistGenerator("a?d?s?u"),
+                // Characters that are not consecutive or need to be escaped
+                new MaskWordlistGenerator("?1?d?1", "?dx-]"),
+                new MaskWordlistGenerator("?d")
+        };
+        for(MaskWordlistGenerator mask : masks) {
+            final int size = (int) mask.getSize();
+            for(int i = 0; i < 30; i++) {
+                long begin = random.nextInt(size);
+                long end = begin + 1 + random.nextInt(size - (int) begin);
+                for(long minNativeSize : new long[] {1, 10, 1000}) {
+                    assertPlan(mask, begin, end, minNativeSize);
+                }
+            }
+            assertPlan(mask, 0, size, 1);
+        }
+    }
+
+    @Test
+    public void otherGeneratorsUseStdin() throws IOException {
+        WordlistGenerator concat = new ConcatWordlistGenerator(new MaskWordlistGenerator("?d"));
+        assertEquals(Collections.singletonList(new KeyspacePlan.Piece(2, 7, null)),
+                KeyspacePlan.create(concat, 2, 7, 1));
+        // John reads masks as bytes
+        MaskWordlistGenerator multiByte = new MaskWordlistGenerator("?d\u00e4");
+        assertEquals(Collections.singletonList(new KeyspacePlan.Piece(0, 10, null)),
+                KeyspacePlan.create(multiByte, 0, 10, 1));
+    }
+
+    private static void assertPlan(WordlistGenerator wg, long begin, long end, long minNativeSize) throws IOException {
+        final String plan = "Plan of [" + begin + ", " + end + ") with pieces of at least " + minNativeSize;
+        List<KeyspacePlan.Piece> pieces = KeyspacePlan.create(wg, begin, end, minNativeSize);
+        long next = begin;
+        for(KeyspacePlan.Piece piece : pieces) {
+            assertEquals(plan, next, piece.getBeginIndex());
+            assertTrue(plan, piece.getEndIndex() > piece.getBeginIndex());
+            next = piece.getEndIndex();
+            if(piece.getMask() != null) {
+                assertTrue(plan, piece.getEndIndex() - piece.getBeginIndex() >= minNativeSize);
+                assertEquals(plan + ", " + piece, outputWords(wg, piece.getBeginIndex(), piece.getEndIndex()),
+                        expand(piece.getMask()));
+            }
+        }
+        assertEquals(plan, end, next);
+    }
+
+    private static List<String> outputWords(WordlistGenerator wg, long begin, long end) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        wg.outputWords(begin, end, os);
+        String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+        return Arrays.asList(output.substring(0, output.length() - 1).split("\n", -1));
+    }
+
+    /**
+     * Expands a John mask of sets, e.g. "[a-c\x21][0-9]", with the leftmost position changing fastest.
+     */
+    private static List<String> expand(String johnMask) {
+        List<String> sets = new ArrayList<>();
+        for(int i = 0; i < johnMask.length(); ) {
+            assertEquals(johnMask, '[', johnMask.charAt(i++));
+            StringBuilder set = new StringBuilder();
+            while(johnMask.charAt(i) != ']') {
+                char c = johnMask.charAt(i) == '\\' ? (char) Integer.parseInt(johnMask.substring(i + 2, i + 4), 16)
+                        : johnMask.charAt(i);
+                i += johnMask.charAt(i) == '\\' ? 4 : 1;
+                if(johnMask.charAt(i) == '-') {
+                    char last = johnMask.charAt(i + 1) == '\\'
+                            ? (char) Integer.parseInt(johnMask.substring(i + 3, i + 5), 16) : johnMask.charAt(i + 1);
+                    i += johnMask.charAt(i + 1) == '\\' ? 5 : 2;
+                    for(char r = c; r <= last; r++) { set.append(r); }
+                } else {
+                    set.append(c);
+                }
+            }
+            i++;
+            sets.add(set.toString());
+        }
+        List<String> words = new ArrayList<>(Collections.singletonList(""));
+        for(int p = sets.size() - 1; p >= 0; p--) {
+            List<String> longer = new ArrayList<>();
+            for(String suffix : words) {
+                for(char c : sets.get(p).toCharArray()) { longer.add(c + suffix); }
+            }
+            words = longer;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.events;
+
+import lombok.*;
+
+/**
+ * Measurements of the pipeline that feeds words to John, over the interval since the previous status event.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PipelineProfile {
+    public enum Bottleneck {
+        /** John does not read the words as fast as they are produced, so writing them blocks. */
+        GPU,
+        /** The wordlist generator is busy most of the time, and John keeps up with it. */
+        GENERATOR,
+        /** Neither side is clearly waiting for the other. */
+        UNDETERMINED
+    }
+
+    // Fractions of the interval spent generating words, and blocked writing them to John
+    double generatorBusyFraction, writerBlockedFraction;
+    long wordsPerSecond, bytesPerSecond;
+    Bottleneck bottleneck;
+}
@@ -18,4 +18,6 @@ public class StatusEvent extends JTEvent {
     long guessesPerSecond, beginIndex, lastGuessedIndex, endIndex;
     String lastGuessedPassword, gpuModel;
     Instant timestamp = Instant.now();
+    // Null if John generates the words itself
+    PipelineProfile pipelineProfile;
 }
@@ -7,6 +7,7 @@
 
 package jtr.distributed.core.events;
 
+import jtr.distributed.core.wordlist.GeneratorSpec;
 import lombok.*;
 
 @Data
@@ -14,4 +15,6 @@ import lombok.*;
 @AllArgsConstructor
 public class WordlistAssignment {
     long beginIndex, endIndex;
+    // The generator that indices refer to
+    GeneratorSpec generator;
 }
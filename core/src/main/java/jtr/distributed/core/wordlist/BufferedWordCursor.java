@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Cursor over any WordlistGenerator, which fetches the words in batches through outputWords.
+ */
+class BufferedWordCursor implements WordCursor {
+    private static final int BATCH_SIZE = 4096;
+
+    private final WordlistGenerator generator;
+    private final WordBuffer batch = new WordBuffer(64 * 1024);
+    private final OutputStream batchStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+            batch.append((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            batch.append(b, off, len);
+        }
+    };
+    private long index, batchEnd;
+    private int wordBegin, wordEnd;
+
+    BufferedWordCursor(WordlistGenerator generator, long index) {
+        if(index < 0 || index >= generator.getSize()) { throw new IllegalArgumentException("Invalid index " + index); }
+        this.generator = generator;
+        fetch(index);
+    }
+
+    private void fetch(long index) {
+        this.index = index;
+        this.batchEnd = Math.min(generator.getSize(), index + BATCH_SIZE);
+        batch.clear();
+        try {
+            generator.outputWords(index, batchEnd, batchStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        wordBegin = 0;
+        findWordEnd();
+    }
+
+    private void findWordEnd() {
+        final byte[] bytes = batch.getBytes();
+        wordEnd = wordBegin;
+        while(bytes[wordEnd] != '\n') { wordEnd++; }
+    }
+
+    @Override
+    public void appendTo(WordBuffer buffer) {
+        buffer.append(batch.getBytes(), wordBegin, wordEnd - wordBegin);
+    }
+
+    @Override
+    public boolean advance() {
+        if(++index == batchEnd) {
+            boolean wrapped = index == generator.getSize();
+            fetch(wrapped ? 0 : index);
+            return wrapped;
+        }
+        wordBegin = wordEnd + 1;
+        findWordEnd();
+        return false;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Factories for the generators in this package. The parameters of each type are listed on its factory.
+ */
+public final class BuiltinGenerators {
+    private BuiltinGenerators() {}
+
+    /**
+     * "example": the ExampleWordlistGenerator, no parameters.
+     */
+    public static class Example implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "example";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) {
+            return new ExampleWordlistGenerator();
+        }
+    }
+
+    /**
+     * "mask": parameter "mask", and optionally the custom charsets "charset1" to "charset9".
+     */
+    public static class Mask implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "mask";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) {
+            List<String> customCharsets = new ArrayList<>();
+            for(int i = 1; i <= 9 && spec.getParameters().containsKey("charset" + i); i++) {
+                customCharsets.add(spec.getParameter("charset" + i));
+            }
+            return new MaskWordlistGenerator(spec.getParameter("mask"), customCharsets.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * "dictionary": parameter "path", and optionally "index", "stride" and "bloomBitsPerWord". The path is resolved on
+     * the machine that creates the generator, so the file must be present on the server and on every client.
+     */
+    public static class Dictionary implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "dictionary";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) throws IOException {
+            String path = spec.getParameter("path");
+            return new DictionaryWordlistGenerator(new File(path),
+                    new File(spec.getParameter("index", path + DictionaryWordlistGenerator.INDEX_SUFFIX)),
+                    spec.getIntParameter("stride", DictionaryWordlistGenerator.DEFAULT_STRIDE),
+                    spec.getIntParameter("bloomBitsPerWord", DictionaryWordlistGenerator.DEFAULT_BLOOM_BITS_PER_WORD));
+        }
+    }
+
+    /**
+     * "product": the cartesian product of the children, no parameters.
+     */
+    public static class Product implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "product";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) throws IOException {
+            return new ProductWordlistGenerator(registry.createChildren(spec));
+        }
+    }
+
+    /**
+     * "concat": the children one after another, no parameters.
+     */
+    public static class Concat implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "concat";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) throws IOException {
+            return new ConcatWordlistGenerator(registry.createChildren(spec));
+        }
+    }
+
+    /**
+     * "filter": the words of the only child with a length in bytes in ["minLength", "maxLength"]. Both parameters
+     * are optional. Counting the matching words takes a scan of the child, so without the optional "size" parameter
+     * the count is stored as "size" in the spec. The server creates its generator first, so the clients get the spec
+     * with the size and only scan the part of the child up to their assignment.
+     */
+    public static class Filter implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "filter";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) throws IOException {
+            FilteredWordlistGenerator generator = new FilteredWordlistGenerator(createOnlyChild(spec, registry),
+                    FilteredWordlistGenerator.lengthBetween(spec.getIntParameter("minLength", 0),
+                            spec.getIntParameter("maxLength", Integer.MAX_VALUE)),
+                    spec.getLongParameter("size", -1));
+            if(!spec.getParameters().containsKey("size")) { spec.with("size", Long.toString(generator.getSize())); }
+            return generator;
+        }
+    }
+
+    /**
+     * "map": the words of the only child transformed by "mapping". The only mapping so far is "capitalize".
+     */
+    public static class Mapped implements WordlistGeneratorFactory {
+        @Override
+        public String getType() {
+            return "map";
+        }
+
+        @Override
+        public WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) throws IOException {
+            String mapping = spec.getParameter("mapping");
+            if(!mapping.equals("capitalize")) { throw new IllegalArgumentException("Unknown mapping " + mapping); }
+            return new MappedWordlistGenerator(createOnlyChild(spec, registry), MappedWordlistGenerator.CAPITALIZE);
+        }
+    }
+
+    private static WordlistGenerator createOnlyChild(GeneratorSpec spec, WordlistGeneratorRegistry registry)
+            throws IOException {
+        if(spec.getChildren().size() != 1) {
+            throw new IllegalArgumentException("Generator " + spec.getType() + " requires exactly one child");
+        }
+        return registry.create(spec.getChildren().get(0));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base class for generators built from other generators. Subclasses only implement the index arithmetic, sequential
+ * output goes through a cursor.
+ */
+public abstract class CompositeWordlistGenerator implements WordlistGenerator {
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    @Override
+    public void outputWords(long begin_incl, long end_excl, OutputStream os) throws IOException {
+        if(begin_incl < 0) throw new IllegalArgumentException("Negative begin index");
+        if(begin_incl > end_excl) throw new IllegalArgumentException("begin must be smaller than end");
+        if(end_excl > getSize()) throw new IllegalArgumentException("End exceeds size");
+        if(begin_incl == end_excl) return;
+
+        WordCursor cursor = cursor(begin_incl);
+        WordBuffer buffer = new WordBuffer(2 * FLUSH_SIZE);
+        for(long i = begin_incl; i < end_excl; i++) {
+            cursor.appendTo(buffer);
+            buffer.append((byte) '\n');
+            if(buffer.getLength() >= FLUSH_SIZE) {
+                buffer.writeTo(os);
+                buffer.clear();
+            }
+            if(i + 1 < end_excl) { cursor.advance(); }
+        }
+        buffer.writeTo(os);
+    }
+
+    /**
+     * Returns the index of the given word, or -1 instead of throwing if it is not in the wordlist.
+     */
+    static long tryIndexOf(WordlistGenerator generator, String word) {
+        try {
+            long index = generator.indexOf(word);
+            return index >= 0 && index < generator.getSize() ? index : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the index of the given word in [begin_incl, end_excl), or -1 instead of throwing if it is not there.
+     */
+    static long tryIndexOf(WordlistGenerator generator, String word, long begin_incl, long end_excl) {
+        try {
+            long index = generator.indexOf(word, begin_incl, end_excl);
+            return index >= begin_incl && index < end_excl ? index : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
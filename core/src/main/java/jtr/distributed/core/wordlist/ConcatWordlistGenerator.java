@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates all words of the first part, then all words of the second part, and so on.
+ */
+public class ConcatWordlistGenerator extends CompositeWordlistGenerator {
+    @Getter
+    private final List<WordlistGenerator> parts;
+    // Index of the first word of each part, and the total size at the end
+    private final long[] offsets;
+
+    public ConcatWordlistGenerator(WordlistGenerator... parts) {
+        this.parts = Arrays.asList(parts.clone());
+        this.offsets = new long[parts.length + 1];
+        for(int p = 0; p < parts.length; p++) {
+            try {
+                offsets[p + 1] = Math.addExact(offsets[p], parts[p].getSize());
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Concatenation size exceeds " + Long.MAX_VALUE);
+            }
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return offsets[parts.size()];
+    }
+
+    /**
+     * Returns the part that contains the given index, skipping empty parts.
+     */
+    private int partOf(long index) {
+        int p = Arrays.binarySearch(offsets, index);
+        if(p < 0) { return -p - 2; }
+        while(offsets[p + 1] == index) { p++; }
+        return p;
+    }
+
+    @Override
+    public WordCursor cursor(long index) {
+        if(index < 0 || index >= getSize()) { throw new IllegalArgumentException("Invalid index " + index); }
+        final int firstPart = partOf(index);
+        return new WordCursor() {
+            int part = firstPart;
+            WordCursor cursor = parts.get(firstPart).cursor(index - offsets[firstPart]);
+
+            @Override
+            public void appendTo(WordBuffer buffer) {
+                cursor.appendTo(buffer);
+            }
+
+            @Override
+            public boolean advance() {
+                if(!cursor.advance()) { return false; }
+                // The current part wrapped around, continue with the next non-empty one
+                boolean wrapped = false;
+                do {
+                    if(++part == parts.size()) {
+                        part = 0;
+                        wrapped = true;
+                    }
+                } while(parts.get(part).getSize() == 0);
+                cursor = parts.get(part).cursor(0);
+                return wrapped;
+            }
+        };
+    }
+
+    @Override
+    public long indexOf(String word) {
+        for(int p = 0; p < parts.size(); p++) {
+            long index = tryIndexOf(parts.get(p), word);
+            if(index >= 0) { return offsets[p] + index; }
+        }
+        throw new IllegalArgumentException("\"" + word + "\" is not in any part");
+    }
+
+    @Override
+    public long indexOf(String word, long begin_incl, long end_excl) {
+        for(int p = 0; p < parts.size(); p++) {
+            final long begin = Math.max(begin_incl, offsets[p]), end = Math.min(end_excl, offsets[p + 1]);
+            if(begin >= end) { continue; }
+            long index = tryIndexOf(parts.get(p), word, begin - offsets[p], end - offsets[p]);
+            if(index >= 0) { return offsets[p] + index; }
+        }
+        throw new IllegalArgumentException("\"" + word + "\" is not in [" + begin_incl + ", " + end_excl + ")");
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import com.esotericsoftware.minlog.Log;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Serves the lines of a dictionary file, which may be larger than 2 GiB, from a memory mapping. Lines are output
+ * verbatim, a missing newline after the last line is added.
+ *
+ * Random access goes through an index file next to the dictionary, which is built on first use and rebuilt when the
+ * dictionary changes. For every block of {@code stride} lines it holds the byte offset of the first line, so that
+ * seeking to any index scans at most one block, and a Bloom filter of the block's lines. indexOf checks the Bloom
+ * filters of the blocks in the given range in order, and only scans the blocks that may contain the word.
+ */
+public class DictionaryWordlistGenerator implements WordlistGenerator {
+    public static final int DEFAULT_STRIDE = 1024, DEFAULT_BLOOM_BITS_PER_WORD = 8;
+    public static final String INDEX_SUFFIX = ".jtridx";
+    private static final String LOG_DICTIONARY = "dictionary";
+    private static final long INDEX_MAGIC = 0x4A5452494458_0001L; // "JTRIDX", version 1
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+    @Getter
+    private final File dictionary;
+    private final int stride, bloomBytes, bloomHashes;
+    private final Mapping dictionaryMapping, indexMapping;
+    private final long lineCount;
+    private final boolean lastLineTerminated;
+    private final long[] blockOffsets;
+
+    public DictionaryWordlistGenerator(File dictionary) throws IOException {
+        this(dictionary, new File(dictionary.getPath() + INDEX_SUFFIX), DEFAULT_STRIDE, DEFAULT_BLOOM_BITS_PER_WORD);
+    }
+
+    /**
+     * @param stride          number of lines per index block
+     * @param bloomBitsPerWord size of the Bloom filters, the false positive rate is about 2% at 8 bits per word
+     */
+    public DictionaryWordlistGenerator(File dictionary, File index, int stride, int bloomBitsPerWord)
+            throws IOException {
+        if(stride <= 0 || bloomBitsPerWord <= 0 || ((long) stride * bloomBitsPerWord) % 8 != 0) {
+            throw new IllegalArgumentException("Invalid stride " + stride + " / bits per word " + bloomBitsPerWord);
+        }
+        this.dictionary = dictionary;
+        this.stride = stride;
+        this.bloomBytes = stride * bloomBitsPerWord / 8;
+        this.bloomHashes = Math.max(1, (int) Math.round(bloomBitsPerWord * Math.log(2)));
+        this.dictionaryMapping = new Mapping(dictionary);
+        this.lastLineTerminated = dictionaryMapping.size == 0
+                || dictionaryMapping.get(dictionaryMapping.size - 1) == '\n';
+
+        if(!isIndexValid(index)) {
+            Log.info(LOG_DICTIONARY, "Building index " + index);
+            buildIndex(index);
+        }
+        this.indexMapping = new Mapping(index);
+        this.lineCount = indexMapping.getLong(32);
+        final int blocks = (int) indexMapping.getLong(40);
+        final long offsetsBegin = INDEX_HEADER_SIZE + (long) blocks * bloomBytes;
+        this.blockOffsets = new long[blocks];
+        for(int block = 0; block < blocks; block++) {
+            blockOffsets[block] = indexMapping.getLong(offsetsBegin + block * 8L);
+        }
+    }
+
+    private boolean isIndexValid(File index) throws IOException {
+        if(!index.isFile() || index.length() < INDEX_HEADER_SIZE) { return false; }
+        try(RandomAccessFile file = new RandomAccessFile(index, "r")) {
+            return file.readLong() == INDEX_MAGIC
+                    && file.readInt() == stride
+                    && file.readInt() == bloomBytes
+                    && file.readLong() == dictionaryMapping.size
+                    && file.readLong() == dictionary.lastModified();
+        }
+    }
+
+    /**
+     * Scans the dictionary once, hashing each line into the Bloom filter of its block and recording the offset of the
+     * first line of each block.
+     */
+    private void buildIndex(File index) throws IOException {
+        File tmp = new File(index.getPath() + ".tmp");
+        try(FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(INDEX_HEADER_SIZE);
+            ByteBuffer bloom = ByteBuffer.allocate(bloomBytes);
+            long[] offsets = new long[16];
+            long lines = 0, hash = FNV_OFFSET;
+            offsets[0] = 0;
+            final long size = dictionaryMapping.size;
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            for(long bufferBegin = 0; bufferBegin < size; bufferBegin += buffer.length) {
+                final int length = (int) Math.min(buffer.length, size - bufferBegin);
+                dictionaryMapping.read(bufferBegin, buffer, length);
+                for(int i = 0; i < length; i++) {
+                    final long position = bufferBegin + i;
+                    if(buffer[i] != '\n') {
+                        hash = (hash ^ (buffer[i] & 0xff)) * FNV_PRIME;
+                        if(position != size - 1) { continue; }
+                    }
+                    addToBloom(bloom, hash);
+                    hash = FNV_OFFSET;
+                    if(++lines % stride == 0) {
+                        bloom.position(bloomBytes);
+                        writeFully(channel, bloom);
+                        int block = (int) (lines / stride);
+                        if(block == offsets.length) { offsets = Arrays.copyOf(offsets, block * 2); }
+                        offsets[block] = position + 1;
+                    }
+                }
+            }
+            final long blocks = (lines + stride - 1) / stride;
+            if(lines % stride != 0) {
+                bloom.position(bloomBytes);
+                writeFully(channel, bloom);
+            }
+            ByteBuffer offsetBuffer = ByteBuffer.allocate((int) (blocks * 8));
+            for(int block = 0; block < blocks; block++) { offsetBuffer.putLong(offsets[block]); }
+            writeFully(channel, offsetBuffer);
+
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+            header.putLong(INDEX_MAGIC).putInt(stride).putInt(bloomBytes).putLong(size)
+                    .putLong(dictionary.lastModified()).putLong(lines).putLong(blocks);
+            header.position(INDEX_HEADER_SIZE);
+            channel.position(0);
+            writeFully(channel, header);
+        }
+        if(index.exists() && !index.delete()) { throw new IOException("Could not delete old index " + index); }
+        if(!tmp.renameTo(index)) { throw new IOException("Could not rename " + tmp + " to " + index); }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) { channel.write(buffer); }
+        buffer.clear();
+        if(buffer.hasArray()) { Arrays.fill(buffer.array(), (byte) 0); }
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L, FNV_PRIME = 0x100000001b3L;
+
+    private static long hash(byte[] word) {
+        long hash = FNV_OFFSET;
+        for(byte b : word) { hash = (hash ^ (b & 0xff)) * FNV_PRIME; }
+        return hash;
+    }
+
+    /**
+     * Returns the Bloom filter bits of a word with the given hash, which are the same in every block.
+     */
+    private int[] bloomBits(long hash) {
+        // Finalize the FNV hash so that both halves are well mixed, then use double hashing
+        long mixed = hash ^ (hash >>> 33);
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        final int h1 = (int) mixed, h2 = (int) (mixed >>> 32) | 1;
+        int[] bits = new int[bloomHashes];
+        for(int i = 0; i < bloomHashes; i++) {
+            bits[i] = Math.floorMod(h1 + i * h2, bloomBytes * 8);
+        }
+        return bits;
+    }
+
+    private void addToBloom(ByteBuffer bloom, long hash) {
+        for(int bit : bloomBits(hash)) {
+            bloom.put(bit >>> 3, (byte) (bloom.get(bit >>> 3) | (1 << (bit & 7))));
+        }
+    }
+
+    private boolean mayContain(int block, int[] bits) {
+        final long bloomBegin = INDEX_HEADER_SIZE + (long) block * bloomBytes;
+        for(int bit : bits) {
+            if((indexMapping.get(bloomBegin + (bit >>> 3)) & (1 << (bit & 7))) == 0) { return false; }
+        }
+        return true;
+    }
+
+    @Override
+    public long getSize() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the byte offset of the line with the given index, or the dictionary size for the index lineCount.
+     */
+    private long offsetOf(long index) {
+        if(index == lineCount) { return dictionaryMapping.size; }
+        long offset = blockOffsets[(int) (index / stride)];
+        for(long skip = index % stride; skip > 0; offset++) {
+            if(dictionaryMapping.get(offset) == '\n') { skip--; }
+        }
+        return offset;
+    }
+
+    @Override
+    public void outputWords(long begin_incl, long end_excl, OutputStream os) throws IOException {
+        if(begin_incl < 0) throw new IllegalArgumentException("Negative begin index");
+        if(begin_incl > end_excl) throw new IllegalArgumentException("begin must be smaller than end");
+        if(end_excl > getSize()) throw new IllegalArgumentException("End exceeds size");
+        if(begin_incl == end_excl) return;
+
+        dictionaryMapping.copy(offsetOf(begin_incl), offsetOf(end_excl), os);
+        if(end_excl == lineCount && !lastLineTerminated) { os.write('\n'); }
+    }
+
+    @Override
+    public FileSlice getFileSlice(long begin_incl, long end_excl) {
+        if(begin_incl < 0) throw new IllegalArgumentException("Negative begin index");
+        if(begin_incl > end_excl) throw new IllegalArgumentException("begin must be smaller than end");
+        if(end_excl > getSize()) throw new IllegalArgumentException("End exceeds size");
+
+        long begin = offsetOf(begin_incl), end = offsetOf(end_excl);
+        return new FileSlice(dictionary, begin, end - begin, end_excl == lineCount && !lastLineTerminated);
+    }
+
+    @Override
+    public long indexOf(String word) {
+        return indexOf(word, 0, lineCount);
+    }
+
+    @Override
+    public long indexOf(String word, long begin_incl, long end_excl) {
+        final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        final int[] bits = bloomBits(hash(bytes));
+        final long begin = Math.max(0, begin_incl), end = Math.min(lineCount, end_excl);
+        for(long block = begin / stride; block * stride < end; block++) {
+            if(mayContain((int) block, bits)) {
+                long index = findInBlock((int) block, bytes, begin, end);
+                if(index >= 0) { return index; }
+            }
+        }
+        throw new IllegalArgumentException("\"" + word + "\" is not in lines [" + begin_incl + ", " + end_excl + ") of "
+                + dictionary);
+    }
+
+    /**
+     * Returns the first line of the given block in [begin, end) that equals the word, or -1.
+     */
+    private long findInBlock(int block, byte[] word, long begin, long end) {
+        final long blockEnd = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : dictionaryMapping.size;
+        final byte[] bytes = new byte[(int) (blockEnd - blockOffsets[block])];
+        dictionaryMapping.read(blockOffsets[block], bytes, bytes.length);
+        long line = (long) block * stride;
+        for(int lineBegin = 0; lineBegin < bytes.length && line < end; line++) {
+            int lineEnd = lineBegin;
+            while(lineEnd < bytes.length && bytes[lineEnd] != '\n') { lineEnd++; }
+            if(line >= begin && lineEnd - lineBegin == word.length) {
+                int i = 0;
+                while(i < word.length && bytes[lineBegin + i] == word[i]) { i++; }
+                if(i == word.length) { return line; }
+            }
+            lineBegin = lineEnd + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * A read-only mapping of a whole file, split into chunks that fit a MappedByteBuffer.
+     */
+    private static class Mapping {
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+        private final MappedByteBuffer[] chunks;
+        private final long size;
+
+        Mapping(File file) throws IOException {
+            try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                size = channel.size();
+                chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+                for(int i = 0; i < chunks.length; i++) {
+                    long begin = (long) i << CHUNK_BITS;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, begin, Math.min(size - begin, CHUNK_MASK + 1));
+                }
+            }
+        }
+
+        byte get(long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+        }
+
+        void read(long position, byte[] bytes, int count) {
+            for(int offset = 0; offset < count; ) {
+                ByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)].duplicate();
+                chunk.position((int) (position & CHUNK_MASK));
+                int length = Math.min(count - offset, chunk.remaining());
+                chunk.get(bytes, offset, length);
+                offset += length;
+                position += length;
+            }
+        }
+
+        long getLong(long position) {
+            long value = 0;
+            for(int i = 0; i < 8; i++) { value = (value << 8) | (get(position + i) & 0xff); }
+            return value;
+        }
+
+        /**
+         * Writes the bytes [begin, end) to the given stream in large slices.
+         */
+        void copy(long begin, long end, OutputStream os) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, end - begin)];
+            while(begin < end) {
+                ByteBuffer chunk = chunks[(int) (begin >>> CHUNK_BITS)].duplicate();
+                chunk.position((int) (begin & CHUNK_MASK));
+                int length = (int) Math.min(Math.min(buffer.length, end - begin), chunk.remaining());
+                chunk.get(buffer, 0, length);
+                os.write(buffer, 0, length);
+                begin += length;
+            }
+        }
+    }
+}
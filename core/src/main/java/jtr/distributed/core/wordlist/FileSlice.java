@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.File;
+
+/**
+ * A byte range of a local file that holds a range of a wordlist, one word per line.
+ */
+@Data
+@AllArgsConstructor
+public class FileSlice {
+    File file;
+    long offset, length;
+    // True if the slice ends with the last line of the file and that line has no trailing newline
+    boolean newlineMissing;
+}
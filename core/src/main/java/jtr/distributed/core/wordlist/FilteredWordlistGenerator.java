@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Generates the words of the source that match a predicate, in the source's order.
+ *
+ * The size of the result is only known after testing every word. The generator keeps a checkpoint every
+ * CHECKPOINT_INTERVAL source words, holding the number of matching words before it, and builds them on demand: seeking
+ * and indexOf scan the source up to the word they need, then test at most one interval of words. getSize scans the
+ * whole source once, unless the size was passed to the constructor. This is meant for sources of up to a few billion
+ * words: for larger sources the interval grows to keep the number of checkpoints at MAX_CHECKPOINTS, and sources that
+ * would need an interval above MAX_CHECKPOINT_INTERVAL are rejected.
+ */
+public class FilteredWordlistGenerator extends CompositeWordlistGenerator {
+    public static final int CHECKPOINT_INTERVAL = 4096;
+    public static final int MAX_CHECKPOINTS = 1 << 20; // 8 MiB of checkpoints
+    public static final int MAX_CHECKPOINT_INTERVAL = 1 << 20; // Source words tested per seek
+
+    public interface WordPredicate {
+        /**
+         * Tests the UTF-8 encoded word bytes[offset, offset + length).
+         */
+        boolean test(byte[] bytes, int offset, int length);
+    }
+
+    /**
+     * Matches words with a length in bytes in [min, max].
+     */
+    public static WordPredicate lengthBetween(int min, int max) {
+        return (bytes, offset, length) -> length >= min && length <= max;
+    }
+
+    @Getter
+    private final WordlistGenerator source;
+    private final WordPredicate predicate;
+    private final long sourceSize;
+    private final int checkpointInterval;
+    // matchesBefore[c]: number of matching source words before source index c * checkpointInterval, the last entry
+    // holds the total. Only the first indexedCheckpoints entries are valid.
+    private final long[] matchesBefore;
+    // -1 until known
+    private volatile long size;
+    // The fields below are guarded by this
+    private int indexedCheckpoints = 1;
+    // At the source word of the first checkpoint that is not indexed yet, null until the index is first extended
+    private WordCursor indexCursor = null;
+    private final WordBuffer indexWord = new WordBuffer();
+
+    public FilteredWordlistGenerator(WordlistGenerator source, WordPredicate predicate) {
+        this(source, predicate, -1);
+    }
+
+    /**
+     * @param size The number of matching words if it is already known, e.g. from an earlier getSize, or -1.
+     * @throws IllegalArgumentException If the source has more than MAX_CHECKPOINTS * MAX_CHECKPOINT_INTERVAL words.
+     */
+    public FilteredWordlistGenerator(WordlistGenerator source, WordPredicate predicate, long size) {
+        this.source = source;
+        this.predicate = predicate;
+        this.sourceSize = source.getSize();
+        final long interval = Math.max(CHECKPOINT_INTERVAL, (sourceSize - 1) / MAX_CHECKPOINTS + 1);
+        if(interval > MAX_CHECKPOINT_INTERVAL) { throw new IllegalArgumentException("Cannot filter " + sourceSize
+                + " words, the source of a filter may have at most " + (long) MAX_CHECKPOINTS * MAX_CHECKPOINT_INTERVAL
+                + " words"); }
+        this.checkpointInterval = (int) interval;
+        this.matchesBefore = new long[Math.toIntExact((sourceSize + interval - 1) / interval) + 1];
+        this.size = sourceSize == 0 ? 0 : size;
+    }
+
+    /**
+     * Tests the source words up to the next checkpoint.
+     */
+    private synchronized void indexNextCheckpoint() {
+        final long from = (long) (indexedCheckpoints - 1) * checkpointInterval;
+        final long to = Math.min(from + checkpointInterval, sourceSize);
+        if(indexCursor == null) { indexCursor = source.cursor(from); }
+        long matches = matchesBefore[indexedCheckpoints - 1];
+        for(long i = from; i < to; i++) {
+            if(matches(indexCursor, indexWord)) { matches++; }
+            indexCursor.advance();
+        }
+        matchesBefore[indexedCheckpoints++] = matches;
+        if(indexedCheckpoints == matchesBefore.length) {
+            indexCursor = null;
+            if(size >= 0 && size != matches) {
+                throw new IllegalStateException(matches + " words match the filter, but its size was given as "
+                        + size);
+            }
+            size = matches;
+        }
+    }
+
+    /**
+     * Indexes checkpoints until the last one has more than the given number of matches before it, or all are indexed.
+     *
+     * @return The number of valid entries of matchesBefore.
+     */
+    private synchronized int indexUntilMatches(long matches) {
+        while(indexedCheckpoints < matchesBefore.length && matchesBefore[indexedCheckpoints - 1] <= matches) {
+            indexNextCheckpoint();
+        }
+        return indexedCheckpoints;
+    }
+
+    /**
+     * Indexes checkpoints until the given one is indexed.
+     */
+    private synchronized void indexUntilCheckpoint(int checkpoint) {
+        while(indexedCheckpoints <= checkpoint) { indexNextCheckpoint(); }
+    }
+
+    private boolean matches(WordCursor cursor, WordBuffer word) {
+        word.clear();
+        cursor.appendTo(word);
+        return predicate.test(word.getBytes(), 0, word.getLength());
+    }
+
+    @Override
+    public long getSize() {
+        if(size < 0) { indexUntilCheckpoint(matchesBefore.length - 1); }
+        return size;
+    }
+
+    @Override
+    public WordCursor cursor(long index) {
+        if(index < 0 || index >= getSize()) { throw new IllegalArgumentException("Invalid index " + index); }
+        // Find the last checkpoint with at most index matches before it, then skip to the match
+        final int indexed = indexUntilMatches(index);
+        int checkpoint = Arrays.binarySearch(matchesBefore, 0, indexed, index);
+        if(checkpoint < 0) { checkpoint = -checkpoint - 2; }
+        while(checkpoint + 1 < indexed && matchesBefore[checkpoint + 1] <= index) { checkpoint++; }
+        final WordCursor cursor = source.cursor((long) checkpoint * checkpointInterval);
+        final WordBuffer current = new WordBuffer();
+        for(long remaining = index - matchesBefore[checkpoint]; ; cursor.advance()) {
+            if(matches(cursor, current) && remaining-- == 0) { break; }
+        }
+        return new WordCursor() {
+            @Override
+            public void appendTo(WordBuffer buffer) {
+                buffer.append(current.getBytes(), 0, current.getLength());
+            }
+
+            @Override
+            public boolean advance() {
+                boolean wrapped = false;
+                do {
+                    wrapped |= cursor.advance();
+                } while(!matches(cursor, current));
+                return wrapped;
+            }
+        };
+    }
+
+    @Override
+    public long indexOf(String word) {
+        final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        if(!predicate.test(bytes, 0, bytes.length)) { throw new IllegalArgumentException("\"" + word
+                + "\" does not match the filter"); }
+        final long sourceIndex = source.indexOf(word);
+        final int checkpoint = (int) (sourceIndex / checkpointInterval);
+        indexUntilCheckpoint(checkpoint);
+        long index = matchesBefore[checkpoint];
+        WordCursor cursor = source.cursor((long) checkpoint * checkpointInterval);
+        WordBuffer buffer = new WordBuffer();
+        for(long i = (long) checkpoint * checkpointInterval; i < sourceIndex; i++) {
+            if(matches(cursor, buffer)) { index++; }
+            cursor.advance();
+        }
+        return index;
+    }
+}
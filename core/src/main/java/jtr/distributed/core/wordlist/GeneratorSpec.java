@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializable description of a wordlist generator: the type under which its factory is registered in the
+ * WordlistGeneratorRegistry, its parameters, and the specs of its parts for composite generators. The server sends it
+ * with every assignment, so that a job can switch generators without redeploying the client.
+ *
+ * Example: new GeneratorSpec("product").withChild(new GeneratorSpec("dictionary").with("path", "words.txt"))
+ *                                      .withChild(new GeneratorSpec("mask").with("mask", "?d?d"))
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GeneratorSpec {
+    String type;
+    Map<String, String> parameters = new LinkedHashMap<>();
+    List<GeneratorSpec> children = new ArrayList<>();
+
+    public GeneratorSpec(String type) {
+        this.type = type;
+    }
+
+    public GeneratorSpec with(String name, String value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    public GeneratorSpec withChild(GeneratorSpec child) {
+        children.add(child);
+        return this;
+    }
+
+    /**
+     * Returns the given parameter, or throws an IllegalArgumentException if it is missing.
+     */
+    public String getParameter(String name) {
+        String value = parameters.get(name);
+        if(value == null) { throw new IllegalArgumentException("Generator " + type + " requires parameter " + name); }
+        return value;
+    }
+
+    public String getParameter(String name, String defaultValue) {
+        return parameters.getOrDefault(name, defaultValue);
+    }
+
+    public int getIntParameter(String name, int defaultValue) {
+        String value = parameters.get(name);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " of generator " + type + " is not a number: "
+                    + value);
+        }
+    }
+
+    public long getLongParameter(String name, long defaultValue) {
+        String value = parameters.get(name);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " of generator " + type + " is not a number: "
+                    + value);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.Getter;
+
+/**
+ * Transforms each word of the source, e.g. to capitalize it. Size and order are those of the source, so the mapping
+ * must be one-to-one.
+ */
+public class MappedWordlistGenerator extends CompositeWordlistGenerator {
+    public interface WordMapping {
+        /**
+         * Appends the mapped form of the UTF-8 encoded word bytes[offset, offset + length) to the buffer.
+         */
+        void map(byte[] bytes, int offset, int length, WordBuffer out);
+
+        /**
+         * Returns the source word that maps to the given word, or throws an IllegalArgumentException if there is none.
+         */
+        String unmap(String word);
+    }
+
+    /**
+     * Uppercases the first character, if it is an ASCII letter. This is only one-to-one if no source word starts with an
+     * uppercase letter.
+     */
+    public static final WordMapping CAPITALIZE = new WordMapping() {
+        @Override
+        public void map(byte[] bytes, int offset, int length, WordBuffer out) {
+            int begin = out.getLength();
+            out.append(bytes, offset, length);
+            if(length > 0 && bytes[offset] >= 'a' && bytes[offset] <= 'z') {
+                out.getBytes()[begin] = (byte) (bytes[offset] - 'a' + 'A');
+            }
+        }
+
+        @Override
+        public String unmap(String word) {
+            if(word.isEmpty()) { return word; }
+            char first = word.charAt(0);
+            if(first >= 'a' && first <= 'z') { throw new IllegalArgumentException("\"" + word + "\" is not capitalized"); }
+            return first >= 'A' && first <= 'Z' ? Character.toLowerCase(first) + word.substring(1) : word;
+        }
+    };
+
+    @Getter
+    private final WordlistGenerator source;
+    private final WordMapping mapping;
+
+    public MappedWordlistGenerator(WordlistGenerator source, WordMapping mapping) {
+        this.source = source;
+        this.mapping = mapping;
+    }
+
+    @Override
+    public long getSize() {
+        return source.getSize();
+    }
+
+    @Override
+    public WordCursor cursor(long index) {
+        final WordCursor cursor = source.cursor(index);
+        final WordBuffer sourceWord = new WordBuffer();
+        return new WordCursor() {
+            @Override
+            public void appendTo(WordBuffer buffer) {
+                sourceWord.clear();
+                cursor.appendTo(sourceWord);
+                mapping.map(sourceWord.getBytes(), 0, sourceWord.getLength(), buffer);
+            }
+
+            @Override
+            public boolean advance() {
+                return cursor.advance();
+            }
+        };
+    }
+
+    @Override
+    public long indexOf(String word) {
+        return source.indexOf(mapping.unmap(word));
+    }
+
+    @Override
+    public long indexOf(String word, long begin_incl, long end_excl) {
+        return source.indexOf(mapping.unmap(word), begin_incl, end_excl);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generates all words matching a John the Ripper style mask, e.g. "?u?l?l?l?d?d". Supported placeholders are ?l
+ * (lowercase), ?u (uppercase), ?d (digits), ?s (specials), ?a (all of the previous), ?1 to ?9 (custom charsets, which
+ * may contain placeholders themselves) and ?? (a literal '?'). Any other character is a literal.
+ *
+ * Like John's mask mode, the leftmost position changes fastest: the word at index i has the digits of i in the mixed
+ * radix given by the charset sizes, least significant digit first.
+ */
+public class MaskWordlistGenerator implements WordlistGenerator {
+    public static final String LOWER = "abcdefghijklmnopqrstuvwxyz",
+                               UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+                               DIGITS = "0123456789",
+                               SPECIALS = " !\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Getter
+    private final String mask;
+    @Getter
+    private final String[] customCharsets;
+    // Per position: the characters, their UTF-8 encodings, and the index of each character (-1 if not in the charset)
+    private final char[][] charsets;
+    private final byte[][][] encodedCharsets;
+    private final int[][] charsetIndices;
+    private final long size;
+    // True if every character encodes to a single byte, so that each position has a fixed offset in the line
+    private final boolean fixedWidth;
+
+    public MaskWordlistGenerator(String mask, String... customCharsets) {
+        this.mask = mask;
+        this.customCharsets = customCharsets.clone();
+        String[] positions = parse(mask, customCharsets, true);
+        if(positions.length == 0) { throw new IllegalArgumentException("Empty mask"); }
+
+        charsets = new char[positions.length][];
+        encodedCharsets = new byte[positions.length][][];
+        charsetIndices = new int[positions.length][];
+        long size = 1;
+        boolean fixedWidth = true;
+        for(int p = 0; p < positions.length; p++) {
+            charsets[p] = positions[p].toCharArray();
+            if(charsets[p].length == 0) { throw new IllegalArgumentException("Empty charset at position " + p); }
+            encodedCharsets[p] = new byte[charsets[p].length][];
+            char maxChar = 0;
+            for(int i = 0; i < charsets[p].length; i++) {
+                encodedCharsets[p][i] = String.valueOf(charsets[p][i]).getBytes(StandardCharsets.UTF_8);
+                fixedWidth &= encodedCharsets[p][i].length == 1;
+                maxChar = (char) Math.max(maxChar, charsets[p][i]);
+            }
+            charsetIndices[p] = new int[maxChar + 1];
+            Arrays.fill(charsetIndices[p], -1);
+            for(int i = 0; i < charsets[p].length; i++) {
+                charsetIndices[p][charsets[p][i]] = i;
+            }
+            try {
+                size = Math.multiplyExact(size, charsets[p].length);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Keyspace of mask " + mask + " exceeds " + Long.MAX_VALUE);
+            }
+        }
+        this.size = size;
+        this.fixedWidth = fixedWidth;
+    }
+
+    /**
+     * Expands the given mask into one charset per position, without duplicate characters.
+     */
+    private static String[] parse(String mask, String[] customCharsets, boolean allowCustom) {
+        List<String> positions = new ArrayList<>();
+        for(int i = 0; i < mask.length(); i++) {
+            char c = mask.charAt(i);
+            if(c != '?') {
+                positions.add(String.valueOf(c));
+                continue;
+            }
+            if(++i == mask.length()) { throw new IllegalArgumentException("Mask ends with '?': " + mask); }
+            char placeholder = mask.charAt(i);
+            switch(placeholder) {
+                case 'l': positions.add(LOWER); break;
+                case 'u': positions.add(UPPER); break;
+                case 'd': positions.add(DIGITS); break;
+                case 's': positions.add(SPECIALS); break;
+                case 'a': positions.add(LOWER + UPPER + DIGITS + SPECIALS); break;
+                case '?': positions.add("?"); break;
+                default:
+                    int custom = placeholder - '1';
+                    if(!allowCustom || placeholder < '1' || placeholder > '9' || custom >= customCharsets.length) {
+                        throw new IllegalArgumentException("Unknown placeholder ?" + placeholder + " in " + mask);
+                    }
+                    // A custom charset is the union of its own placeholders and literals
+                    positions.add(String.join("", parse(customCharsets[custom], customCharsets, false)));
+            }
+        }
+        String[] result = new String[positions.size()];
+        for(int p = 0; p < result.length; p++) {
+            Set<Character> unique = new LinkedHashSet<>();
+            for(char c : positions.get(p).toCharArray()) { unique.add(c); }
+            StringBuilder charset = new StringBuilder(unique.size());
+            for(char c : unique) { charset.append(c); }
+            result[p] = charset.toString();
+        }
+        return result;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of positions, i.e. the length of each word in characters.
+     */
+    public int getLength() {
+        return charsets.length;
+    }
+
+    /**
+     * Returns the characters at the given position, in the order they are iterated in.
+     */
+    public String getCharset(int position) {
+        return new String(charsets[position]);
+    }
+
+    @Override
+    public void outputWords(long begin_incl, long end_excl, OutputStream os) throws IOException {
+        if(begin_incl < 0) throw new IllegalArgumentException("Negative begin index");
+        if(begin_incl > end_excl) throw new IllegalArgumentException("begin must be smaller than end");
+        if(end_excl > getSize()) throw new IllegalArgumentException("End exceeds size");
+        if(begin_incl == end_excl) return;
+
+        final int length = charsets.length;
+        // Unrank the first word, then count up like an odometer
+        final int[] digits = new int[length];
+        long rest = begin_incl;
+        for(int p = 0; p < length; p++) {
+            digits[p] = (int) (rest % charsets[p].length);
+            rest /= charsets[p].length;
+        }
+        final byte[] line = new byte[length * 3 + 1];
+        int lineLength = encode(digits, line);
+
+        final byte[] buffer = new byte[Math.max(BUFFER_SIZE, line.length)];
+        int bufferLength = 0;
+        for(long i = begin_incl; ; ) {
+            if(bufferLength + lineLength > buffer.length) {
+                os.write(buffer, 0, bufferLength);
+                bufferLength = 0;
+            }
+            System.arraycopy(line, 0, buffer, bufferLength, lineLength);
+            bufferLength += lineLength;
+            if(++i == end_excl) { break; }
+
+            int p = 0;
+            while(++digits[p] == charsets[p].length) {
+                digits[p] = 0;
+                p++;
+            }
+            if(fixedWidth) {
+                for(int q = 0; q <= p; q++) { line[q] = encodedCharsets[q][digits[q]][0]; }
+            } else {
+                lineLength = encode(digits, line);
+            }
+        }
+        os.write(buffer, 0, bufferLength);
+    }
+
+    @Override
+    public WordCursor cursor(long index) {
+        if(index < 0 || index >= size) { throw new IllegalArgumentException("Invalid index " + index); }
+        final int[] digits = new int[charsets.length];
+        for(int p = 0; p < charsets.length; p++) {
+            digits[p] = (int) (index % charsets[p].length);
+            index /= charsets[p].length;
+        }
+        return new WordCursor() {
+            @Override
+            public void appendTo(WordBuffer buffer) {
+                for(int p = 0; p < digits.length; p++) {
+                    byte[] encoded = encodedCharsets[p][digits[p]];
+                    buffer.append(encoded, 0, encoded.length);
+                }
+            }
+
+            @Override
+            public boolean advance() {
+                for(int p = 0; p < digits.length; p++) {
+                    if(++digits[p] < charsets[p].length) { return false; }
+                    digits[p] = 0;
+                }
+                return true;
+            }
+        };
+    }
+
+    private int encode(int[] digits, byte[] line) {
+        int offset = 0;
+        for(int p = 0; p < digits.length; p++) {
+            byte[] encoded = encodedCharsets[p][digits[p]];
+            System.arraycopy(encoded, 0, line, offset, encoded.length);
+            offset += encoded.length;
+        }
+        line[offset++] = '\n';
+        return offset;
+    }
+
+    @Override
+    public long indexOf(String word) {
+        if(word.length() != charsets.length) { throw new IllegalArgumentException("\"" + word
+                + "\" does not have length " + charsets.length); }
+        long index = 0;
+        for(int p = charsets.length - 1; p >= 0; p--) {
+            char c = word.charAt(p);
+            int digit = c < charsetIndices[p].length ? charsetIndices[p][c] : -1;
+            if(digit < 0) { throw new IllegalArgumentException("\"" + word + "\" does not match mask " + mask
+                    + " at position " + p); }
+            index = index * charsets[p].length + digit;
+        }
+        return index;
+    }
+}
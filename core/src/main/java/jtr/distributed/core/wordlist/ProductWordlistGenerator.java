@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates every concatenation of one word from each part, e.g. word x separator x year. Like nested loops, the last
+ * part changes fastest: index i consists of the digits of i in the mixed radix given by the part sizes, most
+ * significant digit first.
+ */
+public class ProductWordlistGenerator extends CompositeWordlistGenerator {
+    @Getter
+    private final List<WordlistGenerator> parts;
+    private final long size;
+
+    public ProductWordlistGenerator(WordlistGenerator... parts) {
+        if(parts.length == 0) { throw new IllegalArgumentException("A product needs at least one part"); }
+        this.parts = Arrays.asList(parts.clone());
+        long size = 1;
+        for(WordlistGenerator part : parts) {
+            try {
+                size = Math.multiplyExact(size, part.getSize());
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Product size exceeds " + Long.MAX_VALUE);
+            }
+        }
+        this.size = size;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public WordCursor cursor(long index) {
+        if(index < 0 || index >= size) { throw new IllegalArgumentException("Invalid index " + index); }
+        final WordCursor[] cursors = new WordCursor[parts.size()];
+        for(int p = parts.size() - 1; p >= 0; p--) {
+            cursors[p] = parts.get(p).cursor(index % parts.get(p).getSize());
+            index /= parts.get(p).getSize();
+        }
+        return new WordCursor() {
+            @Override
+            public void appendTo(WordBuffer buffer) {
+                for(WordCursor cursor : cursors) { cursor.appendTo(buffer); }
+            }
+
+            @Override
+            public boolean advance() {
+                // Carry over to the previous part whenever a part wraps around
+                for(int p = cursors.length - 1; p >= 0; p--) {
+                    if(!cursors[p].advance()) { return false; }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Splits the word into the parts from right to left, so that the typically small trailing parts rule out most
+     * splits before the leading ones are queried. If several splits are possible, e.g. "abc" of ("a" | "ab") x
+     * ("bc" | "c"), the one with the smallest index is used, which is where the word is first output.
+     */
+    @Override
+    public long indexOf(String word) {
+        long index = indexOf(word, parts.size() - 1);
+        if(index < 0) { throw new IllegalArgumentException("\"" + word + "\" is not in the product"); }
+        return index;
+    }
+
+    /**
+     * Returns the smallest index of the word within the product of parts 0 to last, or -1.
+     */
+    private long indexOf(String word, int last) {
+        if(last == 0) { return tryIndexOf(parts.get(0), word); }
+        long smallest = -1;
+        for(int split = word.length(); split >= 0; split--) {
+            long partIndex = tryIndexOf(parts.get(last), word.substring(split));
+            if(partIndex < 0) { continue; }
+            long prefixIndex = indexOf(word.substring(0, split), last - 1);
+            if(prefixIndex < 0) { continue; }
+            long index = prefixIndex * parts.get(last).getSize() + partIndex;
+            if(smallest < 0 || index < smallest) { smallest = index; }
+        }
+        return smallest;
+    }
+}
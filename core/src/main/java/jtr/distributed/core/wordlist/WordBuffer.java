@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that words are assembled in. It is reused for all words, so after warming up, appending
+ * does not allocate.
+ */
+public class WordBuffer {
+    @Getter
+    private byte[] bytes;
+    @Getter
+    private int length = 0;
+
+    public WordBuffer() {
+        this(256);
+    }
+
+    public WordBuffer(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > bytes.length) { bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2)); }
+    }
+
+    public void append(byte b) {
+        ensureCapacity(length + 1);
+        bytes[length++] = b;
+    }
+
+    public void append(byte[] source, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+    }
+
+    /**
+     * Discards everything after the given length.
+     */
+    public void truncate(int length) {
+        if(length < 0 || length > this.length) { throw new IllegalArgumentException("Invalid length " + length); }
+        this.length = length;
+    }
+
+    public void clear() {
+        length = 0;
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(bytes, 0, length);
+    }
+
+    /**
+     * Decodes the bytes [offset, length) as UTF-8.
+     */
+    public String toString(int offset) {
+        return new String(bytes, offset, length - offset, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+/**
+ * Iterates over the words of a WordlistGenerator in index order, without allocating per word.
+ */
+public interface WordCursor {
+    /**
+     * Appends the current word, without a newline, to the given buffer.
+     */
+    void appendTo(WordBuffer buffer);
+
+    /**
+     * Moves to the next word, or back to the first one after the last.
+     *
+     * @return True if the cursor wrapped around to the first word.
+     */
+    boolean advance();
+}
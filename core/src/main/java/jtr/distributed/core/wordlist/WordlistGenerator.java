@@ -8,6 +8,8 @@
 package jtr.distributed.core.wordlist;
 
 import java.io.*;
+import java.util.Collections;
+import java.util.List;
 
 public interface WordlistGenerator {
     /**
@@ -22,11 +24,53 @@ public interface WordlistGenerator {
     void outputWords(long begin_incl, long end_excl, OutputStream os) throws IOException;
 
     /**
-     * Returns the index of the given word in the wordlist, or throws an IllegalArgumentException if the word is not
-     * in the wordlist.
+     * Returns the index of the first occurrence of the given word in the wordlist, or throws an
+     * IllegalArgumentException if the word is not in the wordlist.
      *
      * @return The index of the word in the wordlist. A call to outputWords(indexOf(word), indexOf(word)+1, os) must
      *        output the given word.
      */
     long indexOf(String word);
+
+    /**
+     * Returns the index of the first occurrence of the given word in [begin_incl, end_excl), or throws an
+     * IllegalArgumentException if it does not occur there. Use this if the word must be in a known range, e.g. the
+     * assignment it was reported from, so that a word that occurs more than once is found in that range. The default
+     * implementation only finds the occurrence returned by indexOf(word).
+     */
+    default long indexOf(String word, long begin_incl, long end_excl) {
+        long index = indexOf(word);
+        if(index < begin_incl || index >= end_excl) { throw new IllegalArgumentException("\"" + word
+                + "\" is not in [" + begin_incl + ", " + end_excl + ")"); }
+        return index;
+    }
+
+    /**
+     * Returns a cursor that starts at the given index. The default implementation fetches the words in batches
+     * through outputWords, generators that can step from one word to the next directly should override it.
+     */
+    default WordCursor cursor(long index) {
+        return new BufferedWordCursor(this, index);
+    }
+
+    /**
+     * Returns the part of a local file that contains exactly what outputWords(begin_incl, end_excl, os) would output,
+     * so that the words can be handed to John without copying them through the JVM.
+     *
+     * @return The slice, or null if the words are not stored in a file.
+     */
+    default FileSlice getFileSlice(long begin_incl, long end_excl) {
+        return null;
+    }
+
+    /**
+     * Returns disjoint blocks of the wordlist, most likely to contain the password first, so that the server can search
+     * them before the rest of the wordlist. The probabilities must not sum up to more than 1, the remaining probability
+     * is assumed to be spread evenly over the indices outside of the blocks.
+     *
+     * @return The blocks in the order they should be searched in, or an empty list if all words are equally likely.
+     */
+    default List<PriorityBlock> getPriorityBlocks() {
+        return Collections.emptyList();
+    }
 }
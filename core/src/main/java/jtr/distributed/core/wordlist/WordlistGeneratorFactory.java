@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import java.io.IOException;
+
+/**
+ * Creates wordlist generators of one type from their GeneratorSpec. Implementations are discovered with a
+ * ServiceLoader, so they need a public no-argument constructor and an entry in
+ * META-INF/services/jtr.distributed.core.wordlist.WordlistGeneratorFactory.
+ */
+public interface WordlistGeneratorFactory {
+    /**
+     * Returns the type name that GeneratorSpecs use to refer to this factory.
+     */
+    String getType();
+
+    /**
+     * Creates a generator from the given spec. Composite generators create their parts through the given registry.
+     *
+     * @throws IllegalArgumentException If the spec is invalid.
+     * @throws IOException If a file the generator depends on could not be read.
+     */
+    WordlistGenerator create(GeneratorSpec spec, WordlistGeneratorRegistry registry) throws IOException;
+}
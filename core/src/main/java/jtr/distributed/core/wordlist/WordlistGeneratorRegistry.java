@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Looks up WordlistGeneratorFactories by type. The built-in generators are created by BuiltinGenerators, further
+ * generators can be added by putting a jar with a META-INF/services entry on the classpath.
+ */
+public class WordlistGeneratorRegistry {
+    private static volatile WordlistGeneratorRegistry defaultRegistry = null;
+
+    private final Map<String, WordlistGeneratorFactory> factories = new TreeMap<>();
+
+    public WordlistGeneratorRegistry(ClassLoader classLoader) {
+        for(WordlistGeneratorFactory factory : ServiceLoader.load(WordlistGeneratorFactory.class, classLoader)) {
+            WordlistGeneratorFactory previous = factories.put(factory.getType(), factory);
+            if(previous != null) {
+                throw new IllegalStateException("Generator type " + factory.getType() + " is registered by both "
+                        + previous.getClass().getName() + " and " + factory.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Returns the registry for the classpath this class was loaded from.
+     */
+    public static WordlistGeneratorRegistry getDefault() {
+        if(defaultRegistry == null) {
+            synchronized(WordlistGeneratorRegistry.class) {
+                if(defaultRegistry == null) {
+                    defaultRegistry = new WordlistGeneratorRegistry(WordlistGeneratorRegistry.class.getClassLoader());
+                }
+            }
+        }
+        return defaultRegistry;
+    }
+
+    public Set<String> getTypes() {
+        return Collections.unmodifiableSet(factories.keySet());
+    }
+
+    /**
+     * Creates the generator described by the given spec, including all of its parts.
+     *
+     * @throws IllegalArgumentException If the type of the spec or one of its parts is unknown, or a spec is invalid.
+     * @throws IOException If a file a generator depends on could not be read.
+     */
+    public WordlistGenerator create(GeneratorSpec spec) throws IOException {
+        if(spec == null || spec.getType() == null) { throw new IllegalArgumentException("Generator spec without type"); }
+        WordlistGeneratorFactory factory = factories.get(spec.getType());
+        if(factory == null) {
+            throw new IllegalArgumentException("Unknown generator type " + spec.getType() + ", known types: "
+                    + factories.keySet());
+        }
+        return factory.create(spec, this);
+    }
+
+    /**
+     * Creates the generators for all children of the given spec.
+     */
+    public WordlistGenerator[] createChildren(GeneratorSpec spec) throws IOException {
+        if(spec.getChildren().isEmpty()) {
+            throw new IllegalArgumentException("Generator " + spec.getType() + " requires at least one child");
+        }
+        WordlistGenerator[] children = new WordlistGenerator[spec.getChildren().size()];
+        for(int i = 0; i < children.length; i++) {
+            children[i] = create(spec.getChildren().get(i));
+        }
+        return children;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistent;
+import static jtr.distributed.core.wordlist.GeneratorAssert.outputWords;
+import static jtr.distributed.core.wordlist.GeneratorAssert.words;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ConcatWordlistGeneratorTest {
+    @Test
+    public void emptyParts() {
+        ConcatWordlistGenerator generator = new ConcatWordlistGenerator(empty(), words("a", "b"), empty(), empty(),
+                words("b", "c"), empty());
+        assertEquals(Arrays.asList("a", "b", "b", "c"), outputWords(generator, 0, 4));
+        assertEquals(Arrays.asList("b", "c"), outputWords(generator, 2, 4));
+        assertConsistent(generator);
+        assertConsistent(empty());
+        assertConsistent(new ConcatWordlistGenerator(empty(), words("x")));
+    }
+
+    @Test
+    public void duplicatesWithinRange() {
+        ConcatWordlistGenerator generator = new ConcatWordlistGenerator(words("a", "b"), empty(), words("b", "c"),
+                words("a"));
+        assertEquals(1, generator.indexOf("b"));
+        assertEquals(2, generator.indexOf("b", 2, 5));
+        assertEquals(4, generator.indexOf("a", 1, 5));
+        try {
+            generator.indexOf("b", 3, 5);
+            fail("Found \"b\" in [3, 5)");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertConsistent(generator);
+        assertConsistent(new ConcatWordlistGenerator(new MaskWordlistGenerator("?d"), new MaskWordlistGenerator("?d?d"),
+                new MaskWordlistGenerator("?d")));
+    }
+
+    private static ConcatWordlistGenerator empty() {
+        return new ConcatWordlistGenerator();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistent;
+import static jtr.distributed.core.wordlist.GeneratorAssert.outputWords;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DictionaryWordlistGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void duplicateLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < 4000; i++) { lines.add(i == 100 || i == 3000 ? "dup" : "word" + i); }
+        DictionaryWordlistGenerator generator = dictionary(lines, 64);
+        assertEquals(4000, generator.getSize());
+
+        // The occurrence in the given range, regardless of earlier lookups
+        assertEquals(3000, generator.indexOf("dup", 2000, 4000));
+        assertEquals(100, generator.indexOf("dup"));
+        assertEquals(2900, generator.indexOf("word2900", 2000, 4000));
+        assertEquals(100, generator.indexOf("dup", 0, 2000));
+        assertEquals(3000, generator.indexOf("dup", 101, 4000));
+        assertEquals(3000, generator.indexOf("dup", 3000, 3001));
+        assertNotInRange(generator, "dup", 101, 3000);
+        assertNotInRange(generator, "dup", 3001, 4000);
+        assertNotInRange(generator, "word2900", 0, 2900);
+        assertNotInRange(generator, "missing", 0, 4000);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < 100; i++) { lines.add(i % 7 == 0 ? "dup" + (i % 3) : i % 11 == 0 ? "" : "w\u00e4rd" + i); }
+        for(int stride : new int[] {1, 3, DictionaryWordlistGenerator.DEFAULT_STRIDE}) {
+            DictionaryWordlistGenerator generator = dictionary(lines, stride);
+            assertEquals(lines, outputWords(generator, 0, lines.size()));
+            assertConsistent(generator);
+        }
+    }
+
+    private DictionaryWordlistGenerator dictionary(List<String> lines, int stride) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        File index = new File(file.getPath() + DictionaryWordlistGenerator.INDEX_SUFFIX);
+        return new DictionaryWordlistGenerator(file, index, stride,
+                DictionaryWordlistGenerator.DEFAULT_BLOOM_BITS_PER_WORD);
+    }
+
+    private static void assertNotInRange(WordlistGenerator generator, String word, long begin, long end) {
+        try {
+            long index = generator.indexOf(word, begin, end);
+            fail("Found \"" + word + "\" at " + index + " in [" + begin + ", " + end + ")");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistent;
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistentAt;
+import static jtr.distributed.core.wordlist.GeneratorAssert.outputWords;
+import static jtr.distributed.core.wordlist.GeneratorAssert.words;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FilteredWordlistGeneratorTest {
+    @Test
+    public void acrossCheckpoints() {
+        // More than one checkpoint interval of source words that do not match between the matching ones
+        WordlistGenerator source = new ConcatWordlistGenerator(new MaskWordlistGenerator("?d"),
+                new MaskWordlistGenerator("?d?d?d?d"), new MaskWordlistGenerator("?d?d"),
+                new MaskWordlistGenerator("?d?d?d?d"), new MaskWordlistGenerator("?d"));
+        FilteredWordlistGenerator generator = new FilteredWordlistGenerator(source,
+                FilteredWordlistGenerator.lengthBetween(1, 2));
+        assertEquals(120, generator.getSize());
+        assertEquals(Arrays.asList("9", "00"), outputWords(generator, 9, 11));
+        assertEquals(Arrays.asList("99", "0"), outputWords(generator, 109, 111));
+        // The first occurrence, even though the later one is further behind a checkpoint
+        assertEquals(3, generator.indexOf("3"));
+        assertConsistent(generator);
+        assertConsistent(new FilteredWordlistGenerator(source, FilteredWordlistGenerator.lengthBetween(1, 2), 120));
+    }
+
+    @Test
+    public void noMatches() {
+        FilteredWordlistGenerator generator = new FilteredWordlistGenerator(words("abc", "de"),
+                FilteredWordlistGenerator.lengthBetween(4, 5));
+        assertEquals(0, generator.getSize());
+        assertConsistent(generator);
+        assertConsistent(new FilteredWordlistGenerator(new ConcatWordlistGenerator(),
+                FilteredWordlistGenerator.lengthBetween(0, 1)));
+    }
+
+    @Test
+    public void largeSources() {
+        // Too many words for checkpoints every CHECKPOINT_INTERVAL words, so they are further apart
+        MaskWordlistGenerator source = new MaskWordlistGenerator("?a?a?a?a?a?a");
+        FilteredWordlistGenerator generator = new FilteredWordlistGenerator(source,
+                FilteredWordlistGenerator.lengthBetween(0, 6), source.getSize());
+        assertConsistentAt(generator, 0, 3 * FilteredWordlistGenerator.MAX_CHECKPOINT_INTERVAL + 5);
+
+        try {
+            new FilteredWordlistGenerator(new MaskWordlistGenerator("?a?a?a?a?a?a?a?a"),
+                    FilteredWordlistGenerator.lengthBetween(0, 8));
+            fail("Accepted a source of 95^8 words");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that outputWords, cursors and indexOf of a generator agree with each other.
+ */
+final class GeneratorAssert {
+    private GeneratorAssert() {}
+
+    /**
+     * Returns a generator of the given words in the given order, using the default cursor.
+     */
+    static WordlistGenerator words(String... words) {
+        final List<String> list = Arrays.asList(words);
+        return new WordlistGenerator() {
+            @Override
+            public long getSize() {
+                return list.size();
+            }
+
+            @Override
+            public void outputWords(long begin_incl, long end_excl, OutputStream os) throws IOException {
+                for(String word : list.subList((int) begin_incl, (int) end_excl)) {
+                    os.write((word + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            @Override
+            public long indexOf(String word) {
+                if(!list.contains(word)) { throw new IllegalArgumentException("\"" + word + "\" is not in " + list); }
+                return list.indexOf(word);
+            }
+        };
+    }
+
+    static List<String> outputWords(WordlistGenerator generator, long begin, long end) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            generator.outputWords(begin, end, os);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+        if(output.isEmpty()) { return new ArrayList<>(); }
+        assertTrue("Output must end with a newline", output.endsWith("\n"));
+        return new ArrayList<>(Arrays.asList(output.substring(0, output.length() - 1).split("\n", -1)));
+    }
+
+    /**
+     * Returns count words read with a cursor starting at begin, and whether it wrapped around after each of them.
+     */
+    static List<String> cursorWords(WordlistGenerator generator, long begin, int count, List<Boolean> wrapped) {
+        List<String> words = new ArrayList<>(count);
+        WordCursor cursor = generator.cursor(begin);
+        WordBuffer buffer = new WordBuffer();
+        for(int i = 0; i < count; i++) {
+            buffer.clear();
+            cursor.appendTo(buffer);
+            words.add(buffer.toString());
+            wrapped.add(cursor.advance());
+        }
+        return words;
+    }
+
+    /**
+     * Checks the whole generator, which must be small enough to output at once:
+     * - outputWords of random ranges match the complete output
+     * - a cursor from every index reads the same words, and wraps around exactly after the last one
+     * - indexOf of every word is the index at which the word is first output
+     */
+    static void assertConsistent(WordlistGenerator generator) {
+        final List<String> words = outputWords(generator, 0, generator.getSize());
+        final int size = words.size();
+        assertEquals("Size", generator.getSize(), size);
+
+        Random random = new Random(size);
+        for(int i = 0; i < 20 && size > 0; i++) {
+            int begin = random.nextInt(size + 1);
+            int end = begin + random.nextInt(size - begin + 1);
+            assertEquals("outputWords(" + begin + ", " + end + ")", words.subList(begin, end),
+                    outputWords(generator, begin, end));
+        }
+
+        final int steps = Math.min(size, 8);
+        for(int begin = 0; begin < size; begin++) {
+            List<Boolean> wrapped = new ArrayList<>();
+            List<String> expected = new ArrayList<>(steps);
+            List<Boolean> expectedWrapped = new ArrayList<>(steps);
+            for(int i = begin; i < begin + steps; i++) {
+                expected.add(words.get(i % size));
+                expectedWrapped.add((i + 1) % size == 0);
+            }
+            assertEquals("Cursor at " + begin, expected, cursorWords(generator, begin, steps, wrapped));
+            assertEquals("Wrap-around of the cursor at " + begin, expectedWrapped, wrapped);
+        }
+
+        Map<String, Integer> firstIndices = new HashMap<>();
+        for(int i = 0; i < size; i++) { firstIndices.putIfAbsent(words.get(i), i); }
+        for(int i = 0; i < size; i++) {
+            assertEquals("indexOf(\"" + words.get(i) + "\"), output at " + i,
+                    (long) firstIndices.get(words.get(i)), generator.indexOf(words.get(i)));
+        }
+    }
+
+    /**
+     * Like assertConsistent, but only around the given indices, for generators with unique words that are too large to
+     * output at once.
+     */
+    static void assertConsistentAt(WordlistGenerator generator, long... indices) {
+        for(long index : indices) {
+            final int count = (int) Math.min(8, generator.getSize() - index);
+            List<String> words = outputWords(generator, index, index + count);
+            assertEquals(count, words.size());
+            assertEquals("Cursor at " + index, words, cursorWords(generator, index, count, new ArrayList<>()));
+            for(int i = 0; i < count; i++) {
+                assertEquals("indexOf(\"" + words.get(i) + "\")", index + i, generator.indexOf(words.get(i)));
+            }
+        }
+    }
+}
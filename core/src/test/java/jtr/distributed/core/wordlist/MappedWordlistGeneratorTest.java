@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistent;
+import static jtr.distributed.core.wordlist.GeneratorAssert.outputWords;
+import static jtr.distributed.core.wordlist.GeneratorAssert.words;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MappedWordlistGeneratorTest {
+    @Test
+    public void capitalize() {
+        MappedWordlistGenerator generator = new MappedWordlistGenerator(words("ab", "cd", "1x", "\u00e4b"),
+                MappedWordlistGenerator.CAPITALIZE);
+        assertEquals(Arrays.asList("Ab", "Cd", "1x", "\u00e4b"), outputWords(generator, 0, 4));
+        assertEquals(0, generator.indexOf("Ab"));
+        assertEquals(1, generator.indexOf("Cd"));
+        try {
+            generator.indexOf("ab");
+            fail("Found a word that is not capitalized");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertConsistent(generator);
+    }
+
+    @Test
+    public void composedSources() {
+        assertConsistent(new MappedWordlistGenerator(new ProductWordlistGenerator(words("a", "b", "x"),
+                new MaskWordlistGenerator("?d")), MappedWordlistGenerator.CAPITALIZE));
+        MappedWordlistGenerator generator = new MappedWordlistGenerator(new ConcatWordlistGenerator(words("a", "b"),
+                words("b")), MappedWordlistGenerator.CAPITALIZE);
+        assertEquals(2, generator.indexOf("B", 2, 3));
+        assertConsistent(generator);
+    }
+}
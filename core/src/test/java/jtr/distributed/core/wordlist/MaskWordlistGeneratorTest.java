@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistent;
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistentAt;
+import static jtr.distributed.core.wordlist.GeneratorAssert.outputWords;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MaskWordlistGeneratorTest {
+    @Test
+    public void literals() {
+        MaskWordlistGenerator generator = new MaskWordlistGenerator("a?d??-");
+        assertEquals(10, generator.getSize());
+        assertEquals(Arrays.asList("a0?-", "a1?-", "a2?-"), outputWords(generator, 0, 3));
+        assertEquals(7, generator.indexOf("a7?-"));
+        assertNotInMask(generator, "b7?-");
+        assertNotInMask(generator, "a7?");
+        assertNotInMask(generator, "a7?--");
+        assertConsistent(generator);
+    }
+
+    @Test
+    public void leftmostPositionChangesFastest() {
+        MaskWordlistGenerator generator = new MaskWordlistGenerator("?d?l");
+        assertEquals(Arrays.asList("0a", "1a"), outputWords(generator, 0, 2));
+        assertEquals(Arrays.asList("9a", "0b"), outputWords(generator, 9, 11));
+        assertEquals(10 * 25 + 3, generator.indexOf("3z"));
+        assertConsistent(generator);
+    }
+
+    @Test
+    public void customCharsets() {
+        // Placeholders within custom charsets are expanded, duplicates are dropped
+        MaskWordlistGenerator generator = new MaskWordlistGenerator("?1x?2", "?dx", "ba?l");
+        assertEquals("0123456789x", generator.getCharset(0));
+        assertEquals("x", generator.getCharset(1));
+        assertEquals("ba" + MaskWordlistGenerator.LOWER.replace("a", "").replace("b", ""), generator.getCharset(2));
+        assertEquals(11 * 26, generator.getSize());
+        assertEquals(Arrays.asList("0xb", "1xb"), outputWords(generator, 0, 2));
+        assertEquals(Arrays.asList("xxb", "0xa"), outputWords(generator, 10, 12));
+        assertConsistent(generator);
+    }
+
+    @Test
+    public void unknownPlaceholders() {
+        for(String mask : new String[] {"?x", "?2", "ab?", ""}) {
+            try {
+                new MaskWordlistGenerator(mask, "?d");
+                fail("Accepted mask \"" + mask + "\"");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        try {
+            new MaskWordlistGenerator("?1", "?1");
+            fail("Accepted a custom charset referring to a custom charset");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void multiByteCharacters() {
+        // Not every position encodes to one byte, so the odometer re-encodes each word
+        MaskWordlistGenerator generator = new MaskWordlistGenerator("?1?d\u20ac", "a\u00e4");
+        assertEquals(Arrays.asList("a0\u20ac", "\u00e40\u20ac", "a1\u20ac"), outputWords(generator, 0, 3));
+        assertConsistent(generator);
+    }
+
+    @Test
+    public void lastIndex() {
+        MaskWordlistGenerator generator = new MaskWordlistGenerator("?a?a?a");
+        final long size = 95L * 95 * 95;
+        assertEquals(size, generator.getSize());
+        assertEquals(Arrays.asList("~~~"), outputWords(generator, size - 1, size));
+        assertEquals(size - 1, generator.indexOf("~~~"));
+        assertConsistentAt(generator, 0, size - 8, size - 1);
+
+        // Close to the largest keyspace that fits a long
+        MaskWordlistGenerator large = new MaskWordlistGenerator("?a?a?a?a?a?a?a?a?a");
+        final long largeSize = 630249409724609375L;
+        assertEquals(largeSize, large.getSize());
+        assertEquals(Arrays.asList("}~~~~~~~~", "~~~~~~~~~"), outputWords(large, largeSize - 2, largeSize));
+        assertConsistentAt(large, 0, largeSize / 3, largeSize - 1);
+        try {
+            new MaskWordlistGenerator("?a?a?a?a?a?a?a?a?a?a");
+            fail("Accepted a keyspace larger than Long.MAX_VALUE");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        for(String mask : new String[] {"?d", "?l?d?d", "?s?u", "x?dy?d", "???d"}) {
+            assertConsistent(new MaskWordlistGenerator(mask));
+        }
+    }
+
+    private static void assertNotInMask(MaskWordlistGenerator generator, String word) {
+        try {
+            generator.indexOf(word);
+            fail("Found \"" + word + "\" in " + generator.getMask());
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.core.wordlist;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistent;
+import static jtr.distributed.core.wordlist.GeneratorAssert.assertConsistentAt;
+import static jtr.distributed.core.wordlist.GeneratorAssert.outputWords;
+import static jtr.distributed.core.wordlist.GeneratorAssert.words;
+import static org.junit.Assert.assertEquals;
+
+public class ProductWordlistGeneratorTest {
+    @Test
+    public void lastPartChangesFastest() {
+        ProductWordlistGenerator generator = new ProductWordlistGenerator(words("a", "b"),
+                new MaskWordlistGenerator("?d"));
+        assertEquals(Arrays.asList("a9", "b0"), outputWords(generator, 9, 11));
+        assertEquals(13, generator.indexOf("b3"));
+        assertConsistent(generator);
+    }
+
+    @Test
+    public void ambiguousSplits() {
+        // "abc" is output first as "a" + "bc", and again as "ab" + "c"
+        ProductWordlistGenerator generator = new ProductWordlistGenerator(words("a", "ab"), words("bc", "c"));
+        assertEquals(Arrays.asList("abc", "ac", "abbc", "abc"), outputWords(generator, 0, 4));
+        assertEquals(0, generator.indexOf("abc"));
+        assertConsistent(generator);
+
+        assertConsistent(new ProductWordlistGenerator(words("a", "aa"), words("a", "aa", "b"), words("a", "aa")));
+        assertConsistent(new ProductWordlistGenerator(words("x", "xy"), new MaskWordlistGenerator("?d"),
+                words("1", "y1", "")));
+    }
+
+    @Test
+    public void largeProduct() {
+        ProductWordlistGenerator generator = new ProductWordlistGenerator(new MaskWordlistGenerator("?l?l?l?l"),
+                words("-", "_"), new MaskWordlistGenerator("?d?d?d?d"));
+        assertEquals(26L * 26 * 26 * 26 * 2 * 10000, generator.getSize());
+        assertConsistentAt(generator, 0, 9995, generator.getSize() / 2 + 3, generator.getSize() - 8);
+    }
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.core.LocalTimeLogger;
+import jtr.distributed.core.events.ErrorEvent;
+import jtr.distributed.core.events.PasswordNotFoundEvent;
+import jtr.distributed.core.events.StatusEvent;
+import jtr.distributed.core.wordlist.GeneratorSpec;
+import jtr.distributed.core.wordlist.WordlistGeneratorRegistry;
+import jtr.distributed.server.ServerMain;
+import jtr.distributed.server.VastStatistician.KnownGPU;
+import jtr.distributed.server.assignment.ActiveAssignment;
+import jtr.distributed.server.assignment.TraversalPolicy;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Discrete-event simulation of a fleet of GPUs working on one job. The real ServerMain schedules the work, but it
+ * reads the time from a virtual clock, and the clients are modelled by events: requests that take a network delay,
+ * John's startup, status updates, finished assignments, crashes after which a client reports an error and restarts,
+ * and preemptions after which a machine silently disappears and only comes back later. A job of several days is
+ * simulated in seconds, which makes it cheap to compare work package sizes, timeouts and traversal policies.
+ *
+ * Every argument is an option "name=value", see DEFAULTS. Values separated by '|' are compared with each other: all
+ * combinations are simulated with the same seed, and each is one row of the report, e.g.
+ * targetDuration=240|480|1200 preemptionsPerDay=0|2
+ */
+public class FleetSimulatorMain {
+    private static final int LOG_LEVEL = Log.LEVEL_ERROR;
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        ServerMain.SchedulingPolicy policy = ServerMain.DEFAULT_SCHEDULING_POLICY;
+        // GPU model (a KnownGPU) and number of GPUs
+        DEFAULTS.put("fleet", "RTX_3090:4,Titan_RTX:4,GTX_1080_Ti:8");
+        DEFAULTS.put("mask", "?l?l?l?l?l?l?l?l?l");
+        // Each GPU's hashrate deviates from the KnownGPU's by up to this fraction
+        DEFAULTS.put("jitter", "0.05");
+        // Mean number of John crashes per GPU and day of cracking
+        DEFAULTS.put("crashesPerDay", "0.5");
+        // Mean number of times per GPU and day that the machine disappears, and the mean time until it is back, in s
+        DEFAULTS.put("preemptionsPerDay", "0.2");
+        DEFAULTS.put("downtime", "1800");
+        // Mean one-way network delay between a client and the server, in ms
+        DEFAULTS.put("latency", "50");
+        // Time from an assignment to John's first candidate, in s
+        DEFAULTS.put("startup", "10");
+        DEFAULTS.put("statusInterval", "4"); // s
+        DEFAULTS.put("targetDuration", String.valueOf(policy.getWorkPackageTargetDuration().getSeconds())); // s
+        DEFAULTS.put("minPackage", String.valueOf(policy.getMinWorkPackageSize()));
+        DEFAULTS.put("maxPackage", String.valueOf(policy.getMaxWorkPackageSize()));
+        DEFAULTS.put("defaultPackage", String.valueOf(policy.getDefaultWorkPackageSize()));
+        DEFAULTS.put("timeout", String.valueOf(policy.getClientTimeoutInitial().getSeconds())); // s
+        DEFAULTS.put("timeoutAfterStatus", String.valueOf(policy.getClientTimeoutAfterFirstStatus().getSeconds())); // s
+        DEFAULTS.put("traversal", policy.getTraversalPolicy().name());
+        DEFAULTS.put("stripes", String.valueOf(policy.getTraversalStripes()));
+        // The simulation gives up after this many simulated days
+        DEFAULTS.put("maxDays", "60");
+        DEFAULTS.put("seed", "1");
+    }
+    // Same as ClientMain
+    private static final long ERROR_RESTART_DELAY = 10 * 1000; // ms
+    // Reported by all GPUs. Matches no KnownGPU, so that the simulated hashrates are not taken for measured ones.
+    private static final String GPU_MODEL = "Simulated GPU";
+    private static final long DAY = 24 * 60 * 60 * 1000; // ms
+
+    public static void main(String[] args) throws IOException {
+        Log.set(LOG_LEVEL);
+        Log.setLogger(new LocalTimeLogger());
+        Map<String, String[]> options = new LinkedHashMap<>();
+        for(Map.Entry<String, String> entry : DEFAULTS.entrySet()) {
+            options.put(entry.getKey(), new String[]{entry.getValue()});
+        }
+        List<String> compared = new ArrayList<>();
+        for(String arg : args) {
+            int separator = arg.indexOf('=');
+            if(separator < 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+                Log.error("Usage: [<option>=<value>[|<value> ..] ..], options and their defaults: " + DEFAULTS);
+                System.exit(1);
+                return;
+            }
+            String name = arg.substring(0, separator);
+            String[] values = arg.substring(separator + 1).split("\\|");
+            options.put(name, values);
+            if(values.length > 1) { compared.add(name); }
+        }
+
+        System.out.printf("%s%9s %8s %8s %8s %8s %8s %8s %8s%n", header(compared), "Days", "Idle %", "Tail %",
+                "Redone %", "Assigned", "Crashes", "Preempt", "Timeouts");
+        for(Map<String, String> combination : combinations(options)) {
+            Result result;
+            try {
+                FleetSimulatorMain simulation = new FleetSimulatorMain(combination);
+                try {
+                    result = simulation.run();
+                } finally {
+                    simulation.server.close();
+                }
+            } catch (IllegalArgumentException e) {
+                Log.error("Invalid options " + combination + ": " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            StringBuilder row = new StringBuilder();
+            for(String name : compared) { row.append(String.format("%-" + columnWidth(name) + "s ", combination.get(name))); }
+            System.out.printf("%s%9s %8.2f %8.2f %8.3f %8d %8d %8d %8d%n", row,
+                    result.completed ? String.format("%.2f", result.millis / (double) DAY) : "> " + result.millis / DAY,
+                    result.idleFraction() * 100, result.tailFraction() * 100, result.redoneFraction() * 100,
+                    result.assignments, result.crashes, result.preemptions, result.timeouts);
+        }
+        System.exit(0);
+    }
+
+    private static String header(List<String> compared) {
+        StringBuilder header = new StringBuilder();
+        for(String name : compared) { header.append(String.format("%-" + columnWidth(name) + "s ", name)); }
+        return header.toString();
+    }
+
+    private static int columnWidth(String name) {
+        return Math.max(10, name.length());
+    }
+
+    /**
+     * Returns all combinations of the given option values, the last option changing fastest.
+     */
+    private static List<Map<String, String>> combinations(Map<String, String[]> options) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for(Map.Entry<String, String[]> option : options.entrySet()) {
+            List<Map<String, String>> extended = new ArrayList<>();
+            for(Map<String, String> combination : combinations) {
+                for(String value : option.getValue()) {
+                    Map<String, String> copy = new LinkedHashMap<>(combination);
+                    copy.put(option.getKey(), value);
+                    extended.add(copy);
+                }
+            }
+            combinations = extended;
+        }
+        return combinations;
+    }
+
+    /**
+     * A clock that only moves when the simulation advances it.
+     */
+    private static class VirtualClock extends Clock {
+        // Shared with the clocks returned by withZone
+        private static class Time {
+            long millis = 0;
+        }
+
+        private final Time time;
+        private final ZoneId zone;
+
+        VirtualClock() {
+            this(new Time(), ZoneOffset.UTC);
+        }
+
+        private VirtualClock(Time time, ZoneId zone) {
+            this.time = time;
+            this.zone = zone;
+        }
+
+        void set(long millis) {
+            time.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new VirtualClock(time, zone);
+        }
+
+        @Override
+        public long millis() {
+            return time.millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(time.millis);
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long time, sequence;
+        final Gpu gpu;
+        // The event is dropped if the GPU crashed or disappeared after it was scheduled
+        final int generation;
+        final Runnable action;
+
+        Event(long time, long sequence, Gpu gpu, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.gpu = gpu;
+            this.generation = gpu != null ? gpu.generation : 0;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class Result {
+        boolean completed;
+        long millis, size;
+        long onlineMillis, crackingMillis, tailMillis, searched;
+        int assignments, crashes, preemptions, timeouts;
+
+        double idleFraction() {
+            return onlineMillis > 0 ? 1 - (double) crackingMillis / onlineMillis : 0;
+        }
+
+        // Idle because nothing was left to hand out, while other GPUs finished the last assignments
+        double tailFraction() {
+            return onlineMillis > 0 ? (double) tailMillis / onlineMillis : 0;
+        }
+
+        double redoneFraction() {
+            return (double) Math.max(0, searched - size) / size;
+        }
+    }
+
+    private final VirtualClock clock = new VirtualClock();
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long eventSequence = 0;
+    private final ServerMain server;
+    private final long size;
+    private final List<Gpu> gpus = new ArrayList<>();
+    private final double crashesPerDay, preemptionsPerDay;
+    private final long downtime, latency, startup, statusInterval, maxMillis;
+    private final Result result = new Result();
+
+    private FleetSimulatorMain(Map<String, String> options) throws IOException {
+        crashesPerDay = Double.parseDouble(options.get("crashesPerDay"));
+        preemptionsPerDay = Double.parseDouble(options.get("preemptionsPerDay"));
+        downtime = Long.parseLong(options.get("downtime")) * 1000;
+        latency = Long.parseLong(options.get("latency"));
+        startup = Long.parseLong(options.get("startup")) * 1000;
+        statusInterval = Long.parseLong(options.get("statusInterval")) * 1000;
+        maxMillis = (long) (Double.parseDouble(options.get("maxDays")) * DAY);
+        if(statusInterval <= 0) { throw new IllegalArgumentException("statusInterval must be positive"); }
+
+        ServerMain.SchedulingPolicy policy = new ServerMain.SchedulingPolicy(
+                Long.parseLong(options.get("minPackage")), Long.parseLong(options.get("maxPackage")),
+                Long.parseLong(options.get("defaultPackage")),
+                Duration.ofSeconds(Long.parseLong(options.get("targetDuration"))),
+                Duration.ofSeconds(Long.parseLong(options.get("timeout"))),
+                Duration.ofSeconds(Long.parseLong(options.get("timeoutAfterStatus"))),
+                TraversalPolicy.Type.valueOf(options.get("traversal")),
+                Integer.parseInt(options.get("stripes")));
+        GeneratorSpec job = new GeneratorSpec("mask").with("mask", options.get("mask"));
+        server = new ServerMain(job, WordlistGeneratorRegistry.getDefault().create(job), policy, clock, false);
+        size = server.getWordlistGenerator().getSize();
+        result.size = size;
+
+        long seed = Long.parseLong(options.get("seed"));
+        double jitter = Double.parseDouble(options.get("jitter"));
+        for(String group : options.get("fleet").split(",")) {
+            String[] parts = group.split(":");
+            KnownGPU model = KnownGPU.valueOf(parts[0]);
+            if(model.getDefaultHashrate() == null) { throw new IllegalArgumentException(model + " has no hashrate"); }
+            int count = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            for(int i = 0; i < count; i++) {
+                Random random = new Random(seed * 1000003L + gpus.size());
+                long rate = (long) (model.getDefaultHashrate() * (1 + jitter * (2 * random.nextDouble() - 1)));
+                gpus.add(new Gpu("sim-" + model.name() + "-" + i, model, rate, random));
+            }
+        }
+    }
+
+    private Result run() {
+        for(Gpu gpu : gpus) {
+            // Machines are rented one after another
+            schedule(gpu, gpu.random.nextInt(60 * 1000), gpu::join);
+        }
+        scheduleMaintenance();
+        while(!events.isEmpty() && !result.completed && clock.millis() < maxMillis) {
+            Event event = events.poll();
+            if(event.gpu != null && event.generation != event.gpu.generation) { continue; }
+            clock.set(event.time);
+            event.action.run();
+        }
+        result.millis = clock.millis();
+        for(Gpu gpu : gpus) {
+            // Assignments still running when the job completed were searched by others already
+            gpu.stopCracking();
+            if(gpu.online) { result.onlineMillis += clock.millis() - gpu.onlineSince; }
+            if(gpu.idleSince >= 0) { result.tailMillis += clock.millis() - gpu.idleSince; }
+        }
+        return result;
+    }
+
+    private void schedule(Gpu gpu, long delay, Runnable action) {
+        events.add(new Event(clock.millis() + delay, eventSequence++, gpu, action));
+    }
+
+    private void scheduleMaintenance() {
+        schedule(null, ServerMain.MAINTENANCE_THREAD_INTERVAL.toMillis(), () -> {
+            result.timeouts += server.removeTimedOutClients();
+            if(server.getCompletedSize() == size) { result.completed = true; }
+            scheduleMaintenance();
+        });
+    }
+
+    private long exponential(Random random, double mean) {
+        return (long) (-Math.log(1 - random.nextDouble()) * mean);
+    }
+
+    private class Gpu {
+        final String clientId;
+        final KnownGPU model;
+        final long rate;
+        final Random random;
+        // Incremented whenever John stops, which drops its pending events
+        int generation = 0;
+        // Incremented whenever the machine disappears
+        int session = 0;
+        boolean online = false;
+        long onlineSince = 0;
+        // Start of the tail idle time, or -1
+        long idleSince = -1;
+        // The current assignment, and when John started searching it, or -1 if it is not searching
+        long beginIndex, endIndex, crackingSince = -1;
+
+        Gpu(String clientId, KnownGPU model, long rate, Random random) {
+            this.clientId = clientId;
+            this.model = model;
+            this.rate = rate;
+            this.random = random;
+        }
+
+        /**
+         * Sends a request, which the server handles after the network delay. The response arrives after another one.
+         */
+        private void request(Runnable onServer) {
+            schedule(this, delay(), onServer);
+        }
+
+        private long delay() {
+            return latency > 0 ? exponential(random, latency) : 0;
+        }
+
+        void join() {
+            online = true;
+            onlineSince = clock.millis();
+            if(preemptionsPerDay > 0) {
+                final int joinedSession = session;
+                schedule(null, exponential(random, DAY / preemptionsPerDay), () -> {
+                    if(session == joinedSession) { preempt(); }
+                });
+            }
+            requestAssignment();
+        }
+
+        void requestAssignment() {
+            request(() -> {
+                ActiveAssignment assignment = server.getOrCreateWorkAssignment(clientId);
+                schedule(this, delay(), () -> {
+                    if(assignment == null) {
+                        if(idleSince < 0) { idleSince = clock.millis(); }
+                        schedule(this, ERROR_RESTART_DELAY, this::requestAssignment);
+                        return;
+                    }
+                    if(idleSince >= 0) {
+                        result.tailMillis += clock.millis() - idleSince;
+                        idleSince = -1;
+                    }
+                    result.assignments++;
+                    beginIndex = assignment.getBeginIndex();
+                    endIndex = assignment.getEndIndex();
+                    schedule(this, startup, this::startCracking);
+                });
+            });
+        }
+
+        void startCracking() {
+            crackingSince = clock.millis();
+            long duration = (long) Math.ceil((endIndex - beginIndex) * 1000.0 / rate);
+            schedule(this, duration, this::finish);
+            schedule(this, statusInterval, this::sendStatus);
+            if(crashesPerDay > 0) { schedule(this, exponential(random, DAY / crashesPerDay), this::crash); }
+        }
+
+        long searched() {
+            return Math.min(endIndex - beginIndex, (clock.millis() - crackingSince) * rate / 1000);
+        }
+
+        /**
+         * Ends the current John run, and accounts for the work it did.
+         */
+        void stopCracking() {
+            if(crackingSince < 0) { return; }
+            result.crackingMillis += clock.millis() - crackingSince;
+            result.searched += searched();
+            crackingSince = -1;
+        }
+
+        void sendStatus() {
+            long searched = searched();
+            if(searched > 0) {
+                final long begin = beginIndex, end = endIndex;
+                StatusEvent status = new StatusEvent(rate, begin, begin + searched - 1, end, null, GPU_MODEL,
+                        clock.instant(), null);
+                request(() -> {
+                    try {
+                        server.updateStatus(clientId, status);
+                    } catch (IllegalArgumentException e) {
+                        // E.g. the client timed out, the response tells it to restart
+                        schedule(this, delay(), this::restart);
+                    }
+                });
+            }
+            schedule(this, statusInterval, this::sendStatus);
+        }
+
+        void finish() {
+            stopCracking();
+            generation++;
+            final long begin = beginIndex, end = endIndex;
+            request(() -> {
+                try {
+                    server.updateNotFound(clientId, new PasswordNotFoundEvent(begin, end));
+                } catch (IllegalArgumentException e) {
+                    // Timed out in the meantime, the work was handed out again
+                }
+                if(server.getCompletedSize() == size) { result.completed = true; }
+                schedule(this, delay(), this::requestAssignment);
+            });
+        }
+
+        void restart() {
+            stopCracking();
+            generation++;
+            schedule(this, ERROR_RESTART_DELAY, this::requestAssignment);
+        }
+
+        void crash() {
+            result.crashes++;
+            stopCracking();
+            generation++;
+            request(() -> {
+                try {
+                    server.updateError(clientId, new ErrorEvent("Simulated crash", null));
+                } catch (IllegalArgumentException e) {
+                    // Already timed out
+                }
+            });
+            schedule(this, ERROR_RESTART_DELAY, this::requestAssignment);
+        }
+
+        void preempt() {
+            result.preemptions++;
+            stopCracking();
+            generation++;
+            session++;
+            online = false;
+            result.onlineMillis += clock.millis() - onlineSince;
+            if(idleSince >= 0) {
+                result.tailMillis += clock.millis() - idleSince;
+                idleSince = -1;
+            }
+            schedule(null, exponential(random, downtime), this::join);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+
+package jtr.distributed.loadtest;
+
+import jtr.distributed.core.wordlist.MaskWordlistGenerator;
+import jtr.distributed.core.wordlist.WordBuffer;
+import jtr.distributed.core.wordlist.WordCursor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how fast MaskWordlistGenerator produces words when the client pipes them to John, without John: the words
+ * are written to a stream that only counts them. For comparison, it also measures stepping through the same range
+ * with the generator's cursor, and unranking every index on its own and encoding it as a String, which is what
+ * generating each word independently costs.
+ */
+public class GeneratorBenchmarkMain {
+    private static final String DEFAULT_MASK = "?u?l?l?l?l?d?d?d";
+    private static final int DEFAULT_DURATION = 10; // s per method
+    // Words per outputWords call, about the size of a piece the client hands to John
+    private static final long CHUNK = 10_000_000;
+    // Run before each measurement so that the JIT has compiled the hot loop
+    private static final long WARMUP = 3 * 1000; // ms
+
+    private interface Method {
+        void output(MaskWordlistGenerator generator, long begin_incl, long end_excl, OutputStream os)
+                throws IOException;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long bytes = 0;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length > 2) {
+            System.err.println("Usage: [<mask, default " + DEFAULT_MASK + ">] "
+                    + "[<duration per method in s, default " + DEFAULT_DURATION + ">]");
+            System.exit(1);
+            return;
+        }
+        MaskWordlistGenerator generator = new MaskWordlistGenerator(args.length > 0 ? args[0] : DEFAULT_MASK);
+        long duration = (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DURATION) * 1000L;
+
+        System.out.printf("%-12s %14s %10s%n", "Method", "M words/s", "MB/s");
+        measure("outputWords", generator, duration, MaskWordlistGenerator::outputWords);
+        measure("cursor", generator, duration, GeneratorBenchmarkMain::outputWithCursor);
+        measure("unrank", generator, duration, GeneratorBenchmarkMain::outputUnranked);
+    }
+
+    private static void measure(String name, MaskWordlistGenerator generator, long duration, Method method)
+            throws IOException {
+        run(generator, WARMUP, method);
+        CountingOutputStream os = new CountingOutputStream();
+        long begin = System.nanoTime();
+        long words = run(generator, duration, method, os);
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%-12s %14.1f %10.0f%n", name, words / seconds / 1e6, os.bytes / seconds / 1e6);
+    }
+
+    private static long run(MaskWordlistGenerator generator, long duration, Method method) throws IOException {
+        return run(generator, duration, method, new CountingOutputStream());
+    }
+
+    /**
+     * Outputs chunks, continuing where the last one ended, until the duration has passed.
+     *
+     * @return The number of words output.
+     */
+    private static long run(MaskWordlistGenerator generator, long duration, Method method, OutputStream os)
+            throws IOException {
+        long end = System.currentTimeMillis() + duration;
+        long words = 0;
+        long index = 0;
+        while(System.currentTimeMillis() < end) {
+            long chunkEnd = Math.min(index + CHUNK, generator.getSize());
+            method.output(generator, index, chunkEnd, os);
+            words += chunkEnd - index;
+            index = chunkEnd == generator.getSize() ? 0 : chunkEnd;
+        }
+        return words;
+    }
+
+    private static void outputWithCursor(MaskWordlistGenerator generator, long begin_incl, long end_excl,
+                                         OutputStream os) throws IOException {
+        WordCursor cursor = generator.cursor(begin_incl);
+        WordBuffer buffer = new WordBuffer();
+        for(long i = begin_incl; i < end_excl; i++) {
+            cursor.appendTo(buffer);
+            buffer.append((byte) '\n');
+            if(buffer.getLength() >= 64 * 1024) {
+                buffer.writeTo(os);
+                buffer.clear();
+            }
+            cursor.advance();
+        }
+        buffer.writeTo(os);
+    }
+
+    private static void outputUnranked(MaskWordlistGenerator generator, long begin_incl, long end_excl,
+                                       OutputStream os) throws IOException {
+        String[] charsets = new String[generator.getLength()];
+        for(int p = 0; p < charsets.length; p++) {
+            charsets[p] = generator.getCharset(p);
+        }
+        StringBuilder word = new StringBuilder(charsets.length + 1);
+        for(long i = begin_incl; i < end_excl; i++) {
+            // The leftmost position changes fastest
+            word.setLength(0);
+            long rest = i;
+            for(String charset : charsets) {
+                word.append(charset.charAt((int) (rest % charset.length())));
+                rest /= charset.length();
+            }
+            word.append('\n');
+            os.write(word.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
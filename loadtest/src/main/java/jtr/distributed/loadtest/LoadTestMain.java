@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.core.LocalTimeLogger;
+import jtr.distributed.core.wordlist.GeneratorSpec;
+import jtr.distributed.core.wordlist.WordlistGeneratorRegistry;
+import jtr.distributed.server.ServerMain;
+import jtr.distributed.server.VastStatistician;
+import jtr.distributed.server.web.WebServer;
+import jtr.distributed.server.web.util.JacksonObjectMapperProvider;
+import lombok.Getter;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.jackson.JacksonFeature;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts a ServerMain with its WebServer in this JVM and drives it over HTTP with a growing number of
+ * SimulatedWorkers. After each stage, it reports the request throughput, the latency percentiles per route, how
+ * fairly work was handed out, and how busy the server's lock and persistence were, and stops at the first stage in
+ * which the server saturates.
+ *
+ * The server keeps its state and GPU statistics in the working directory like ServerMain does, so run this in an
+ * empty directory.
+ */
+public class LoadTestMain {
+    private static final String HOST = "localhost";
+    private static final int PORT = 45679;
+    private static final int LOG_LEVEL = Log.LEVEL_ERROR;
+    // Large enough that thousands of workers do not run out of work
+    private static final GeneratorSpec JOB = new GeneratorSpec("mask").with("mask", "?a?a?a?a?a?a?a?a");
+    private static final String DEFAULT_STAGES = "250,500,1000,2000,4000";
+    private static final int DEFAULT_STAGE_DURATION = 30; // s
+    // Workers that join in a stage are spread over this time, so that they do not all get their tasks at once
+    private static final long RAMP_UP = 5 * 1000; // ms
+    // Threads that run the steps of all workers, including their blocking HTTP requests. By Little's law, this caps
+    // the harness at THREADS / latency requests per second.
+    private static final int THREADS = 128;
+    // Same as ClientMain
+    private static final int TIMEOUT = 5 * 1000; // ms
+    static final long STATUS_INTERVAL = 2 * 1000; // ms
+    static final long ERROR_RESTART_DELAY = 10 * 1000; // ms
+    // Simulated hashrates, drawn uniformly. Faster than real GPUs, so that assignments finish during a stage.
+    private static final long MIN_GUESSES_PER_SECOND = 20L * 1000 * 1000, MAX_GUESSES_PER_SECOND = 100L * 1000 * 1000;
+    // Probabilities of a worker reporting an error, or disappearing silently, instead of a status
+    static final double ERROR_PROBABILITY = 0.001, VANISH_PROBABILITY = 0.001;
+    // A worker that disappeared is replaced by a new one after this long, like a rented machine that is restarted
+    private static final long REJOIN_DELAY = 20 * 1000; // ms
+    private static final long SEED = 1;
+
+    // The server is saturated if any of these is exceeded in a stage
+    private static final double LOCK_SATURATION = 0.8; // Fraction of the time the lock is held
+    private static final double PERSISTENCE_SATURATION = 0.5; // Mean save duration, relative to the save interval
+    private static final double ERROR_SATURATION = 0.01; // Fraction of failed requests
+    private static final double LATENCY_SATURATION = 1000; // p99 of any route, in ms
+    private static final double THROUGHPUT_SATURATION = 0.8; // Requests per worker, relative to the first stage
+    // The harness itself is overloaded if its steps start this much later than scheduled (p99, in ms)
+    private static final double HARNESS_LAG_WARNING = 100;
+    private static final String HARNESS_LAG = "(harness lag)";
+
+    public static void main(String[] args) throws Exception {
+        Log.set(LOG_LEVEL);
+        Log.setLogger(new LocalTimeLogger());
+        if(args.length > 2) {
+            Log.error("Usage: [<workers per stage, default " + DEFAULT_STAGES + ">] [<stage duration in s, default "
+                    + DEFAULT_STAGE_DURATION + ">]");
+            System.exit(1);
+            return;
+        }
+        if(!checkNoServerState("load test")) {
+            System.exit(1);
+            return;
+        }
+        int[] stages = Arrays.stream((args.length > 0 ? args[0] : DEFAULT_STAGES).split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int stageDuration = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STAGE_DURATION;
+        for(int stage = 1; stage < stages.length; stage++) {
+            if(stages[stage] <= stages[stage - 1]) {
+                Log.error("The number of workers must grow from stage to stage");
+                System.exit(1);
+                return;
+            }
+        }
+
+        LoadTestMain test = new LoadTestMain();
+        try {
+            test.run(stages, stageDuration);
+        } finally {
+            test.stop();
+        }
+        System.exit(0);
+    }
+
+    private final WebServer webServer;
+    private final Client webClient;
+    @Getter
+    private final WebTarget apiTarget;
+    @Getter
+    private final ScheduledExecutorService executor;
+    @Getter
+    private final RouteStats stats = new RouteStats();
+    private final ServerMetricsScraper scraper;
+    private final Set<SimulatedWorker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger workerNumber = new AtomicInteger();
+    private final Random random = new Random(SEED);
+    private double baselineRequestsPerWorker = 0;
+    private boolean harnessOverloaded = false;
+
+    private LoadTestMain() throws IOException {
+        webServer = new WebServer(HOST, PORT, new ServerMain(JOB, WordlistGeneratorRegistry.getDefault().create(JOB)));
+
+        // HttpURLConnection keeps only 5 idle connections per host by default, which would close most of them
+        System.setProperty("http.maxConnections", String.valueOf(THREADS));
+        webClient = ClientBuilder.newClient()
+                .register(JacksonFeature.class)
+                .register(JacksonObjectMapperProvider.class);
+        webClient.property(ClientProperties.CONNECT_TIMEOUT, TIMEOUT);
+        webClient.property(ClientProperties.READ_TIMEOUT, TIMEOUT);
+        WebTarget target = webClient.target("http://" + HOST + ":" + PORT + WebServer.PATH);
+        apiTarget = target.path("api");
+        scraper = new ServerMetricsScraper(target.path("metrics"));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setName("worker-" + threadNumber.incrementAndGet());
+            return thread;
+        });
+    }
+
+    private void run(int[] stages, int stageDuration) throws InterruptedException {
+        scraper.scrapeDeltas();
+        for(int stage = 0; stage < stages.length; stage++) {
+            // Workers that disappeared are already due to be replaced, so this does not count on workers.size()
+            int joining = stages[stage] - (stage > 0 ? stages[stage - 1] : 0);
+            for(int i = 0; i < joining; i++) {
+                executor.schedule(this::addWorker, RAMP_UP * i / joining, TimeUnit.MILLISECONDS);
+            }
+            Thread.sleep(stageDuration * 1000L);
+            List<String> saturation = report(stage + 1, stages[stage], stageDuration);
+            if(harnessOverloaded) {
+                System.out.println("The harness could not keep up with " + stages[stage] + " workers, so later "
+                        + "stages would measure the harness rather than the server");
+                return;
+            }
+            if(!saturation.isEmpty()) {
+                System.out.println("The server saturates at " + stages[stage] + " workers: "
+                        + String.join(", ", saturation));
+                return;
+            }
+        }
+        System.out.println("The server did not saturate with up to " + stages[stages.length - 1] + " workers");
+    }
+
+    private void addWorker() {
+        long guessesPerSecond;
+        long seed;
+        synchronized(random) {
+            guessesPerSecond = MIN_GUESSES_PER_SECOND
+                    + (long) (random.nextDouble() * (MAX_GUESSES_PER_SECOND - MIN_GUESSES_PER_SECOND));
+            seed = random.nextLong();
+        }
+        SimulatedWorker worker = new SimulatedWorker(this, "load-" + workerNumber.incrementAndGet(),
+                guessesPerSecond, seed);
+        workers.add(worker);
+        worker.start();
+    }
+
+    void onVanished(SimulatedWorker worker) {
+        workers.remove(worker);
+        executor.schedule(this::addWorker, REJOIN_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Prints what happened since the previous stage.
+     *
+     * @return The reasons why the server is saturated, empty if it is not.
+     */
+    private List<String> report(int stage, int workerCount, int stageDuration) {
+        Map<String, RouteStats.Snapshot> routes = stats.drain();
+        Map<String, Double> server = scraper.scrapeDeltas();
+        List<String> saturation = new ArrayList<>();
+
+        System.out.printf("%nStage %d: %d workers for %d s%n", stage, workerCount, stageDuration);
+        System.out.printf("  %-16s %9s %9s %9s %9s %9s %9s %8s%n", "Route", "Requests", "req/s", "p50 ms", "p95 ms",
+                "p99 ms", "max ms", "Errors");
+        long requests = 0, errors = 0;
+        for(Map.Entry<String, RouteStats.Snapshot> entry : routes.entrySet()) {
+            RouteStats.Snapshot route = entry.getValue();
+            System.out.printf("  %-16s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %8d%n", entry.getKey(), route.getCount(),
+                    (double) route.getCount() / stageDuration, route.percentileMillis(0.5),
+                    route.percentileMillis(0.95), route.percentileMillis(0.99), route.percentileMillis(1),
+                    route.getErrors());
+            if(entry.getKey().equals(HARNESS_LAG)) { continue; }
+            requests += route.getCount();
+            errors += route.getErrors();
+            if(route.percentileMillis(0.99) > LATENCY_SATURATION) {
+                saturation.add(String.format("p99 of %s is %.0f ms", entry.getKey(), route.percentileMillis(0.99)));
+            }
+        }
+
+        double throughput = (double) requests / stageDuration;
+        double errorFraction = requests > 0 ? (double) errors / requests : 0;
+        System.out.printf("  Throughput: %.1f req/s, %.2f %% failed%n", throughput, errorFraction * 100);
+        if(errorFraction > ERROR_SATURATION) {
+            saturation.add(String.format("%.1f %% of the requests failed", errorFraction * 100));
+        }
+        double requestsPerWorker = throughput / workerCount;
+        if(baselineRequestsPerWorker == 0) {
+            baselineRequestsPerWorker = requestsPerWorker;
+        } else if(requestsPerWorker < baselineRequestsPerWorker * THROUGHPUT_SATURATION) {
+            saturation.add(String.format("throughput per worker fell to %.0f %% of the first stage",
+                    requestsPerWorker / baselineRequestsPerWorker * 100));
+        }
+
+        double lockHeld = server.getOrDefault("jtr_lock_hold_seconds_sum", 0.0) / stageDuration;
+        double lockWaits = server.getOrDefault("jtr_lock_wait_seconds_count", 0.0);
+        System.out.printf("  Server lock: held %.1f %% of the time, mean wait %.3f ms over %.0f acquisitions%n",
+                lockHeld * 100, lockWaits > 0 ? server.get("jtr_lock_wait_seconds_sum") / lockWaits * 1000 : 0,
+                lockWaits);
+        if(lockHeld > LOCK_SATURATION) {
+            saturation.add(String.format("the lock is held %.0f %% of the time", lockHeld * 100));
+        }
+
+        final String persistencePrefix = "jtr_persistence_duration_seconds_sum{file=\"";
+        for(Map.Entry<String, Double> entry : new TreeMap<>(server).entrySet()) {
+            if(!entry.getKey().startsWith(persistencePrefix)) { continue; }
+            String labels = entry.getKey().substring(entry.getKey().indexOf('{'));
+            double saves = server.getOrDefault("jtr_persistence_duration_seconds_count" + labels, 0.0);
+            if(saves == 0) { continue; }
+            double meanMillis = entry.getValue() / saves * 1000;
+            double relative = meanMillis / ServerMain.MAINTENANCE_THREAD_INTERVAL.toMillis();
+            System.out.printf("  Persistence %s: %.0f saves, mean %.1f ms (%.1f %% of the save interval), %.0f kB%n",
+                    labels, saves, meanMillis, relative * 100,
+                    server.getOrDefault("jtr_persistence_size_bytes" + labels, 0.0) / 1024);
+            if(relative > PERSISTENCE_SATURATION && labels.contains(ServerMain.SAVED_STATE.getName())) {
+                saturation.add(String.format("saving %s takes %.0f %% of the save interval", labels,
+                        relative * 100));
+            }
+        }
+
+        printFairness();
+
+        RouteStats.Snapshot lag = routes.get(HARNESS_LAG);
+        harnessOverloaded = lag != null && lag.percentileMillis(0.99) > HARNESS_LAG_WARNING;
+        if(harnessOverloaded) {
+            System.out.printf("  Warning: the harness itself is overloaded (p99 lag %.0f ms), the server may be "
+                    + "better than these numbers%n", lag.percentileMillis(0.99));
+        }
+        return saturation;
+    }
+
+    /**
+     * Prints Jain's fairness index of the words each worker was handed out relative to its hashrate and the time it
+     * has been running: 1 if all workers got work in proportion to their speed, 1/n if one worker got everything.
+     */
+    private void printFairness() {
+        double sum = 0, sumOfSquares = 0, min = Double.MAX_VALUE, max = 0;
+        int n = 0;
+        long now = System.nanoTime();
+        for(SimulatedWorker worker : workers) {
+            double seconds = (now - worker.getJoinedAt()) / 1e9;
+            if(!worker.isActive() || seconds <= 0) { continue; }
+            double share = worker.getWordsHandedOut() / (worker.getGuessesPerSecond() * seconds);
+            sum += share;
+            sumOfSquares += share * share;
+            min = Math.min(min, share);
+            max = Math.max(max, share);
+            n++;
+        }
+        if(n == 0 || sumOfSquares == 0) { return; }
+        System.out.printf("  Fairness: Jain index %.3f over %d workers, seconds of work handed out per second "
+                + "from %.2f to %.2f%n", sum * sum / (n * sumOfSquares), n, min, max);
+    }
+
+    private void stop() {
+        executor.shutdownNow();
+        webClient.close();
+        webServer.stop();
+    }
+
+    /**
+     * Logs an error and returns false if the working directory contains a file a server started in it would resume
+     * from and overwrite: its state, or the GPU statistics.
+     */
+    static boolean checkNoServerState(String test) {
+        for(File file : new File[]{ServerMain.SAVED_STATE, VastStatistician.SAVED_STATE}) {
+            if(file.exists()) {
+                Log.error("\"" + file.getAbsolutePath() + "\" exists. The " + test + " would resume or overwrite it, "
+                        + "run it in an empty directory instead.");
+                return false;
+            }
+        }
+        return true;
+    }
+}
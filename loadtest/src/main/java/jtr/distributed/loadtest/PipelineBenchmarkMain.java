@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import com.esotericsoftware.minlog.Log;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jtr.distributed.core.LocalTimeLogger;
+import jtr.distributed.core.wordlist.GeneratorSpec;
+import jtr.distributed.core.wordlist.WordlistGeneratorRegistry;
+import jtr.distributed.server.ServerMain;
+import jtr.distributed.server.web.WebServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the overhead of the client itself: a ClientMain is started against a server in this JVM, with a StubJohn
+ * in place of the john executable that consumes the words at a fixed rate. For each rate, it reports the candidates
+ * per second that reached the server, the CPU time the client JVM spent per million candidates (generating the words,
+ * writing them to the pipe, parsing John's output and posting statuses), and how long the device sat idle between
+ * two John runs, i.e. between assignments. The highest rate the client keeps up with is its sustainable rate.
+ *
+ * The job is read from job.json if it exists. Otherwise, it is a product of two masks, which the client generates
+ * and pipes to John itself (a plain mask would be generated by John). The server keeps its state and GPU
+ * statistics in the working directory like ServerMain does, so run this in an empty directory. Linux only, as the
+ * CPU time is read from /proc.
+ */
+public class PipelineBenchmarkMain {
+    // ClientMain connects to this address when its API key is "local"
+    private static final String HOST = "localhost";
+    private static final int PORT = 45678;
+    private static final int LOG_LEVEL = Log.LEVEL_ERROR;
+    private static final GeneratorSpec DEFAULT_JOB = new GeneratorSpec("product")
+            .withChild(new GeneratorSpec("mask").with("mask", "?l?l?l?l?l"))
+            .withChild(new GeneratorSpec("mask").with("mask", "?d?d?d"));
+    // Candidates per second of the stub, "max" for as fast as the client delivers them
+    private static final String DEFAULT_RATES = "5M,20M,50M,max";
+    private static final int DEFAULT_STEP_DURATION = 60; // s
+    // Time for the client JVM to start, register and report its first status before a step is measured
+    private static final long WARMUP = 15 * 1000; // ms
+    // The client keeps up with a rate if it delivers at least this fraction of it. The server only learns about
+    // progress with each status, so a step of one minute is measured to within a few percent.
+    private static final double SUSTAINED_FRACTION = 0.9;
+    // Unit of utime and stime in /proc/<pid>/stat, USER_HZ is 100 on all common Linux platforms
+    private static final double CLOCK_TICKS_PER_SECOND = 100;
+
+    public static void main(String[] args) throws Exception {
+        Log.set(LOG_LEVEL);
+        Log.setLogger(new LocalTimeLogger());
+        if(args.length > 3) {
+            Log.error("Usage: [<candidates per second of each step, default " + DEFAULT_RATES + ">] "
+                    + "[<step duration in s, default " + DEFAULT_STEP_DURATION + ">] [<password the stub finds>]");
+            System.exit(1);
+            return;
+        }
+        if(!LoadTestMain.checkNoServerState("benchmark")) {
+            System.exit(1);
+            return;
+        }
+        String[] rates = (args.length > 0 ? args[0] : DEFAULT_RATES).split(",");
+        for(String rate : rates) {
+            try {
+                parseRate(rate);
+            } catch (IllegalArgumentException e) {
+                Log.error("Invalid rate \"" + rate + "\", expected e.g. 500K, 20M or max");
+                System.exit(1);
+                return;
+            }
+        }
+        int stepDuration = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEP_DURATION;
+        String password = args.length > 2 ? args[2] : null;
+
+        GeneratorSpec job = ServerMain.JOB_SPEC.isFile()
+                ? new ObjectMapper().readValue(ServerMain.JOB_SPEC, GeneratorSpec.class) : DEFAULT_JOB;
+        ServerMain server = new ServerMain(job, WordlistGeneratorRegistry.getDefault().create(job));
+        WebServer webServer = new WebServer(HOST, PORT, server);
+        try {
+            new PipelineBenchmarkMain(server, password).run(rates, stepDuration);
+        } finally {
+            webServer.stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Parses a rate like 500K, 20M or 1G. "max" is 0, i.e. unlimited.
+     */
+    private static long parseRate(String rate) {
+        if(rate.equals("max")) { return 0; }
+        long factor = 1;
+        switch(rate.isEmpty() ? ' ' : rate.charAt(rate.length() - 1)) {
+            case 'K': factor = 1000; break;
+            case 'M': factor = 1000 * 1000; break;
+            case 'G': factor = 1000 * 1000 * 1000; break;
+        }
+        long value = Long.parseLong(factor == 1 ? rate : rate.substring(0, rate.length() - 1)) * factor;
+        if(value <= 0) { throw new IllegalArgumentException("Rate must be positive"); }
+        return value;
+    }
+
+    private final ServerMain server;
+    private final String password;
+    private final File directory, hashfile;
+
+    private PipelineBenchmarkMain(ServerMain server, String password) throws IOException {
+        this.server = server;
+        this.password = password;
+        this.directory = Files.createTempDirectory("jtr-pipeline-benchmark").toFile();
+        // Only checked for existence, the stub does not read it
+        this.hashfile = new File(directory, "hash.txt");
+        Files.write(hashfile.toPath(), "stub:$zip2$*0*3*0*0*0*0*0*0*0*$/zip2$\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void run(String[] rates, int stepDuration) throws IOException, InterruptedException {
+        System.out.printf("%-8s %14s %10s %14s %8s %14s %8s%n", "Rate", "Achieved c/s", "Client CPU",
+                "CPU s / 1M c", "Runs", "Mean idle ms", "Idle %");
+        long sustainable = 0;
+        for(int step = 0; step < rates.length; step++) {
+            long rate = parseRate(rates[step]);
+            Result result = measure(step, rate, stepDuration);
+            System.out.printf("%-8s %14.0f %9.1f%% %14.4f %8d %14.0f %7.2f%%%n", rates[step],
+                    result.candidatesPerSecond, result.cpuFraction * 100, result.cpuSecondsPerMillion, result.runs,
+                    result.meanIdleMillis, result.idleFraction * 100);
+            if(server.getStatusView().getPasswordFound() != null) {
+                System.out.println("The stub found the password \"" + server.getStatusView().getPasswordFound()
+                        + "\", stopping");
+                return;
+            }
+            if(rate == 0 || result.candidatesPerSecond >= rate * SUSTAINED_FRACTION) {
+                sustainable = Math.max(sustainable, (long) result.candidatesPerSecond);
+            }
+        }
+        System.out.printf("The client sustains %.1f M candidates/s%n", sustainable / 1e6);
+    }
+
+    private static class Result {
+        double candidatesPerSecond, cpuFraction, cpuSecondsPerMillion, meanIdleMillis, idleFraction;
+        int runs;
+    }
+
+    /**
+     * Runs a client with a stub that consumes the given rate (0 for unlimited) for the given time.
+     */
+    private Result measure(int step, long rate, int stepDuration) throws IOException, InterruptedException {
+        File stepDirectory = new File(directory, "step-" + step);
+        if(!stepDirectory.mkdir()) { throw new IOException("Could not create " + stepDirectory); }
+        File stubLog = new File(stepDirectory, "stub.log");
+        File pidFile = new File(stepDirectory, "client.pid");
+        writeStub(stepDirectory, rate, stubLog);
+
+        // The shell writes its PID before it becomes the client JVM, since Process.pid() needs Java 9
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        ProcessBuilder pb = new ProcessBuilder("sh", "-c", "echo $$ > " + quote(pidFile.getPath()) + "; exec "
+                + quote(java) + " -cp " + quote(System.getProperty("java.class.path"))
+                + " jtr.distributed.client.ClientMain bench-" + step + " local " + quote(stepDirectory.getPath())
+                + " 1 " + quote(hashfile.getPath()));
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(new File(stepDirectory, "client.log"));
+        Process client = pb.start();
+        try {
+            Thread.sleep(WARMUP);
+            String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+            long completedBefore = server.getStatusView().getCompleted();
+            long ticksBefore = readCpuTicks(pid);
+            long begin = System.currentTimeMillis();
+            Thread.sleep(stepDuration * 1000L);
+            long completedAfter = server.getStatusView().getCompleted();
+            long ticksAfter = readCpuTicks(pid);
+            long end = System.currentTimeMillis();
+
+            Result result = new Result();
+            double seconds = (end - begin) / 1000.0;
+            double cpuSeconds = (ticksAfter - ticksBefore) / CLOCK_TICKS_PER_SECOND;
+            result.candidatesPerSecond = (completedAfter - completedBefore) / seconds;
+            result.cpuFraction = cpuSeconds / seconds;
+            result.cpuSecondsPerMillion = completedAfter > completedBefore
+                    ? cpuSeconds / ((completedAfter - completedBefore) / 1e6) : Double.NaN;
+            measureIdle(stubLog, begin, end, result);
+            return result;
+        } finally {
+            client.destroy();
+            client.waitFor();
+        }
+    }
+
+    /**
+     * Writes the john script that starts a StubJohn with the given rate.
+     */
+    private void writeStub(File stepDirectory, long rate, File stubLog) throws IOException {
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String script = "#!/bin/sh\nexec " + quote(java) + " -cp " + quote(System.getProperty("java.class.path"))
+                + " -Dstub.rate=" + rate + " -Dstub.log=" + quote(stubLog.getPath())
+                + (password != null ? " -Dstub.password=" + quote(password) : "")
+                + " " + StubJohn.class.getName() + " \"$@\"\n";
+        File john = new File(stepDirectory, "john");
+        Files.write(john.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        if(!john.setExecutable(true)) { throw new IOException("Could not make " + john + " executable"); }
+    }
+
+    private static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Returns the user and system CPU time of the given process in clock ticks.
+     */
+    private static long readCpuTicks(String pid) throws IOException {
+        String stat = new String(Files.readAllBytes(new File("/proc/" + pid + "/stat").toPath()),
+                StandardCharsets.US_ASCII);
+        // The fields after the command name, which is in parentheses and may contain spaces, start with the state
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+        // utime and stime are fields 14 and 15 of the whole line
+        return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+    }
+
+    /**
+     * Computes the gaps between the end of one stub run and the first candidate of the next one in [begin, end) from
+     * the stub log. The startup of the stub's own JVM counts as idle time, so this overestimates what a real john
+     * would add.
+     */
+    private static void measureIdle(File stubLog, long begin, long end, Result result) throws IOException {
+        List<long[]> runs = new ArrayList<>();
+        if(stubLog.isFile()) {
+            for(String line : Files.readAllLines(stubLog.toPath(), StandardCharsets.US_ASCII)) {
+                // start, first candidate, end and number of candidates, in ms since the epoch
+                runs.add(Arrays.stream(line.trim().split(" ")).mapToLong(Long::parseLong).toArray());
+            }
+        }
+        runs.sort((a, b) -> Long.compare(a[0], b[0]));
+        long idle = 0;
+        int gaps = 0;
+        for(int i = 1; i < runs.size(); i++) {
+            long gapBegin = Math.max(begin, runs.get(i - 1)[2]);
+            long gapEnd = Math.min(end, runs.get(i)[1] > 0 ? runs.get(i)[1] : runs.get(i)[2]);
+            if(runs.get(i - 1)[2] >= begin && runs.get(i)[0] < end) {
+                idle += Math.max(0, gapEnd - gapBegin);
+                gaps++;
+            }
+        }
+        result.runs = runs.size();
+        result.meanIdleMillis = gaps > 0 ? (double) idle / gaps : 0;
+        result.idleFraction = (double) idle / (end - begin);
+    }
+}
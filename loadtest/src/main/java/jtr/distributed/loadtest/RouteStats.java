@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the latency of every request and the number of failed requests, by route. Every latency is kept until
+ * the next drain, so percentiles are exact.
+ */
+class RouteStats {
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    @Getter
+    @AllArgsConstructor
+    static class Snapshot {
+        private final long count, errors;
+        // Sorted latencies of the successful requests
+        private final long[] nanos;
+
+        /**
+         * Returns the latency below which the given fraction of the successful requests completed, in ms.
+         */
+        double percentileMillis(double fraction) {
+            if(nanos.length == 0) { return 0; }
+            int index = (int) Math.ceil(fraction * nanos.length) - 1;
+            return nanos[Math.max(0, Math.min(index, nanos.length - 1))] / 1e6;
+        }
+    }
+
+    private static class Route {
+        private long[] nanos = new long[1024];
+        private int count = 0;
+        private long errors = 0;
+
+        synchronized void record(long duration) {
+            if(count == nanos.length) { nanos = Arrays.copyOf(nanos, nanos.length * 2); }
+            nanos[count++] = duration;
+        }
+
+        synchronized void recordError() {
+            errors++;
+        }
+
+        synchronized Snapshot drain() {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            Snapshot snapshot = new Snapshot(count + errors, errors, sorted);
+            count = 0;
+            errors = 0;
+            return snapshot;
+        }
+    }
+
+    void record(String route, long nanos) {
+        routes.computeIfAbsent(route, r -> new Route()).record(nanos);
+    }
+
+    void recordError(String route) {
+        routes.computeIfAbsent(route, r -> new Route()).recordError();
+    }
+
+    /**
+     * Returns what was recorded since the last call, by route.
+     */
+    Map<String, Snapshot> drain() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+        for(Map.Entry<String, Route> entry : routes.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().drain());
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the server's Prometheus metrics over HTTP, the same way a monitoring system would, and returns how much
+ * they changed since the previous scrape.
+ */
+class ServerMetricsScraper {
+    private final WebTarget metricsTarget;
+    private Map<String, Double> previous = new HashMap<>();
+
+    ServerMetricsScraper(WebTarget metricsTarget) {
+        this.metricsTarget = metricsTarget;
+    }
+
+    /**
+     * Returns all series (name and labels, e.g. jtr_persistence_size_bytes{file="state.json"}) with their increase
+     * since the previous scrape. Gauges are returned with their current value instead.
+     */
+    Map<String, Double> scrapeDeltas() {
+        Map<String, Double> current = parse(metricsTarget.request(MediaType.TEXT_PLAIN).get(String.class));
+        Map<String, Double> deltas = new HashMap<>();
+        for(Map.Entry<String, Double> entry : current.entrySet()) {
+            boolean cumulative = entry.getKey().contains("_sum") || entry.getKey().contains("_count")
+                    || entry.getKey().contains("_bucket") || entry.getKey().contains("_total");
+            deltas.put(entry.getKey(), cumulative
+                    ? entry.getValue() - previous.getOrDefault(entry.getKey(), 0.0) : entry.getValue());
+        }
+        previous = current;
+        return deltas;
+    }
+
+    private static Map<String, Double> parse(String text) {
+        Map<String, Double> series = new HashMap<>();
+        for(String line : text.split("\n")) {
+            if(line.isEmpty() || line.startsWith("#")) { continue; }
+            int separator = line.lastIndexOf(' ');
+            if(separator < 0) { continue; }
+            try {
+                series.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+            } catch (NumberFormatException ignored) {}
+        }
+        return series;
+    }
+}
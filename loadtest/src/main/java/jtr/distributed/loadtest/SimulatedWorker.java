@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import jtr.distributed.core.events.*;
+import lombok.Getter;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A worker that follows the protocol of ClientMain over HTTP without cracking anything: it gets a task, reports its
+ * progress at its simulated rate every STATUS_INTERVAL, reports the range as not found once it is through, and starts
+ * over. At random it reports an error and restarts after a delay like ClientMain does, or disappears without a word.
+ * All steps run on the executor of the LoadTestMain, so thousands of workers need no more threads than it has.
+ */
+class SimulatedWorker {
+    // Match no KnownGPU, so that the simulated hashrates do not end up in the GPU statistics
+    private static final String[] GPU_MODELS = {"Simulated GPU A", "Simulated GPU B", "Simulated GPU C"};
+
+    private final LoadTestMain test;
+    @Getter
+    private final String clientId;
+    @Getter
+    private final long guessesPerSecond;
+    private final String gpuModel;
+    private final Random random;
+    @Getter
+    private final long joinedAt = System.nanoTime();
+    @Getter
+    private volatile boolean active = true;
+    // Words handed out to this worker in total
+    @Getter
+    private volatile long wordsHandedOut = 0;
+
+    // The current assignment, only accessed by the step that is running
+    private long beginIndex, endIndex, startedAt;
+
+    SimulatedWorker(LoadTestMain test, String clientId, long guessesPerSecond, long seed) {
+        this.test = test;
+        this.clientId = clientId;
+        this.guessesPerSecond = guessesPerSecond;
+        this.random = new Random(seed);
+        this.gpuModel = GPU_MODELS[random.nextInt(GPU_MODELS.length)];
+    }
+
+    void start() {
+        test.getExecutor().execute(this::requestTask);
+    }
+
+    private void requestTask() {
+        Response response = call("getTask", "/getTask", Entity.text(""));
+        if(response == null) {
+            restartLater();
+            return;
+        }
+        WordlistAssignment assignment;
+        try {
+            assignment = response.readEntity(WordlistAssignment.class);
+        } catch (ProcessingException e) {
+            restartLater();
+            return;
+        } finally {
+            response.close();
+        }
+        beginIndex = assignment.getBeginIndex();
+        endIndex = assignment.getEndIndex();
+        startedAt = System.nanoTime();
+        wordsHandedOut += endIndex - beginIndex;
+        scheduleStatus();
+    }
+
+    private void scheduleStatus() {
+        final long scheduledAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LoadTestMain.STATUS_INTERVAL);
+        test.getExecutor().schedule(() -> sendStatus(scheduledAt), LoadTestMain.STATUS_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void sendStatus(long scheduledAt) {
+        if(!active) { return; }
+        test.getStats().record("(harness lag)", System.nanoTime() - scheduledAt);
+        if(random.nextDouble() < LoadTestMain.VANISH_PROBABILITY) {
+            active = false;
+            test.onVanished(this);
+            return;
+        }
+        if(random.nextDouble() < LoadTestMain.ERROR_PROBABILITY) {
+            post("exit/error", "/event/exit/error", Entity.json(new ErrorEvent("Simulated crash",
+                    new IllegalStateException("Simulated crash"))));
+            restartLater();
+            return;
+        }
+
+        long done = (System.nanoTime() - startedAt) / 1000 * guessesPerSecond / (1000 * 1000);
+        if(beginIndex + done >= endIndex) {
+            if(!post("exit/notFound", "/event/exit/notFound",
+                    Entity.json(new PasswordNotFoundEvent(beginIndex, endIndex)))) {
+                restartLater();
+            } else {
+                requestTask();
+            }
+            return;
+        }
+        StatusEvent status = new StatusEvent(guessesPerSecond, beginIndex, beginIndex + Math.max(0, done - 1),
+                endIndex, null, gpuModel, Instant.now(), null);
+        if(!post("updateStatus", "/event/updateStatus", Entity.json(status))) {
+            restartLater();
+            return;
+        }
+        scheduleStatus();
+    }
+
+    private void restartLater() {
+        test.getExecutor().schedule(() -> {
+            if(active) { requestTask(); }
+        }, LoadTestMain.ERROR_RESTART_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Posts the entity and records the latency of the route, or an error.
+     *
+     * @return The response, which the caller must close, or null if the request failed.
+     */
+    private Response call(String route, String path, Entity<?> entity) {
+        final long begin = System.nanoTime();
+        try {
+            Response response = test.getApiTarget().path(path).request().header("clientId", clientId).post(entity);
+            if(response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                response.close();
+                test.getStats().recordError(route);
+                return null;
+            }
+            test.getStats().record(route, System.nanoTime() - begin);
+            return response;
+        } catch (ProcessingException e) {
+            test.getStats().recordError(route);
+            return null;
+        }
+    }
+
+    private boolean post(String route, String path, Entity<?> entity) {
+        Response response = call(route, path, entity);
+        if(response == null) { return false; }
+        response.close();
+        return true;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.loadtest;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Stands in for the john executable, so that the client can be benchmarked without GPUs. It takes the arguments
+ * JTRunner passes (--stdin, --wordlist=, --mask= in the syntax of KeyspacePlan, --progress-every=), consumes the
+ * candidates at most at the configured rate, and writes device, status and found lines the way John jumbo does.
+ *
+ * Configured through system properties, which PipelineBenchmarkMain puts into the john script it writes:
+ * stub.rate (candidates per second, 0 for unlimited), stub.password (found when it is among the candidates),
+ * stub.devices (number of devices listed by --list=opencl-devices) and stub.log (a file that each run appends
+ * "&lt;start ms&gt; &lt;first candidate ms&gt; &lt;end ms&gt; &lt;candidates&gt;" to).
+ */
+public class StubJohn {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Candidates consumed at once when generating a mask, and the rate of an unlimited mask run
+    private static final long MASK_BATCH = 64 * 1024, MASK_UNLIMITED_RATE = 10L * 1000 * 1000 * 1000;
+    // Matches no KnownGPU, so that the stub's rate does not end up in the GPU statistics
+    private static final String GPU_MODEL = "Stub GPU";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String mask = null, wordlist = null, devices = "1", hashfile = "hash";
+        long progressEvery = 0;
+        for(String arg : args) {
+            if(arg.equals("--list=opencl-devices")) {
+                listDevices(Integer.getInteger("stub.devices", 1));
+                return;
+            } else if(arg.startsWith("--mask=")) {
+                mask = arg.substring("--mask=".length());
+            } else if(arg.startsWith("--wordlist=")) {
+                wordlist = arg.substring("--wordlist=".length());
+            } else if(arg.startsWith("--devices=")) {
+                devices = arg.substring("--devices=".length());
+            } else if(arg.startsWith("--progress-every=")) {
+                progressEvery = Long.parseLong(arg.substring("--progress-every=".length()));
+            } else if(!arg.startsWith("-")) {
+                hashfile = new File(arg).getName();
+            }
+        }
+
+        long started = System.currentTimeMillis();
+        System.err.println("Using default input encoding: UTF-8");
+        System.err.println("Loaded 1 password hash (ZIP, WinZip [PBKDF2-SHA1 OpenCL 4x])");
+        for(String device : devices.split(",")) {
+            System.err.println("Device " + device + ": " + GPU_MODEL);
+        }
+        System.err.println("Press 'q' or Ctrl-C to abort, almost any other key for status");
+
+        String password = System.getProperty("stub.password");
+        Candidates candidates = mask != null ? new MaskCandidates(mask, password)
+                : new StreamCandidates(wordlist != null ? new FileInputStream(wordlist) : System.in, password);
+        long rate = Long.getLong("stub.rate", 0);
+        if(rate == 0 && mask != null) { rate = MASK_UNLIMITED_RATE; }
+        Run run = new Run(candidates, rate, progressEvery * 1000, started);
+        boolean found = run.crack();
+
+        if(found) {
+            System.out.println(String.format("%-16s (%s)", password, hashfile));
+        }
+        run.printStatus(found, true);
+        System.err.println("Session completed");
+        String log = System.getProperty("stub.log");
+        if(log != null) {
+            try(FileOutputStream out = new FileOutputStream(log, true)) {
+                out.write((started + " " + run.firstCandidateAt + " " + System.currentTimeMillis() + " "
+                        + run.consumed + "\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    private static void listDevices(int count) {
+        System.out.println("Platform #0 name: Stub, version: OpenCL 3.0");
+        // Like John, the index within the platform counts from 0, the device number for --devices from 1
+        for(int device = 1; device <= count; device++) {
+            System.out.println("    Device #" + (device - 1) + " (" + device + ") name:     " + GPU_MODEL);
+        }
+    }
+
+    private static class Run {
+        private final Candidates candidates;
+        private final long rate, progressEveryMillis, started;
+        private long consumed = 0, firstCandidateAt = 0;
+
+        Run(Candidates candidates, long rate, long progressEveryMillis, long started) {
+            this.candidates = candidates;
+            this.rate = rate;
+            this.progressEveryMillis = progressEveryMillis;
+            this.started = started;
+        }
+
+        /**
+         * Consumes all candidates, or until the password is found.
+         *
+         * @return True if the password was found.
+         */
+        boolean crack() throws IOException, InterruptedException {
+            long begin = System.nanoTime();
+            long nextStatus = System.currentTimeMillis() + progressEveryMillis;
+            while(true) {
+                long count = candidates.advance();
+                if(count < 0) { return false; }
+                if(consumed == 0 && count > 0) { firstCandidateAt = System.currentTimeMillis(); }
+                consumed += count;
+                if(candidates.isFound()) { return true; }
+
+                if(rate > 0) {
+                    // In double, since consumed * 10^9 would overflow a long after 9.2 * 10^9 candidates
+                    long aheadNanos = (long) (consumed * 1e9 / rate) - (System.nanoTime() - begin);
+                    if(aheadNanos > 1000000) { Thread.sleep(aheadNanos / 1000000); }
+                }
+                if(progressEveryMillis > 0 && System.currentTimeMillis() >= nextStatus) {
+                    nextStatus += progressEveryMillis;
+                    printStatus(false, false);
+                    // Exit if the client is gone, like John would when its pipe breaks
+                    if(System.err.checkError()) { System.exit(1); }
+                }
+            }
+        }
+
+        void printStatus(boolean found, boolean done) {
+            long millis = System.currentTimeMillis() - started;
+            long seconds = millis / 1000;
+            long candidatesPerSecond = millis > 0 ? (long) (consumed * 1000.0 / millis) : 0;
+            String last = candidates.getLastWord();
+            System.err.println(String.format("%dg %d:%02d:%02d:%02d %s%s %sp/s %sc/s %sC/s %s..%s",
+                    found ? 1 : 0, seconds / 86400, seconds / 3600 % 24, seconds / 60 % 60, seconds % 60,
+                    done ? "DONE (" + new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date()) + ") " : "",
+                    found ? String.format("%.4fg/s", 1000.0 / millis) : "0g/s", formatRate(candidatesPerSecond),
+                    formatRate(candidatesPerSecond), formatRate(candidatesPerSecond), last, last));
+        }
+    }
+
+    /**
+     * Formats a rate with John's suffixes, e.g. 5015K.
+     */
+    private static String formatRate(long rate) {
+        if(rate < 10000) { return String.valueOf(rate); }
+        if(rate < 10000000L) { return rate / 1000 + "K"; }
+        if(rate < 10000000000L) { return rate / 1000000 + "M"; }
+        return rate / 1000000000 + "G";
+    }
+
+    private interface Candidates {
+        /**
+         * Consumes the next few candidates.
+         *
+         * @return The number of candidates consumed, or -1 if there are none left.
+         */
+        long advance() throws IOException;
+
+        boolean isFound();
+
+        String getLastWord();
+    }
+
+    /**
+     * Candidates read line by line from stdin or a wordlist file.
+     */
+    private static class StreamCandidates implements Candidates {
+        private final InputStream in;
+        private final byte[] password;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private byte[] line = new byte[256], lastLine = new byte[256];
+        private int lineLength = 0, lastLineLength = 0;
+        private boolean found = false;
+
+        StreamCandidates(InputStream in, String password) {
+            this.in = in;
+            this.password = password != null ? password.getBytes(StandardCharsets.UTF_8) : null;
+        }
+
+        @Override
+        public long advance() throws IOException {
+            int read = in.read(buffer);
+            if(read < 0) { return -1; }
+            long count = 0;
+            for(int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if(b != '\n') {
+                    if(lineLength == line.length) { line = Arrays.copyOf(line, line.length * 2); }
+                    line[lineLength++] = b;
+                    continue;
+                }
+                count++;
+                if(password != null && lineLength == password.length
+                        && Arrays.equals(Arrays.copyOf(line, lineLength), password)) {
+                    found = true;
+                }
+                byte[] swap = lastLine;
+                lastLine = line;
+                lastLineLength = lineLength;
+                line = swap;
+                lineLength = 0;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isFound() {
+            return found;
+        }
+
+        @Override
+        public String getLastWord() {
+            return new String(lastLine, 0, lastLineLength, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Candidates of a mask in the syntax KeyspacePlan writes: literals and sets like [a-z\x21], the leftmost position
+     * changing fastest. They are only unranked when needed for a status line.
+     */
+    private static class MaskCandidates implements Candidates {
+        private final char[][] charsets;
+        private final long size;
+        // Index of the password in the mask, -1 if it does not match
+        private final long passwordIndex;
+        private long position = 0;
+        private boolean found = false;
+
+        MaskCandidates(String mask, String password) {
+            this.charsets = parse(mask);
+            long size = 1;
+            for(char[] charset : charsets) { size *= charset.length; }
+            this.size = size;
+            this.passwordIndex = password != null ? indexOf(password) : -1;
+        }
+
+        private static char[][] parse(String mask) {
+            List<char[]> positions = new ArrayList<>();
+            for(int i = 0; i < mask.length(); ) {
+                if(mask.charAt(i) != '[') {
+                    int[] next = new int[]{i};
+                    positions.add(new char[]{readChar(mask, next)});
+                    i = next[0];
+                    continue;
+                }
+                StringBuilder set = new StringBuilder();
+                int[] next = new int[]{i + 1};
+                while(mask.charAt(next[0]) != ']') {
+                    char first = readChar(mask, next);
+                    if(mask.charAt(next[0]) == '-' && mask.charAt(next[0] + 1) != ']') {
+                        next[0]++;
+                        char last = readChar(mask, next);
+                        for(char c = first; c <= last; c++) { set.append(c); }
+                    } else {
+                        set.append(first);
+                    }
+                }
+                positions.add(set.toString().toCharArray());
+                i = next[0] + 1;
+            }
+            return positions.toArray(new char[0][]);
+        }
+
+        /**
+         * Reads a character or a \xHH escape at next[0], and advances next[0] past it.
+         */
+        private static char readChar(String mask, int[] next) {
+            int i = next[0];
+            if(mask.startsWith("\\x", i)) {
+                next[0] = i + 4;
+                return (char) Integer.parseInt(mask.substring(i + 2, i + 4), 16);
+            }
+            next[0] = i + 1;
+            return mask.charAt(i);
+        }
+
+        private long indexOf(String word) {
+            if(word.length() != charsets.length) { return -1; }
+            long index = 0;
+            for(int p = charsets.length - 1; p >= 0; p--) {
+                int digit = new String(charsets[p]).indexOf(word.charAt(p));
+                if(digit < 0) { return -1; }
+                index = index * charsets[p].length + digit;
+            }
+            return index;
+        }
+
+        @Override
+        public long advance() {
+            if(position == size) { return -1; }
+            long next = Math.min(size, position + MASK_BATCH);
+            if(passwordIndex >= position && passwordIndex < next) {
+                next = passwordIndex + 1;
+                found = true;
+            }
+            long count = next - position;
+            position = next;
+            return count;
+        }
+
+        @Override
+        public boolean isFound() {
+            return found;
+        }
+
+        @Override
+        public String getLastWord() {
+            long index = Math.max(0, position - 1);
+            StringBuilder word = new StringBuilder(charsets.length);
+            for(char[] charset : charsets) {
+                word.append(charset[(int) (index % charset.length)]);
+                index /= charset.length;
+            }
+            return word.toString();
+        }
+    }
+}
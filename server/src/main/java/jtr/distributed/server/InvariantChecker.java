@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.server.assignment.ActiveAssignment;
+import jtr.distributed.server.assignment.AssignmentManager;
+import jtr.distributed.server.metrics.Metrics;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the server's assignment and client invariants. Mutations are checked incrementally, only looking at the
+ * range they touched, while full checks run in the background on snapshots. Violations are logged and counted in
+ * the metrics.
+ */
+public class InvariantChecker {
+    private static final String LOG_INVARIANTS = "invariants";
+
+    public enum Mode {
+        /** No checks at all */
+        OFF,
+        /** Every sampleRate-th mutation and snapshot is checked */
+        SAMPLED,
+        /** Every mutation and snapshot is checked */
+        FULL
+    }
+
+    private final Mode mode;
+    private final int sampleRate;
+    private final LongAdder violationCounter, checkCounter;
+    private long mutations = 0, snapshots = 0;
+
+    public InvariantChecker(Mode mode, int sampleRate, Metrics metrics) {
+        if(sampleRate <= 0) { throw new IllegalArgumentException("Invalid sample rate " + sampleRate); }
+        this.mode = mode;
+        this.sampleRate = sampleRate;
+        this.violationCounter = metrics.registerCounter("invariant_violations_total",
+                "Number of violated invariants found");
+        this.checkCounter = metrics.registerCounter("invariant_checks_total",
+                "Number of incremental and full invariant checks run");
+    }
+
+    /**
+     * Checks the invariants around a mutation of the index range [beginIndex, endIndex) on behalf of the given
+     * client. Must be called while holding the lock that guards the assignment manager and the clients.
+     */
+    public void checkMutation(AssignmentManager assignmentManager, Map<String, ServerMain.ClientInfo> clients,
+                              String clientId, long beginIndex, long endIndex) {
+        if(!isSampled(++mutations)) { return; }
+        List<String> violations = assignmentManager.sanityCheckAssignments(beginIndex, endIndex);
+        ServerMain.ClientInfo clientInfo = clients.get(clientId);
+        if(clientInfo != null && !clientId.equals(clientInfo.getClientId())) {
+            violations.add("Client \"" + clientInfo.getClientId() + "\" is mapped by different key \""
+                    + clientId + "\"");
+        }
+        if(clientInfo == null && assignmentManager.getAssignment(clientId) != null) {
+            violations.add("Could not find client for assignment " + assignmentManager.getAssignment(clientId));
+        }
+        report(violations);
+    }
+
+    /**
+     * Checks all invariants on a snapshot of the server's state. Can be called without holding any lock.
+     */
+    public void checkSnapshot(AssignmentManager assignmentManager, Collection<ServerMain.ClientInfo> clients) {
+        if(!isSampled(++snapshots)) { return; }
+        List<String> violations = assignmentManager.sanityCheckAssignments();
+        Set<String> clientIds = new HashSet<>();
+        for(ServerMain.ClientInfo clientInfo : clients) {
+            clientIds.add(clientInfo.getClientId());
+        }
+        for(ActiveAssignment activeAssignment : assignmentManager.getActiveAssignments()) {
+            if(!clientIds.contains(activeAssignment.getClientId())) {
+                violations.add("Could not find client for assignment " + activeAssignment);
+            }
+        }
+        report(violations);
+    }
+
+    private boolean isSampled(long count) {
+        switch (mode) {
+            case FULL: return true;
+            case SAMPLED: return count % sampleRate == 0;
+            default: return false;
+        }
+    }
+
+    private void report(List<String> violations) {
+        checkCounter.increment();
+        for(String violation : violations) {
+            violationCounter.increment();
+            Log.warn(LOG_INVARIANTS, violation);
+        }
+    }
+}
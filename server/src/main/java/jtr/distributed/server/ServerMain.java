@@ -15,11 +15,16 @@ import jtr.distributed.core.LocalTimeLogger;
 import jtr.distributed.core.events.ErrorEvent;
 import jtr.distributed.core.events.PasswordFoundEvent;
 import jtr.distributed.core.events.PasswordNotFoundEvent;
+import jtr.distributed.core.events.PipelineProfile;
 import jtr.distributed.core.events.StatusEvent;
-import jtr.distributed.core.wordlist.ExampleWordlistGenerator;
+import jtr.distributed.core.wordlist.GeneratorSpec;
 import jtr.distributed.core.wordlist.WordlistGenerator;
+import jtr.distributed.core.wordlist.WordlistGeneratorRegistry;
 import jtr.distributed.server.assignment.ActiveAssignment;
 import jtr.distributed.server.assignment.AssignmentManager;
+import jtr.distributed.server.assignment.TraversalPolicy;
+import jtr.distributed.server.metrics.InstrumentedLock;
+import jtr.distributed.server.metrics.Metrics;
 import jtr.distributed.server.web.WebServer;
 import lombok.*;
 import org.glassfish.grizzly.utils.Pair;
@@ -30,17 +35,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ServerMain {
     public static void main(String[] args) {
         String host = args[0];
         int port = Integer.parseInt(args[1]);
-        // Change this to use a different wordlist
-        // Also change it in jtr.distributed.client.ClientMain
-        WordlistGenerator generator = new ExampleWordlistGenerator();
 
         Log.setLogger(new LocalTimeLogger());
         if(args.length >= 4 && args[3].equals("--trace")) {
@@ -49,7 +53,21 @@ public class ServerMain {
         } else {
             Log.set(LOG_LEVEL);
         }
-        new WebServer(host, port, new ServerMain(generator));
+
+        // Clients create the same generator from the spec they get with each assignment
+        GeneratorSpec generatorSpec = DEFAULT_GENERATOR_SPEC;
+        WordlistGenerator generator;
+        try {
+            if(JOB_SPEC.isFile()) {
+                generatorSpec = new ObjectMapper().readValue(JOB_SPEC, GeneratorSpec.class);
+            }
+            generator = WordlistGeneratorRegistry.getDefault().create(generatorSpec);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.error(LOG_MAIN, "Aborting server startup: wordlist generator could not be created", e);
+            throw new RuntimeException(e);
+        }
+        Log.info(LOG_MAIN, "Using wordlist generator " + generatorSpec + " with " + generator.getSize() + " words");
+        new WebServer(host, port, new ServerMain(generatorSpec, generator));
     }
 
     public static final long MIN_WORK_PACKAGE_SIZE =
@@ -80,9 +98,56 @@ public class ServerMain {
     public static final String LOG_MAIN = "main";
     public static final File SAVED_STATE = new File("state.json"),
                              SAVED_STATE_TMP = new File("state.tmp.json");
+    // The wordlist generator of the job, see GeneratorSpec. If the file does not exist, DEFAULT_GENERATOR_SPEC is used
+    public static final File JOB_SPEC = new File("job.json");
+    public static final GeneratorSpec DEFAULT_GENERATOR_SPEC = new GeneratorSpec("example");
     public static final Duration CLIENT_TIMEOUT_INITIAL = Duration.ofSeconds(60);
     public static final Duration CLIENT_TIMEOUT_AFTER_FIRST_STATUS = Duration.ofSeconds(10);
     public static final Duration MAINTENANCE_THREAD_INTERVAL = Duration.ofSeconds(5);
+    // gpu-stats.json is rewritten at most this often, no matter how many status updates come in
+    public static final Duration GPU_STATS_PERSIST_INTERVAL = Duration.ofSeconds(30);
+    // Per-client GPU statistics are dropped after this long without a status report, the per-host and per-GPU
+    // aggregates they contributed to are kept
+    public static final Duration GPU_STATS_CLIENT_IDLE_EVICTION = Duration.ofHours(6);
+    // Hashrate samples lose half their weight in the per-host and per-GPU aggregates after this long
+    public static final Duration GPU_STATS_HALF_LIFE = Duration.ofHours(24);
+    // Maximum number of clients, and of hosts, that GPU statistics are kept for
+    public static final int GPU_STATS_MAX_ENTRIES = 4096;
+    // OFF, SAMPLED (every INVARIANT_CHECK_SAMPLE_RATE-th mutation and snapshot) or FULL
+    public static final InvariantChecker.Mode INVARIANT_CHECK_MODE = InvariantChecker.Mode.SAMPLED;
+    public static final int INVARIANT_CHECK_SAMPLE_RATE = 16;
+    // Maximum number of per-client and per-GPU throughput histories
+    public static final int THROUGHPUT_HISTORY_MAX_SERIES = 1024;
+    // Maximum number of per-client and per-GPU accounts each in the work ledger
+    public static final int WORK_LEDGER_MAX_ACCOUNTS = 4096;
+    // The status view is rebuilt at most this often, and only if the state changed since
+    public static final Duration STATUS_VIEW_MAX_AGE = Duration.ofSeconds(1);
+    // The gauges of a scrape share one snapshot of the state, which is retaken at most this often
+    public static final Duration GAUGE_SNAPSHOT_MAX_AGE = Duration.ofSeconds(1);
+    // Live dashboards are sent changes at most this often
+    public static final Duration STATUS_STREAM_INTERVAL = Duration.ofSeconds(1);
+    // LINEAR hands out the lowest free index first, STRIDED round-robins across TRAVERSAL_STRIDED_STRIPES equally sized
+    // stripes of the keyspace, PRIORITY searches the wordlist generator's priority blocks first
+    public static final TraversalPolicy.Type TRAVERSAL_POLICY = TraversalPolicy.Type.LINEAR;
+    public static final int TRAVERSAL_STRIDED_STRIPES = 64;
+    public static final SchedulingPolicy DEFAULT_SCHEDULING_POLICY = new SchedulingPolicy(MIN_WORK_PACKAGE_SIZE,
+            MAX_WORK_PACKAGE_SIZE, DEFAULT_WORK_PACKAGE_SIZE, WORK_PACKAGE_TARGET_DURATION, CLIENT_TIMEOUT_INITIAL,
+            CLIENT_TIMEOUT_AFTER_FIRST_STATUS, TRAVERSAL_POLICY, TRAVERSAL_STRIDED_STRIPES);
+
+    /**
+     * How work is sized and handed out, and when clients are given up on. ServerMain uses the constants above, the
+     * FleetSimulatorMain compares other values.
+     */
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static class SchedulingPolicy {
+        private final long minWorkPackageSize, maxWorkPackageSize, defaultWorkPackageSize;
+        private final Duration workPackageTargetDuration;
+        private final Duration clientTimeoutInitial, clientTimeoutAfterFirstStatus;
+        private final TraversalPolicy.Type traversalPolicy;
+        private final int traversalStripes;
+    }
 
     @AllArgsConstructor
     @NoArgsConstructor
@@ -98,12 +163,15 @@ public class ServerMain {
 
         String lastGuessedPassword = null, gpuModel = null;
 
-        public void updateLastSeen() { lastSeen = Instant.now(); }
+        // Null if the client did not report one, e.g. because John generates the words itself
+        PipelineProfile lastPipelineProfile = null;
+
+        public void updateLastSeen(Instant now) { lastSeen = now; }
 
         @Override
         public ClientInfo clone() {
             return new ClientInfo(clientId, lastGuessesPerSecond, lastActualGuessesPerSecond, lastGuessedIndex,
-                    lastSeen, lastStatusReport, lastGuessedPassword, gpuModel);
+                    lastSeen, lastStatusReport, lastGuessedPassword, gpuModel, lastPipelineProfile);
         }
     }
 
@@ -114,6 +182,8 @@ public class ServerMain {
         AssignmentManager assignmentManager;
         List<ClientInfo> clients;
         String passwordFound;
+        // The job the indices refer to, null in states saved before it was stored
+        GeneratorSpec generatorSpec;
     }
 
     private final AssignmentManager assignmentManager;
@@ -122,27 +192,93 @@ public class ServerMain {
             .enable(SerializationFeature.INDENT_OUTPUT)
             .registerModule(new JavaTimeModule());
 
+    @Getter
+    private final Metrics metrics = new Metrics();
+
+    private final InvariantChecker invariantChecker = new InvariantChecker(INVARIANT_CHECK_MODE,
+            INVARIANT_CHECK_SAMPLE_RATE, metrics);
+
     @Getter
     private final AverageMap<String> clientGuessesPerSecondAverages = new AverageMap<>(20);
 
     @Getter
-    private final VastStatistician vastStatistician = new VastStatistician(clientGuessesPerSecondAverages);
+    private final VastStatistician vastStatistician;
+
+    @Getter
+    private final ThroughputHistory throughputHistory = new ThroughputHistory(THROUGHPUT_HISTORY_MAX_SERIES);
+
+    @Getter
+    private final WorkLedger workLedger = new WorkLedger(WORK_LEDGER_MAX_ACCOUNTS);
+
+    @Getter
+    private final GeneratorSpec generatorSpec;
 
     @Getter
     private final WordlistGenerator wordlistGenerator;
 
+    private final SchedulingPolicy schedulingPolicy;
+    private final TraversalPolicy traversalPolicy;
+    // Time of the timeouts. Status events carry the client's own timestamps.
+    private final Clock clock;
+
     @Getter
     private volatile String passwordFound = null;
 
-    private final Object[] lock = new Object[0];
+    private final InstrumentedLock lock = new InstrumentedLock(metrics.getLockWaitTimes(), metrics.getLockHoldTimes());
 
-    private ServerMain(WordlistGenerator generator) {
-        this.wordlistGenerator = generator;
+    // Incremented on every change that is visible in the status view. Starts at the current time so that versions
+    // (and thus ETags) are not reused after a restart
+    private final AtomicLong stateVersion = new AtomicLong(System.currentTimeMillis());
+    private volatile StatusView statusView = null;
+
+    /**
+     * The values of the gauges that need the lock, taken under a single lock acquisition.
+     */
+    @AllArgsConstructor
+    private static class GaugeSnapshot {
+        final long version, takenAt;
+        final long activeAssignments, completedFragments, completed, unassigned, clients;
+    }
+
+    private volatile GaugeSnapshot gaugeSnapshot = null;
 
-        if(SAVED_STATE.isFile()) {
+    /**
+     * Creates a server for the given job, resuming from SAVED_STATE if it exists. Serve it with a WebServer.
+     */
+    public ServerMain(GeneratorSpec generatorSpec, WordlistGenerator generator) {
+        this(generatorSpec, generator, DEFAULT_SCHEDULING_POLICY, Clock.systemUTC(), true);
+    }
+
+    /**
+     * Creates a server that schedules with the given policy and takes the time from the given clock. Unless it is
+     * persistent, it neither resumes from nor saves to SAVED_STATE or the GPU statistics and starts no threads, so the
+     * caller has to call removeTimedOutClients itself.
+     */
+    public ServerMain(GeneratorSpec generatorSpec, WordlistGenerator generator, SchedulingPolicy schedulingPolicy,
+                      Clock clock, boolean persistent) {
+        this.generatorSpec = generatorSpec;
+        this.wordlistGenerator = generator;
+        this.schedulingPolicy = schedulingPolicy;
+        this.traversalPolicy = TraversalPolicy.create(schedulingPolicy.getTraversalPolicy(), generator,
+                schedulingPolicy.getTraversalStripes());
+        this.clock = clock;
+        this.vastStatistician = new VastStatistician(clientGuessesPerSecondAverages, metrics,
+                GPU_STATS_PERSIST_INTERVAL, GPU_STATS_CLIENT_IDLE_EVICTION, GPU_STATS_HALF_LIFE, GPU_STATS_MAX_ENTRIES,
+                persistent);
+
+        if(persistent && SAVED_STATE.isFile()) {
             try {
                 SavedState state = mapper.readValue(SAVED_STATE, SavedState.class);
-                synchronized (lock) {
+                // A different job of the same size would silently be resumed at the wrong words
+                if(state.generatorSpec != null && !state.generatorSpec.equals(generatorSpec)) {
+                    throw new IOException("Saved state belongs to the wordlist generator " + state.generatorSpec
+                            + ", but the job is " + generatorSpec);
+                }
+                if(state.assignmentManager.getSize() != generator.getSize()) {
+                    throw new IOException("Saved state has " + state.assignmentManager.getSize()
+                            + " words, but the wordlist generator has " + generator.getSize());
+                }
+                try(InstrumentedLock ignored = lock.acquire()) {
                     assignmentManager = state.assignmentManager;
                     for(ClientInfo clientInfo : state.clients) {
                         clients.put(clientInfo.clientId, clientInfo);
@@ -157,6 +293,8 @@ public class ServerMain {
         else {
             assignmentManager = new AssignmentManager(wordlistGenerator.getSize());
         }
+        registerGauges();
+        if(!persistent) { return; }
 
         Thread maintenanceThread = new Thread(() -> {
             while (true) {
@@ -165,31 +303,13 @@ public class ServerMain {
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 }
+                removeTimedOutClients();
                 AssignmentManager assignmentManagerCopy = null;
                 List<ClientInfo> clientsCopy = new ArrayList<>(clients.size());
-                final Instant minimum = Instant.now().minus(CLIENT_TIMEOUT_INITIAL);
-                final Instant minimumAfterStatus = Instant.now().minus(CLIENT_TIMEOUT_AFTER_FIRST_STATUS);
-                synchronized (lock) {
-                    sanityCheckAssignments(); // TODO remove
-                    Iterator<ClientInfo> clientIterator = clients.values().iterator();
-                    while (clientIterator.hasNext()) {
-                        ClientInfo clientInfo = clientIterator.next();
-                        if (clientInfo.lastStatusReport == null ?
-                                  // No status report yet? Client has more time
-                                  clientInfo.lastSeen.isBefore(minimum)
-                                  // After the first status report, timeout is more strict
-                                : clientInfo.lastSeen.isBefore(minimumAfterStatus
-                        )) {
-                            Log.info(clientInfo.clientId, "Timeout: Removing client");
-                            clientIterator.remove();
-                            if(assignmentManager.removeAssignment(clientInfo.clientId)) {
-                                Log.info(clientInfo.clientId, "Timeout: Removing client assignment");
-                            }
-                        } else {
-                            clientsCopy.add(clientInfo.clone());
-                        }
+                try(InstrumentedLock ignored = lock.acquire()) {
+                    for(ClientInfo clientInfo : clients.values()) {
+                        clientsCopy.add(clientInfo.clone());
                     }
-                    sanityCheckAssignments(); // TODO remove
                     assignmentManagerCopy = assignmentManager.clone();
                     // Consolidate successive completed blocks
                     /*Iterator<WorkAssignment> assignmentIterator = workAssignments.values().iterator();
@@ -211,11 +331,15 @@ public class ServerMain {
                     }
                     sanityCheckAssignments();*/ // TODO remove
                 }
-                SavedState savedState = new SavedState(assignmentManagerCopy, clientsCopy, passwordFound);
+                invariantChecker.checkSnapshot(assignmentManagerCopy, clientsCopy);
+                SavedState savedState = new SavedState(assignmentManagerCopy, clientsCopy, passwordFound,
+                        generatorSpec);
                 try {
+                    final long begin = System.nanoTime();
                     mapper.writeValue(SAVED_STATE_TMP, savedState);
                     if(SAVED_STATE.exists() && !SAVED_STATE.delete()) { throw new IOException("Deleting old state failed"); }
                     if(!SAVED_STATE_TMP.renameTo(SAVED_STATE)) { throw new IOException("Rename failed"); }
+                    metrics.recordPersistence(SAVED_STATE.getName(), System.nanoTime() - begin, SAVED_STATE.length());
                 } catch (IOException e) {
                     Log.warn(LOG_MAIN, "Could not save state!", e);
                 }
@@ -224,6 +348,171 @@ public class ServerMain {
         maintenanceThread.setDaemon(true);
         maintenanceThread.setName("maintenance");
         maintenanceThread.start();
+
+        // Persisted every GPU_STATS_PERSIST_INTERVAL, the rest would be lost on a restart
+        Thread shutdownHook = new Thread(vastStatistician::close);
+        shutdownHook.setName("gpu-stats-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops the GPU statistics, saving their last changes if the server is persistent. A persistent server does this
+     * when the JVM shuts down.
+     */
+    public void close() {
+        vastStatistician.close();
+    }
+
+    /**
+     * Removes the clients that were not seen within the timeouts of the scheduling policy, and their assignments.
+     *
+     * @return The number of clients removed.
+     */
+    public int removeTimedOutClients() {
+        final Instant now = clock.instant();
+        final Instant minimum = now.minus(schedulingPolicy.getClientTimeoutInitial());
+        final Instant minimumAfterStatus = now.minus(schedulingPolicy.getClientTimeoutAfterFirstStatus());
+        int removed = 0;
+        try(InstrumentedLock ignored = lock.acquire()) {
+            Iterator<ClientInfo> clientIterator = clients.values().iterator();
+            while (clientIterator.hasNext()) {
+                ClientInfo clientInfo = clientIterator.next();
+                if (clientInfo.lastStatusReport == null ?
+                          // No status report yet? Client has more time
+                          clientInfo.lastSeen.isBefore(minimum)
+                          // After the first status report, timeout is more strict
+                        : clientInfo.lastSeen.isBefore(minimumAfterStatus
+                )) {
+                    Log.info(clientInfo.clientId, "Timeout: Removing client");
+                    clientIterator.remove();
+                    stateVersion.incrementAndGet();
+                    removed++;
+                    // It failed at some time between its last contact and the timeout
+                    workLedger.interrupted(clientInfo.clientId, true, clientInfo.lastSeen.toEpochMilli()
+                            + schedulingPolicy.getClientTimeoutAfterFirstStatus().toMillis() / 2);
+                    if(assignmentManager.removeAssignment(clientInfo.clientId)) {
+                        Log.info(clientInfo.clientId, "Timeout: Removing client assignment");
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    private void registerGauges() {
+        metrics.registerGauge("assignments_active", "Number of active assignments",
+                () -> getGaugeSnapshot().activeAssignments);
+        metrics.registerGauge("assignments_completed_fragments",
+                "Number of disjoint completed ranges of the keyspace", () -> getGaugeSnapshot().completedFragments);
+        metrics.registerGauge("keyspace_size", "Number of words in the wordlist", wordlistGenerator::getSize);
+        metrics.registerGauge("keyspace_completed", "Number of words searched", () -> getGaugeSnapshot().completed);
+        metrics.registerGauge("keyspace_free", "Number of words neither searched nor assigned",
+                () -> getGaugeSnapshot().unassigned);
+        metrics.registerGauge("clients", "Number of connected clients", () -> getGaugeSnapshot().clients);
+        metrics.registerGauge("fleet_hashrate", "Sum of the measured hashrates of all connected clients, in p/s",
+                this::getFleetHashrate);
+    }
+
+    /**
+     * Returns the values of the gauges that need the lock. The gauges of a scrape are evaluated right after each other,
+     * so only the first one takes the lock, and not even that one if the state did not change since the last scrape.
+     */
+    private GaugeSnapshot getGaugeSnapshot() {
+        GaugeSnapshot snapshot = gaugeSnapshot;
+        if(snapshot != null && (snapshot.version == stateVersion.get()
+                || System.currentTimeMillis() - snapshot.takenAt < GAUGE_SNAPSHOT_MAX_AGE.toMillis())) {
+            return snapshot;
+        }
+        try(InstrumentedLock ignored = lock.acquire()) {
+            snapshot = new GaugeSnapshot(stateVersion.get(), System.currentTimeMillis(),
+                    assignmentManager.getActiveAssignments().size(), assignmentManager.getCompletedAssignments().size(),
+                    assignmentManager.getCompletedSize(), assignmentManager.getUnassignedSize(), clients.size());
+        }
+        gaugeSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of words searched so far. Unlike the status view, this is never cached.
+     */
+    public long getCompletedSize() {
+        try(InstrumentedLock ignored = lock.acquire()) {
+            return assignmentManager.getCompletedSize();
+        }
+    }
+
+    /**
+     * Returns the sum of each client's average measured hashrate, or its last reported one if none was measured yet.
+     */
+    public long getFleetHashrate() {
+        return getStatusView().getHashrate();
+    }
+
+    /**
+     * Returns the cached status view. It is only rebuilt if the state changed and the cached view is older than
+     * STATUS_VIEW_MAX_AGE, so polling this is cheap. Building it neither copies the state nor scans the completed
+     * assignments: the completed size is maintained by the AssignmentManager, and a client's progress within its
+     * assignment follows from its last guessed index. The efficiency report of the work ledger is cached with it.
+     */
+    public StatusView getStatusView() {
+        StatusView view = statusView;
+        if(view != null && (view.getVersion() == stateVersion.get()
+                || System.currentTimeMillis() - view.getGeneratedAt() < STATUS_VIEW_MAX_AGE.toMillis())) {
+            return view;
+        }
+        Map<String, Long> averageHashrates = clientGuessesPerSecondAverages.getAverages();
+        final long version, completed;
+        final double expectedRemainingWork;
+        long hashrate = 0;
+        List<StatusView.ClientStatus> clientStatuses = new ArrayList<>(clients.size());
+        try(InstrumentedLock ignored = lock.acquire()) {
+            version = stateVersion.get();
+            completed = assignmentManager.getCompletedSize();
+            expectedRemainingWork = traversalPolicy.getExpectedRemainingWork(assignmentManager);
+            for(ClientInfo clientInfo : clients.values()) {
+                Long measuredHashrate = averageHashrates.get(clientInfo.clientId);
+                hashrate += measuredHashrate != null ? measuredHashrate : clientInfo.lastGuessesPerSecond;
+                ActiveAssignment assignment = assignmentManager.getAssignment(clientInfo.clientId);
+                Double completion = null;
+                if(assignment != null) {
+                    completion = clientInfo.lastStatusReport != null
+                            && clientInfo.lastGuessedIndex >= assignment.getBeginIndex()
+                            && clientInfo.lastGuessedIndex < assignment.getEndIndex()
+                            ? (double) (clientInfo.lastGuessedIndex + 1 - assignment.getBeginIndex()) / assignment.size()
+                            : 0.0;
+                }
+                clientStatuses.add(new StatusView.ClientStatus(clientInfo.clientId, clientInfo.gpuModel,
+                        clientInfo.lastGuessesPerSecond, measuredHashrate, completion, clientInfo.lastGuessedPassword,
+                        clientInfo.lastPipelineProfile));
+            }
+        }
+        clientStatuses.sort(Comparator.comparing(StatusView.ClientStatus::getClientId));
+
+        final long size = wordlistGenerator.getSize();
+        String timeRemaining = null, expectedTimeToCrack = null;
+        if(hashrate > 0) {
+            timeRemaining = formatDuration((size - completed) / hashrate);
+            expectedTimeToCrack = formatDuration((long) (expectedRemainingWork / hashrate));
+        }
+        view = new StatusView(version, System.currentTimeMillis(), size, completed,
+                (double) completed / size * 100.0, hashrate, timeRemaining, expectedTimeToCrack, passwordFound,
+                Collections.unmodifiableList(clientStatuses), workLedger.getReport());
+        statusView = view;
+        return view;
+    }
+
+    private static String formatDuration(long seconds) {
+        return String.format("%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
+    }
+
+    /**
+     * Returns the completion of [beginIndex, endIndex) in the given number of cells, see
+     * {@link AssignmentManager#getCoverageHeatmap(long, long, int)}.
+     */
+    public AssignmentManager.CoverageHeatmap getCoverageHeatmap(long beginIndex, long endIndex, int cells) {
+        try(InstrumentedLock ignored = lock.acquire()) {
+            return assignmentManager.getCoverageHeatmap(beginIndex, endIndex, cells);
+        }
     }
 
     public void updateFound(String clientId, PasswordFoundEvent event) {
@@ -238,6 +527,7 @@ public class ServerMain {
             return;
         }
         passwordFound = event.getPassword();
+        stateVersion.incrementAndGet();
         Log.info(clientId, "PASSWORD FOUND: \"" + event.getPassword() + "\"");
         System.err.println("PASSWORD FOUND: \"" + event.getPassword() + "\"");
         try {
@@ -249,93 +539,123 @@ public class ServerMain {
         }
     }
 
-    @Synchronized("lock")
     public void updateStatus(String clientId, StatusEvent event) {
-        sanityCheckAssignments(); // TODO remove
-        ClientInfo clientInfo = getClientInfoOrException(clientId);
-        ActiveAssignment activeAssignment = getActiveAssignmentOrException(clientInfo);
-        if(event.getBeginIndex() < activeAssignment.getBeginIndex()) { throw new IllegalArgumentException(
-                "BeginIndex must not be outside assignment"); }
-        if(event.getEndIndex() > activeAssignment.getEndIndex()) { throw new IllegalArgumentException(
-                "EndIndex must not be outside assignment"); }
-        if(event.getEndIndex() < event.getBeginIndex()) { throw new IllegalArgumentException(
-                "EndIndex must not be before BeginIndex"); }
-        if(event.getLastGuessedIndex() < activeAssignment.getBeginIndex()
-                || event.getLastGuessedIndex() >= activeAssignment.getEndIndex()) {
-            throw new IllegalArgumentException("LastGuessedIndex " + event.getLastGuessedIndex()
-                    + " must not be out of bounds: " + activeAssignment);
-        }
-        if(event.getLastGuessedIndex() == clientInfo.lastGuessedIndex) {
-            Log.info(clientId, "Did not make any progress since last status update");
-            clientInfo.updateLastSeen();
+        try(InstrumentedLock ignored = lock.acquire()) {
+            ClientInfo clientInfo = getClientInfoOrException(clientId);
+            ActiveAssignment activeAssignment = getActiveAssignmentOrException(clientInfo);
+            if(event.getBeginIndex() < activeAssignment.getBeginIndex()) { throw new IllegalArgumentException(
+                    "BeginIndex must not be outside assignment"); }
+            if(event.getEndIndex() > activeAssignment.getEndIndex()) { throw new IllegalArgumentException(
+                    "EndIndex must not be outside assignment"); }
+            if(event.getEndIndex() < event.getBeginIndex()) { throw new IllegalArgumentException(
+                    "EndIndex must not be before BeginIndex"); }
+            if(event.getLastGuessedIndex() < activeAssignment.getBeginIndex()
+                    || event.getLastGuessedIndex() >= activeAssignment.getEndIndex()) {
+                throw new IllegalArgumentException("LastGuessedIndex " + event.getLastGuessedIndex()
+                        + " must not be out of bounds: " + activeAssignment);
+            }
+            stateVersion.incrementAndGet();
+            if(event.getLastGuessedIndex() == clientInfo.lastGuessedIndex) {
+                Log.info(clientId, "Did not make any progress since last status update");
+                clientInfo.updateLastSeen(clock.instant());
+                clientInfo.lastGuessesPerSecond = event.getGuessesPerSecond();
+                clientInfo.gpuModel = event.getGpuModel();
+                clientInfo.lastPipelineProfile = event.getPipelineProfile();
+                return;
+            }
+            double percentProgress = ((double) event.getLastGuessedIndex() - event.getBeginIndex())
+                                        / (event.getEndIndex() - event.getBeginIndex()) * 100.0;
+            Log.trace(clientId, String.format("Update: [%,d / %,d / %,d) words (%.2f %%) @ %d kp/s, last: %s",
+                    event.getBeginIndex(), event.getLastGuessedIndex(), event.getEndIndex(),
+                    percentProgress, event.getGuessesPerSecond() / 1000,
+                    event.getLastGuessedPassword()).replace(',', '.'));
+
+            if(clientInfo.lastStatusReport != null) {
+                clientInfo.lastActualGuessesPerSecond = ((event.getLastGuessedIndex() - clientInfo.lastGuessedIndex)
+                        / Duration.between(clientInfo.lastStatusReport, event.getTimestamp()).toMillis()) * 1000;
+                clientGuessesPerSecondAverages.putValue(clientId, clientInfo.lastActualGuessesPerSecond);
+                vastStatistician.updateClientGPUAndRecalculate(clientId, event.getGpuModel());
+                throughputHistory.recordClientHashrate(clientId, event.getGpuModel(),
+                        clientInfo.lastActualGuessesPerSecond);
+                throughputHistory.recordProgress(event.getLastGuessedIndex() - clientInfo.lastGuessedIndex);
+            } else {
+                throughputHistory.recordProgress(event.getLastGuessedIndex() + 1 - event.getBeginIndex());
+            }
             clientInfo.lastGuessesPerSecond = event.getGuessesPerSecond();
+            clientInfo.lastGuessedIndex = event.getLastGuessedIndex();
+            clientInfo.lastStatusReport = event.getTimestamp();
+
+            clientInfo.lastGuessedPassword = event.getLastGuessedPassword();
             clientInfo.gpuModel = event.getGpuModel();
-            return;
-        }
-        double percentProgress = ((double) event.getLastGuessedIndex() - event.getBeginIndex())
-                                    / (event.getEndIndex() - event.getBeginIndex()) * 100.0;
-        Log.trace(clientId, String.format("Update: [%,d / %,d / %,d) words (%.2f %%) @ %d kp/s, last: %s",
-                event.getBeginIndex(), event.getLastGuessedIndex(), event.getEndIndex(),
-                percentProgress, event.getGuessesPerSecond() / 1000,
-                event.getLastGuessedPassword()).replace(',', '.'));
-
-        if(clientInfo.lastStatusReport != null) {
-            clientInfo.lastActualGuessesPerSecond = ((event.getLastGuessedIndex() - clientInfo.lastGuessedIndex)
-                    / Duration.between(clientInfo.lastStatusReport, event.getTimestamp()).toMillis()) * 1000;
-            clientGuessesPerSecondAverages.putValue(clientId, clientInfo.lastActualGuessesPerSecond);
-            vastStatistician.updateClientGPUAndRecalculate(clientId, event.getGpuModel());
+            clientInfo.lastPipelineProfile = event.getPipelineProfile();
+            clientInfo.updateLastSeen(clock.instant());
+            //markPasswordNotFound(workAssignment, clientInfo, event.getBeginIndex(), event.getLastGuessedIndex() + 1);
+            final long completedBefore = assignmentManager.getCompletedSize();
+            assignmentManager.markCompleted(event.getBeginIndex(), event.getLastGuessedIndex() + 1);
+            workLedger.reported(clientId, event.getGpuModel(), event.getGuessesPerSecond(),
+                    activeAssignment.getBeginIndex(), activeAssignment.getEndIndex(), event.getLastGuessedIndex() + 1,
+                    assignmentManager.getCompletedSize() - completedBefore, clock.millis());
+            invariantChecker.checkMutation(assignmentManager, clients, clientId,
+                    event.getBeginIndex(), event.getLastGuessedIndex() + 1);
         }
-        clientInfo.lastGuessesPerSecond = event.getGuessesPerSecond();
-        clientInfo.lastGuessedIndex = event.getLastGuessedIndex();
-        clientInfo.lastStatusReport = event.getTimestamp();
-
-        clientInfo.lastGuessedPassword = event.getLastGuessedPassword();
-        clientInfo.gpuModel = event.getGpuModel();
-        clientInfo.updateLastSeen();
-        //markPasswordNotFound(workAssignment, clientInfo, event.getBeginIndex(), event.getLastGuessedIndex() + 1);
-        assignmentManager.markCompleted(event.getBeginIndex(), event.getLastGuessedIndex() + 1);
-        sanityCheckAssignments(); // TODO remove
     }
 
-    @Synchronized("lock")
     public void updateNotFound(String clientId, PasswordNotFoundEvent event) {
-        sanityCheckAssignments(); // TODO remove
-        ClientInfo clientInfo = getClientInfoOrException(clientId);
-        ActiveAssignment activeAssignment = getActiveAssignmentOrException(clientInfo);
-
-        if(event.getBeginIndex() < activeAssignment.getBeginIndex()) { throw new IllegalArgumentException(
-                "BeginIndex must not be outside assignment " + activeAssignment); }
-        if(event.getEndIndex() > activeAssignment.getEndIndex()) { throw new IllegalArgumentException(
-                "EndIndex must not be outside assignment " + activeAssignment); }
-        if(event.getEndIndex() < event.getBeginIndex()) { throw new IllegalArgumentException(
-                "EndIndex must not be before BeginIndex"); }
-
-        Log.debug(clientId, "Password not found in range " + activeAssignment);
-        clientInfo.lastStatusReport = null;
-        clientInfo.updateLastSeen();
-        //markPasswordNotFound(workAssignment, clientInfo, event.getBeginIndex(), event.getEndIndex());
-        assignmentManager.markCompleted(event.getBeginIndex(), event.getEndIndex());
-        assignmentManager.removeAssignment(clientId);
-        sanityCheckAssignments(); // TODO remove
+        try(InstrumentedLock ignored = lock.acquire()) {
+            ClientInfo clientInfo = getClientInfoOrException(clientId);
+            ActiveAssignment activeAssignment = getActiveAssignmentOrException(clientInfo);
+
+            if(event.getBeginIndex() < activeAssignment.getBeginIndex()) { throw new IllegalArgumentException(
+                    "BeginIndex must not be outside assignment " + activeAssignment); }
+            if(event.getEndIndex() > activeAssignment.getEndIndex()) { throw new IllegalArgumentException(
+                    "EndIndex must not be outside assignment " + activeAssignment); }
+            if(event.getEndIndex() < event.getBeginIndex()) { throw new IllegalArgumentException(
+                    "EndIndex must not be before BeginIndex"); }
+
+            Log.debug(clientId, "Password not found in range " + activeAssignment);
+            stateVersion.incrementAndGet();
+            throughputHistory.recordProgress(clientInfo.lastStatusReport != null
+                    ? event.getEndIndex() - (clientInfo.lastGuessedIndex + 1)
+                    : event.getEndIndex() - event.getBeginIndex());
+            clientInfo.lastStatusReport = null;
+            clientInfo.updateLastSeen(clock.instant());
+            //markPasswordNotFound(workAssignment, clientInfo, event.getBeginIndex(), event.getEndIndex());
+            final long completedBefore = assignmentManager.getCompletedSize();
+            assignmentManager.markCompleted(event.getBeginIndex(), event.getEndIndex());
+            workLedger.reported(clientId, clientInfo.gpuModel, clientInfo.lastGuessesPerSecond,
+                    activeAssignment.getBeginIndex(), activeAssignment.getEndIndex(), event.getEndIndex(),
+                    assignmentManager.getCompletedSize() - completedBefore, clock.millis());
+            workLedger.finished(clientId, clock.millis());
+            assignmentManager.removeAssignment(clientId);
+            invariantChecker.checkMutation(assignmentManager, clients, clientId,
+                    activeAssignment.getBeginIndex(), activeAssignment.getEndIndex());
+        }
     }
 
-    @Synchronized("lock")
     public void updateError(String clientId, ErrorEvent event) {
-        sanityCheckAssignments(); // TODO remove
-        Log.warn(clientId, "Removing client, reported exception: " + event.getMessage(), event.getException());
-        ClientInfo clientInfo = getClientInfoOrException(clientId);
-        if(assignmentManager.removeAssignment(clientInfo.clientId)) {
-            Log.warn(clientId, "Removed work assignment due to exception");
+        try(InstrumentedLock ignored = lock.acquire()) {
+            Log.warn(clientId, "Removing client, reported exception: " + event.getMessage(), event.getException());
+            ClientInfo clientInfo = getClientInfoOrException(clientId);
+            ActiveAssignment removed = assignmentManager.getAssignment(clientId);
+            if(assignmentManager.removeAssignment(clientInfo.clientId)) {
+                Log.warn(clientId, "Removed work assignment due to exception");
+            }
+            workLedger.interrupted(clientId, false, clock.millis());
+            clients.remove(clientId);
+            stateVersion.incrementAndGet();
+            if(removed != null) {
+                invariantChecker.checkMutation(assignmentManager, clients, clientId,
+                        removed.getBeginIndex(), removed.getEndIndex());
+            }
         }
-        clients.remove(clientId);
-        sanityCheckAssignments(); // TODO remove
     }
 
-    @Synchronized("lock")
     private ClientInfo getClientInfoOrException(String clientId) {
-        ClientInfo clientInfo = clients.get(clientId);
-        if(clientInfo == null) { throw new ClientNotFoundException(clientId); }
-        return clientInfo;
+        try(InstrumentedLock ignored = lock.acquire()) {
+            ClientInfo clientInfo = clients.get(clientId);
+            if(clientInfo == null) { throw new ClientNotFoundException(clientId); }
+            return clientInfo;
+        }
     }
 
     public static class ClientNotFoundException extends IllegalArgumentException {
@@ -348,17 +668,19 @@ public class ServerMain {
         }
     }
 
-    @Synchronized("lock")
     private ActiveAssignment getActiveAssignmentOrException(ClientInfo clientInfo) {
-        ActiveAssignment activeAssignment = getActiveAssignment(clientInfo);
-        if(activeAssignment == null) { throw new IllegalArgumentException("Could not find assignment for client \""
-                + clientInfo.getClientId() + "\""); }
-        return activeAssignment;
+        try(InstrumentedLock ignored = lock.acquire()) {
+            ActiveAssignment activeAssignment = getActiveAssignment(clientInfo);
+            if(activeAssignment == null) { throw new IllegalArgumentException("Could not find assignment for client \""
+                    + clientInfo.getClientId() + "\""); }
+            return activeAssignment;
+        }
     }
 
-    @Synchronized("lock")
     public ActiveAssignment getActiveAssignment(ClientInfo clientInfo) {
-        return assignmentManager.getAssignment(clientInfo.clientId);
+        try(InstrumentedLock ignored = lock.acquire()) {
+            return assignmentManager.getAssignment(clientInfo.clientId);
+        }
     }
 
     /*@Synchronized("lock")
@@ -417,71 +739,58 @@ public class ServerMain {
         }
     }*/
 
-    @Synchronized("lock")
     public ActiveAssignment getOrCreateWorkAssignment(String clientID) {
-        sanityCheckAssignments(); // TODO remove
-
-        ClientInfo clientInfo = clients.get(clientID);
-        if(clientInfo != null && getActiveAssignment(clientInfo) != null) {
-            clientInfo.updateLastSeen();
-            ActiveAssignment assignment = getActiveAssignment(clientInfo);
-            Log.info(clientID, "Resumed assignment " + assignment);
-            return assignment;
-        }
-
-        final long maxIndex = wordlistGenerator.getSize();
-        long targetSize = DEFAULT_WORK_PACKAGE_SIZE;
-        if(clientInfo != null && clientGuessesPerSecondAverages.getAverage(clientID) != null) {
-            long targetHashrate = clientGuessesPerSecondAverages.getAverage(clientID);
-            targetSize = Math.min(MAX_WORK_PACKAGE_SIZE, Math.max(MIN_WORK_PACKAGE_SIZE,
-                    WORK_PACKAGE_TARGET_DURATION.getSeconds() * targetHashrate));
-            Log.info(clientID, "New work assignment targets hashrate " + targetHashrate
-                    + " p/s, targetSize: " + targetSize +", device: " + clientInfo.gpuModel);
-        }
+        try(InstrumentedLock ignored = lock.acquire()) {
+            ClientInfo clientInfo = clients.get(clientID);
+            if(clientInfo != null && getActiveAssignment(clientInfo) != null) {
+                clientInfo.updateLastSeen(clock.instant());
+                ActiveAssignment assignment = getActiveAssignment(clientInfo);
+                Log.info(clientID, "Resumed assignment " + assignment);
+                workLedger.resumed(clientID, assignment.getBeginIndex(), assignment.getEndIndex(), clock.millis());
+                return assignment;
+            }
 
-        ActiveAssignment assignment = assignmentManager.getOrCreateAssignment(clientID, targetSize);
-        if(assignment == null) {
-            Log.warn(clientID, "Rejected work request: no work assignments available!");
-            return null;
-        }
-        if(clientInfo == null) {
-            Log.debug(clientID, "Registering new client");
-            clientInfo = new ClientInfo();
-            clientInfo.clientId = clientID;
-            clients.put(clientInfo.clientId, clientInfo);
-        }
-        clientInfo.updateLastSeen();
+            final long maxIndex = wordlistGenerator.getSize();
+            long targetSize = schedulingPolicy.getDefaultWorkPackageSize();
+            if(clientInfo != null && clientGuessesPerSecondAverages.getAverage(clientID) != null) {
+                long targetHashrate = clientGuessesPerSecondAverages.getAverage(clientID);
+                targetSize = Math.min(schedulingPolicy.getMaxWorkPackageSize(),
+                        Math.max(schedulingPolicy.getMinWorkPackageSize(),
+                                schedulingPolicy.getWorkPackageTargetDuration().getSeconds() * targetHashrate));
+                Log.info(clientID, "New work assignment targets hashrate " + targetHashrate
+                        + " p/s, targetSize: " + targetSize +", device: " + clientInfo.gpuModel);
+            }
 
-        Log.debug(clientID, "Assigned work: size " + assignment.size() + ", " + assignment);
+            ActiveAssignment assignment = assignmentManager.getOrCreateAssignment(clientID, targetSize, traversalPolicy);
+            if(assignment == null) {
+                Log.warn(clientID, "Rejected work request: no work assignments available!");
+                return null;
+            }
+            if(clientInfo == null) {
+                Log.debug(clientID, "Registering new client");
+                clientInfo = new ClientInfo();
+                clientInfo.clientId = clientID;
+                clients.put(clientInfo.clientId, clientInfo);
+            }
+            clientInfo.updateLastSeen(clock.instant());
+            stateVersion.incrementAndGet();
+            workLedger.assigned(clientID, assignment.getBeginIndex(), assignment.getEndIndex(), clock.millis());
 
-        sanityCheckAssignments(); // TODO remove
-        return assignment;
-    }
+            Log.debug(clientID, "Assigned work: size " + assignment.size() + ", " + assignment);
 
-    @Synchronized("lock")
-    public Pair<AssignmentManager, Map<String, ClientInfo>> getState() {
-        Map<String, ClientInfo> clientsCopy = new HashMap<>((int) (clients.size() * 1.2));
-        for(ClientInfo clientInfo : clients.values()) {
-            clientsCopy.put(clientInfo.clientId, clientInfo.clone());
+            invariantChecker.checkMutation(assignmentManager, clients, clientID,
+                    assignment.getBeginIndex(), assignment.getEndIndex());
+            return assignment;
         }
-        return new Pair<>(assignmentManager.clone(), clientsCopy);
     }
 
-    @Synchronized("lock")
-    private void sanityCheckAssignments() {
-        assignmentManager.sanityCheckAssignments();
-        ClientInfo client = null;
-        for(Map.Entry<String, ClientInfo> entry : clients.entrySet()) {
-            client = entry.getValue();
-            if(!entry.getKey().equals(client.clientId)) {
-                Log.warn("", new IllegalStateException("Client \"" + client.clientId
-                        + "\" is mapped by different key \"" + entry.getKey() + "\""));
-            }
-        }
-        for(ActiveAssignment activeAssignment : assignmentManager.getActiveAssignments()) {
-            if(!clients.containsKey(activeAssignment.getClientId())) {
-                Log.warn("", "Could not find client for assignment " + activeAssignment);
+    public Pair<AssignmentManager, Map<String, ClientInfo>> getState() {
+        try(InstrumentedLock ignored = lock.acquire()) {
+            Map<String, ClientInfo> clientsCopy = new HashMap<>((int) (clients.size() * 1.2));
+            for(ClientInfo clientInfo : clients.values()) {
+                clientsCopy.put(clientInfo.clientId, clientInfo.clone());
             }
+            return new Pair<>(assignmentManager.clone(), clientsCopy);
         }
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jtr.distributed.core.events.PipelineProfile;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, precomputed view of the server's status, as shown by the web UI. Two views with the same version
+ * contain the same data.
+ */
+@Getter
+@AllArgsConstructor
+public class StatusView {
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class ClientStatus {
+        private final String clientId, gpuModel;
+        private final long lastGuessesPerSecond;
+        // Null if no hashrate has been measured yet
+        private final Long measuredHashrate;
+        // Fraction of the current assignment that has been searched, null if the client has no assignment
+        private final Double assignmentCompletion;
+        private final String lastGuessedPassword;
+        // Null if the client did not report one
+        private final PipelineProfile pipelineProfile;
+    }
+
+    /**
+     * Changes from the view with baseVersion to the view with version. Only valid on top of the base view: a client
+     * holding any other version has missed changes and needs a new snapshot.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Delta {
+        private final long baseVersion, version;
+        private final long completed;
+        private final double progressPercent;
+        private final long hashrate;
+        private final String timeRemaining;
+        private final String expectedTimeToCrack;
+        private final String passwordFound;
+        private final int numClients;
+        // Clients that were added or whose row changed
+        private final List<ClientStatus> changedClients;
+        private final List<String> removedClients;
+    }
+
+    private final long version;
+    private final long generatedAt;
+    private final long size, completed;
+    private final double progressPercent;
+    private final long hashrate;
+    // Null if the hashrate is unknown
+    private final String timeRemaining;
+    // Expected time until the password is found if it is in the wordlist, null if the hashrate is unknown
+    private final String expectedTimeToCrack;
+    private final String passwordFound;
+    private final List<ClientStatus> clients;
+    // Only rendered by the status page, dashboards fetch it from the API
+    @JsonIgnore
+    private final WorkLedger.Report efficiency;
+
+    /**
+     * Returns the changes from the given older view to this one.
+     */
+    public Delta diff(StatusView previous) {
+        Map<String, ClientStatus> previousClients = new HashMap<>((int) (previous.clients.size() * 1.2));
+        for(ClientStatus client : previous.clients) {
+            previousClients.put(client.clientId, client);
+        }
+        List<ClientStatus> changedClients = new ArrayList<>();
+        for(ClientStatus client : clients) {
+            if(!client.equals(previousClients.remove(client.clientId))) {
+                changedClients.add(client);
+            }
+        }
+        return new Delta(previous.version, version, completed, progressPercent, hashrate, timeRemaining, expectedTimeToCrack, passwordFound,
+                clients.size(), changedClients, new ArrayList<>(previousClients.keySet()));
+    }
+}
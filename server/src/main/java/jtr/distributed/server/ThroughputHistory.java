@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Synchronized;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Keeps the throughput history of the fleet, of each GPU model and of each client in fixed-size ring buffers, one per
+ * resolution tier. Memory use only depends on the number of series, which is capped.
+ */
+public class ThroughputHistory {
+    public static final String FLEET_SERIES = "fleet", CLIENT_SERIES_PREFIX = "client:", GPU_SERIES_PREFIX = "gpu:";
+
+    @Getter
+    @AllArgsConstructor
+    public enum Tier {
+        FIVE_SECONDS(Duration.ofSeconds(5), 720, 360),    // fleet / GPUs: 1 h, clients: 30 min
+        ONE_MINUTE(Duration.ofMinutes(1), 1440, 360),     // fleet / GPUs: 24 h, clients: 6 h
+        FIFTEEN_MINUTES(Duration.ofMinutes(15), 672, 192); // fleet / GPUs: 7 d, clients: 48 h
+
+        private final Duration resolution;
+        private final int aggregateCapacity, clientCapacity;
+
+        public static Tier forResolution(long resolutionSecs) {
+            for(Tier tier : values()) {
+                if(tier.resolution.getSeconds() == resolutionSecs) { return tier; }
+            }
+            throw new IllegalArgumentException("No tier with a resolution of " + resolutionSecs + " s");
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class History {
+        String series;
+        long resolutionSecs;
+        // Bucket start times in epoch milliseconds, and the value of each bucket in guesses per second
+        long[] timestamps;
+        double[] values;
+    }
+
+    /**
+     * A gauge series stores the mean of the samples in each bucket, a counter series their sum per second of bucket
+     * duration. Empty gauge buckets are left out of query results, empty counter buckets have a value of zero.
+     */
+    private static class TimeSeries {
+        private final boolean counter;
+        private final int[] capacities;
+        private final long[][] sums;
+        private final int[][] counts;
+        // Per tier, the number (time / resolution) of the newest bucket written to
+        private final long[] newestBuckets = new long[Tier.values().length];
+
+        TimeSeries(boolean counter, boolean client) {
+            this.counter = counter;
+            Tier[] tiers = Tier.values();
+            capacities = new int[tiers.length];
+            sums = new long[tiers.length][];
+            counts = new int[tiers.length][];
+            for(int t = 0; t < tiers.length; t++) {
+                capacities[t] = client ? tiers[t].clientCapacity : tiers[t].aggregateCapacity;
+                sums[t] = new long[capacities[t]];
+                counts[t] = new int[capacities[t]];
+            }
+        }
+
+        void add(long timestampMillis, long value) {
+            Tier[] tiers = Tier.values();
+            for(int t = 0; t < tiers.length; t++) {
+                final long bucket = timestampMillis / tiers[t].resolution.toMillis();
+                final int capacity = capacities[t];
+                if(bucket > newestBuckets[t]) {
+                    // Clear the slots that are reused for the new buckets
+                    for(long b = Math.max(newestBuckets[t] + 1, bucket - capacity + 1); b <= bucket; b++) {
+                        sums[t][(int) (b % capacity)] = 0;
+                        counts[t][(int) (b % capacity)] = 0;
+                    }
+                    newestBuckets[t] = bucket;
+                } else if(bucket <= newestBuckets[t] - capacity) {
+                    continue; // Too old for this tier
+                }
+                sums[t][(int) (bucket % capacity)] += value;
+                counts[t][(int) (bucket % capacity)]++;
+            }
+        }
+
+        History query(String name, Tier tier, long nowMillis) {
+            final int t = tier.ordinal();
+            final int capacity = capacities[t];
+            final long resolutionMillis = tier.resolution.toMillis();
+            final long lastBucket = nowMillis / resolutionMillis;
+            long[] timestamps = new long[capacity];
+            double[] values = new double[capacity];
+            int n = 0;
+            for(long b = lastBucket - capacity + 1; b <= lastBucket; b++) {
+                boolean stored = b <= newestBuckets[t] && b > newestBuckets[t] - capacity;
+                int slot = (int) (b % capacity);
+                if(counter) {
+                    values[n] = stored ? sums[t][slot] * 1000.0 / resolutionMillis : 0;
+                } else if(stored && counts[t][slot] > 0) {
+                    values[n] = (double) sums[t][slot] / counts[t][slot];
+                } else {
+                    continue;
+                }
+                timestamps[n++] = b * resolutionMillis;
+            }
+            return new History(name, tier.resolution.getSeconds(), Arrays.copyOf(timestamps, n),
+                    Arrays.copyOf(values, n));
+        }
+    }
+
+    private final TimeSeries fleet = new TimeSeries(true, false);
+    private final Map<String, TimeSeries> series;
+
+    /**
+     * @param maxSeries maximum number of per-client and per-GPU series, the least recently updated is dropped first
+     */
+    public ThroughputHistory(final int maxSeries) {
+        this.series = new LinkedHashMap<String, TimeSeries>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TimeSeries> eldest) {
+                return size() > maxSeries;
+            }
+        };
+    }
+
+    /**
+     * Records that the fleet has searched the given number of words.
+     */
+    @Synchronized
+    public void recordProgress(long words) {
+        if(words > 0) { fleet.add(System.currentTimeMillis(), words); }
+    }
+
+    @Synchronized
+    public void recordClientHashrate(String clientId, String gpuModel, long guessesPerSecond) {
+        final long now = System.currentTimeMillis();
+        series.computeIfAbsent(CLIENT_SERIES_PREFIX + clientId, s -> new TimeSeries(false, true))
+                .add(now, guessesPerSecond);
+        if(gpuModel != null) {
+            series.computeIfAbsent(GPU_SERIES_PREFIX + gpuModel, s -> new TimeSeries(false, false))
+                    .add(now, guessesPerSecond);
+        }
+    }
+
+    /**
+     * Returns the history of the given series, or null if there is no such series.
+     */
+    @Synchronized
+    public History getHistory(String name, Tier tier) {
+        TimeSeries timeSeries = FLEET_SERIES.equals(name) ? fleet : series.get(name);
+        return timeSeries == null ? null : timeSeries.query(name, tier, System.currentTimeMillis());
+    }
+
+    @Synchronized
+    public List<String> getSeriesNames() {
+        List<String> names = new ArrayList<>(series.size() + 1);
+        names.add(FLEET_SERIES);
+        names.addAll(series.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
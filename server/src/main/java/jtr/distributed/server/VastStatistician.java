@@ -8,51 +8,170 @@
 package jtr.distributed.server;
 
 import com.esotericsoftware.minlog.Log;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jtr.distributed.server.metrics.Metrics;
 import lombok.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
 
 public class VastStatistician {
     private static final String LOG_VAST = "gpu-stats";
     public static final File SAVED_STATE = new File("gpu-stats.json"),
                              SAVED_STATE_TMP = new File("gpu-stats.tmp.json");
 
+    /**
+     * Exponentially time-decayed average: a sample that is one half-life old has half the weight of a new one.
+     */
     @AllArgsConstructor
     @NoArgsConstructor
     @Data
-    public static class GpuStatistics {
-        private Map<String, Long> clientStatistics = new HashMap<>();
-        private long averageHashrate;
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class DecayingAverage implements Cloneable {
+        // Kept unrounded, rounding every step would stop it from moving once weight is large. Files written when this
+        // was a long still load.
+        private double averageHashrate;
+        private double weight;
+        private long lastUpdated;
+
+        public void add(long hashrate, long now, Duration halfLife) {
+            double decay = Math.pow(0.5, (double) Math.max(0, now - lastUpdated) / halfLife.toMillis());
+            weight = weight * decay + 1;
+            averageHashrate += (hashrate - averageHashrate) / weight;
+            lastUpdated = now;
+        }
+
+        public long roundedHashrate() {
+            return Math.round(averageHashrate);
+        }
+
+        public boolean hasSamples() {
+            return weight > 0;
+        }
+
+        @Override
+        public DecayingAverage clone() {
+            return new DecayingAverage(averageHashrate, weight, lastUpdated);
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ClientStatistics implements Cloneable {
+        private KnownGPU gpu;
+        private Integer hostId;
+        private Long hashrate;
+        private long lastUpdated;
+
+        @Override
+        public ClientStatistics clone() {
+            return new ClientStatistics(gpu, hostId, hashrate, lastUpdated);
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HostStatistics implements Cloneable {
+        private KnownGPU gpu;
+        private DecayingAverage hashrate = new DecayingAverage();
+        private long lastSeen;
+
+        @Override
+        public HostStatistics clone() {
+            return new HostStatistics(gpu, hashrate.clone(), lastSeen);
+        }
     }
 
     @AllArgsConstructor
     @NoArgsConstructor
     @Data
-    public static class PersistentStatistics {
-        Map<KnownGPU, GpuStatistics> gpuStatistics = new HashMap<>();
-        Map<String, Integer> clientIdToHostId = new HashMap<>();
-        Map<Integer, KnownGPU> hostIdGPUs = new HashMap<>();
-        Map<String, KnownGPU> clientIdGPUs = new HashMap<>();
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class PersistentStatistics implements Cloneable {
+        Map<KnownGPU, DecayingAverage> gpuStatistics = new HashMap<>();
+        Map<Integer, HostStatistics> hostStatistics = new HashMap<>();
+        Map<String, ClientStatistics> clientStatistics = new HashMap<>();
+
+        @Override
+        public PersistentStatistics clone() {
+            PersistentStatistics clone = new PersistentStatistics();
+            for(Map.Entry<KnownGPU, DecayingAverage> entry : gpuStatistics.entrySet()) {
+                clone.gpuStatistics.put(entry.getKey(), entry.getValue().clone());
+            }
+            for(Map.Entry<Integer, HostStatistics> entry : hostStatistics.entrySet()) {
+                clone.hostStatistics.put(entry.getKey(), entry.getValue().clone());
+            }
+            for(Map.Entry<String, ClientStatistics> entry : clientStatistics.entrySet()) {
+                clone.clientStatistics.put(entry.getKey(), entry.getValue().clone());
+            }
+            return clone;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class HashrateQuery {
+        String clientId;
+        Integer hostId;
+        String gpuName;
+        Double totalFlops;
+        int numGpus = 1;
+        Double pricePerHour;
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class HashrateEstimate {
+        String clientId;
+        long estimatedHashrate, measuredHashrate;
+        // Only set if the query contained a price
+        Double guessesPerDollar;
     }
 
     private final PersistentStatistics state;
     private final AverageMap<String> clientAveragesMap;
+    private final Duration clientIdleEviction, halfLife;
+    private final int maxEntries;
+    // Maps each run of digits in a client ID (e.g. the vast.ai instance ID) to the client IDs containing it
+    private final Map<String, Set<String>> clientIdsByToken = new HashMap<>();
     private final Set<String> unknownGpusWarnedAbout = new HashSet<String>();
-    private final Set<String> unknownHostsWarnedAbout = new HashSet<String>();
+    private final Set<String> substringMatchesWarnedAbout = new HashSet<String>();
     private final Object lock = new Object();
+    // Set whenever state is modified, cleared by the persistence thread once it has taken a snapshot
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
     private final ObjectMapper mapper = new ObjectMapper()
-            .enable(SerializationFeature.INDENT_OUTPUT)
             .registerModule(new JavaTimeModule());
 
-    public VastStatistician(AverageMap<String> clientAveragesMap) {
+    private final Metrics metrics;
+    // Null if not persistent
+    private final Thread persistenceThread;
+
+    /**
+     * Resumes from SAVED_STATE and saves to it every persistInterval if something changed. Call close() on shutdown to
+     * save the last changes.
+     *
+     * @param persistent False to start empty and never save, e.g. for a simulation.
+     */
+    public VastStatistician(AverageMap<String> clientAveragesMap, Metrics metrics, Duration persistInterval,
+                            Duration clientIdleEviction, Duration halfLife, int maxEntries, boolean persistent) {
         this.clientAveragesMap = clientAveragesMap;
+        this.metrics = metrics;
+        this.clientIdleEviction = clientIdleEviction;
+        this.halfLife = halfLife;
+        this.maxEntries = maxEntries;
         PersistentStatistics initialState = null;
-        if(SAVED_STATE.isFile()) {
+        if(persistent && SAVED_STATE.isFile()) {
             try {
                 initialState = mapper.readValue(SAVED_STATE, PersistentStatistics.class);
             } catch (IOException e) {
@@ -60,47 +179,74 @@ public class VastStatistician {
             }
         }
         if(initialState == null) { initialState = new PersistentStatistics(); }
+        final long now = System.currentTimeMillis();
+        for(DecayingAverage statistics : initialState.gpuStatistics.values()) {
+            // Files written before decaying averages were introduced only contain the plain average
+            if(!statistics.hasSamples() && statistics.averageHashrate > 0) {
+                statistics.weight = 1;
+                statistics.lastUpdated = now;
+            }
+        }
         this.state = initialState;
+        for(String clientId : state.clientStatistics.keySet()) {
+            indexClientId(clientId);
+        }
 
-        Thread updaterThread = new Thread(new Runnable() {
-            @Override
-            @SneakyThrows(InterruptedException.class)
-            public void run() {
-                while (true) {
-                    synchronized (lock) {
-                        lock.wait();
-                        // Step one: sort new (and refresh existing) client-provided hashrates into GPU buckets
-                        for(Map.Entry<String, Long> entry : clientAveragesMap.getAverages().entrySet()) {
-                            final String clientId = entry.getKey();
-                            final Long hashrate = entry.getValue();
-                            if(clientId == null || hashrate == null) { continue; }
-                            KnownGPU gpu = state.clientIdGPUs.get(clientId);
-                            if(gpu == null) { continue; }
-                            GpuStatistics statistics =
-                                    state.gpuStatistics.computeIfAbsent(gpu, g -> new GpuStatistics(
-                                            new HashMap<>(), entry.getValue()
-                                    ));
-                            statistics.clientStatistics.put(clientId, hashrate);
-                        }
-                        // step two: calculate average for each GPU bucket
-                        for(GpuStatistics statistics : state.gpuStatistics.values()) {
-                            statistics.averageHashrate = (long) statistics.clientStatistics.values().stream()
-                                    .mapToLong(l -> l).average().getAsDouble();
-                        }
-                        try {
-                            mapper.writeValue(SAVED_STATE_TMP, state);
-                            if(SAVED_STATE.exists() && !SAVED_STATE.delete()) { throw new IOException("Deleting old state failed"); }
-                            if(!SAVED_STATE_TMP.renameTo(SAVED_STATE)) { throw new IOException("Rename failed"); }
-                        } catch (IOException e) {
-                            Log.warn(LOG_VAST, "Could not save state!", e);
-                        }
-                    }
+        if(!persistent) {
+            persistenceThread = null;
+            return;
+        }
+        persistenceThread = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(persistInterval.toMillis());
+                } catch (InterruptedException e) {
+                    // Closed, close() saves the last changes
+                    return;
                 }
+                persist();
             }
         });
-        updaterThread.setDaemon(true);
-        updaterThread.setName("VastStatistician");
-        updaterThread.start();
+        persistenceThread.setDaemon(true);
+        persistenceThread.setName("VastStatistician");
+        persistenceThread.start();
+    }
+
+    /**
+     * Saves the state if it changed since it was last saved.
+     */
+    private void persist() {
+        // Only eviction and the (cheap) copy happen under the lock, serialization and disk I/O don't
+        PersistentStatistics snapshot;
+        synchronized (lock) {
+            evict(System.currentTimeMillis());
+            if(!dirty.getAndSet(false)) { return; }
+            snapshot = state.clone();
+        }
+        try {
+            final long begin = System.nanoTime();
+            mapper.writeValue(SAVED_STATE_TMP, snapshot);
+            if(SAVED_STATE.exists() && !SAVED_STATE.delete()) { throw new IOException("Deleting old state failed"); }
+            if(!SAVED_STATE_TMP.renameTo(SAVED_STATE)) { throw new IOException("Rename failed"); }
+            metrics.recordPersistence(SAVED_STATE.getName(), System.nanoTime() - begin, SAVED_STATE.length());
+        } catch (IOException e) {
+            Log.warn(LOG_VAST, "Could not save state!", e);
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Stops the persistence thread and saves the changes made since it last ran.
+     */
+    public void close() {
+        if(persistenceThread == null) { return; }
+        persistenceThread.interrupt();
+        try {
+            persistenceThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        persist();
     }
 
     @Synchronized("lock")
@@ -118,59 +264,80 @@ public class VastStatistician {
             }
             return;
         }
-        Integer hostId = getHostId(clientId);
-        if(hostId != null) {
-            state.hostIdGPUs.put(hostId, gpu);
+        final long now = System.currentTimeMillis();
+        ClientStatistics client = state.clientStatistics.get(clientId);
+        if(client == null) {
+            client = new ClientStatistics();
+            state.clientStatistics.put(clientId, client);
+            indexClientId(clientId);
+        }
+        client.gpu = gpu;
+        client.lastUpdated = now;
+        // Without persistence, nothing else evicts
+        if(state.clientStatistics.size() > maxEntries) { evict(now); }
+        // Only the aggregates of the reporting client's GPU and host need to be updated
+        Long hashrate = clientAveragesMap.getAverage(clientId);
+        if(hashrate != null) {
+            client.hashrate = hashrate;
+            state.gpuStatistics.computeIfAbsent(gpu, g -> new DecayingAverage()).add(hashrate, now, halfLife);
+        }
+        if(client.hostId != null) {
+            HostStatistics host = state.hostStatistics.computeIfAbsent(client.hostId, h -> new HostStatistics());
+            host.gpu = gpu;
+            host.lastSeen = now;
+            if(hashrate != null) { host.hashrate.add(hashrate, now, halfLife); }
+            if(state.hostStatistics.size() > maxEntries) { evict(now); }
         }
-        state.clientIdGPUs.put(clientId, gpu);
-        lock.notifyAll();
+        dirty.set(true);
     }
 
     @Synchronized("lock")
     public long estimateGpuHashrate(String clientId, Integer hostId, String vastGpuName, Long tflops) {
-        Map<String, Long> clientAverages = clientAveragesMap.getAverages();
+        final long now = System.currentTimeMillis();
         KnownGPU gpu = null;
+        long clientHashrateSum = 0, clientHashrateCount = 0;
         if(clientId != null && clientId.trim().length() > 0) {
-            for(Map.Entry<String, KnownGPU> clientIdGPUMapping : state.clientIdGPUs.entrySet()) {
-                if(clientIdGPUMapping.getKey().contains(clientId)) {
-                    if(hostId != null) {
-                        state.clientIdToHostId.put(clientIdGPUMapping.getKey(), hostId);
-                    }
-                    gpu = clientIdGPUMapping.getValue();
-                    if(hostId != null && gpu != null) {
-                        state.hostIdGPUs.put(hostId, gpu);
+            for(ClientStatistics client : findClients(clientId)) {
+                if(hostId != null && !hostId.equals(client.hostId)) {
+                    client.hostId = hostId;
+                    dirty.set(true);
+                }
+                gpu = client.gpu;
+                if(hostId != null && gpu != null) {
+                    HostStatistics host = state.hostStatistics.computeIfAbsent(hostId, h -> new HostStatistics());
+                    if(host.gpu != gpu) {
+                        host.gpu = gpu;
+                        dirty.set(true);
                     }
+                    host.lastSeen = now;
+                    if(state.hostStatistics.size() > maxEntries) { evict(now); }
+                }
+                if(client.hashrate != null) {
+                    clientHashrateSum += client.hashrate;
+                    clientHashrateCount++;
                 }
             }
         }
-        if(gpu == null && hostId != null) {
-            Log.trace(LOG_VAST, "Got Host " + hostId + " GPU hashrate from good stats :)");
-            gpu = state.hostIdGPUs.get(hostId);
+        if(clientHashrateCount > 0) {
+            Log.trace(LOG_VAST, "Got Client ID " + clientId + " GPU hashrate from good stats :)");
+            return clientHashrateSum / clientHashrateCount;
+        }
+        HostStatistics host = hostId == null ? null : state.hostStatistics.get(hostId);
+        if(host != null) {
+            if(host.hashrate.hasSamples()) {
+                Log.trace(LOG_VAST, "Got Host " + hostId + " GPU hashrate from good stats :)");
+                return host.hashrate.roundedHashrate();
+            }
+            if(gpu == null) { gpu = host.gpu; }
         }
         if(gpu == null && vastGpuName != null && vastGpuName.trim().length() > 0) {
             gpu = KnownGPU.forName(vastGpuName);
         }
         if(gpu != null) {
-            GpuStatistics gpuStatistics = state.gpuStatistics.get(gpu);
-            if(gpuStatistics != null) {
-                Log.trace(LOG_VAST, "Got Client ID " + clientId + " GPU hashrate from good stats :)");
-                List<Long> averages = new ArrayList<>(gpuStatistics.clientStatistics.size());
-                if(clientId != null) {
-                    // Attempt to get client-specific hashrate
-                    return (long) gpuStatistics.clientStatistics.entrySet().stream()
-                            .filter(e -> e.getKey().contains(clientId))
-                            .mapToLong(Map.Entry::getValue)
-                            .average().orElse(gpuStatistics.averageHashrate);
-                } else if(hostId != null) {
-                    // Attempt to get host-specific hashrate
-                    return (long) gpuStatistics.clientStatistics.entrySet().stream()
-                            .filter(e -> hostId.equals(getHostId(e.getKey())))
-                            .mapToLong(Map.Entry::getValue)
-                            .average().orElse(gpuStatistics.averageHashrate);
-                } else {
-                    // Just take the average value for this GPU
-                    return gpuStatistics.averageHashrate;
-                }
+            DecayingAverage gpuStatistics = state.gpuStatistics.get(gpu);
+            if(gpuStatistics != null && gpuStatistics.hasSamples()) {
+                // Just take the average value for this GPU
+                return gpuStatistics.roundedHashrate();
             }
             if(gpu.defaultHashrate != null) {
                 Log.trace(LOG_VAST, "Got Client ID " + clientId + " GPU hashrate from fallback");
@@ -184,24 +351,137 @@ public class VastStatistician {
         return tflops == null ? 0 : tflops * 80000;
     }
 
+    /**
+     * Answers all queries against the same statistics snapshot, taking the lock only once.
+     */
+    public List<HashrateEstimate> estimateGpuHashrates(List<HashrateQuery> queries) {
+        // Measured hashrates, summed up per exact client ID and per digit run (i.e. vast.ai instance ID)
+        Map<String, Long> measuredByClientId = clientAveragesMap.getAverages();
+        Map<String, Long> measuredByToken = new HashMap<>();
+        for(Map.Entry<String, Long> entry : measuredByClientId.entrySet()) {
+            for(String token : digitRuns(entry.getKey())) {
+                measuredByToken.merge(token, entry.getValue(), Long::sum);
+            }
+        }
+        List<HashrateEstimate> estimates = new ArrayList<>(queries.size());
+        synchronized (lock) {
+            for(HashrateQuery query : queries) {
+                final int numGpus = Math.max(1, query.numGpus);
+                Long tflopsPerGpu = query.totalFlops == null ? null : Math.round(query.totalFlops / numGpus);
+                long estimated = estimateGpuHashrate(query.clientId, query.hostId, query.gpuName, tflopsPerGpu)
+                        * numGpus;
+                Long measured = null;
+                if(query.clientId != null) {
+                    measured = measuredByClientId.get(query.clientId);
+                    if(measured == null) { measured = measuredByToken.get(query.clientId); }
+                }
+                Double guessesPerDollar = query.pricePerHour == null || query.pricePerHour <= 0 ? null
+                        : estimated * 3600 / query.pricePerHour;
+                estimates.add(new HashrateEstimate(query.clientId, estimated, measured == null ? 0 : measured,
+                        guessesPerDollar));
+            }
+        }
+        return estimates;
+    }
+
+    /**
+     * Finds the clients whose ID is, or contains the given ID as a whole run of digits (e.g. "12345" matches
+     * "C.12345-gpu1", as used by the autobidder to look up clients by their vast.ai instance ID). If there are none,
+     * falls back to the clients whose ID contains the given ID anywhere, which is how clients used to be looked up.
+     */
     @Synchronized("lock")
-    private Integer getHostId(String clientId) {
-        for(Map.Entry<String, Integer> mapping : state.clientIdToHostId.entrySet()) {
-            if(mapping.getKey().contains(clientId)) {
-                unknownHostsWarnedAbout.remove(clientId);
-                return mapping.getValue();
+    private List<ClientStatistics> findClients(String clientId) {
+        ClientStatistics exactMatch = state.clientStatistics.get(clientId);
+        if(exactMatch != null) { return Collections.singletonList(exactMatch); }
+        Set<String> clientIds = clientIdsByToken.get(clientId);
+        if(clientIds != null) {
+            List<ClientStatistics> result = new ArrayList<>(clientIds.size());
+            for(String id : clientIds) {
+                result.add(state.clientStatistics.get(id));
             }
+            return result;
         }
-        if(!unknownHostsWarnedAbout.contains(clientId)) {
-            Log.trace(LOG_VAST, "Could not map client ID " + clientId /*+ " (sanitized: " + clientIdSanitized + ")"*/
-                    + " to a host");
-            unknownHostsWarnedAbout.add(clientId);
+        // Scans at most maxEntries clients, and only for IDs that are not a digit run of any client
+        List<ClientStatistics> result = new ArrayList<>();
+        for(Map.Entry<String, ClientStatistics> entry : state.clientStatistics.entrySet()) {
+            if(entry.getKey().contains(clientId)) { result.add(entry.getValue()); }
+        }
+        if(!result.isEmpty() && substringMatchesWarnedAbout.add(clientId)) {
+            Log.warn(LOG_VAST, "Client ID " + clientId + " is only part of a digit run or name of " + result.size()
+                    + " client(s), matching them by substring");
+        }
+        return result;
+    }
+
+    @Synchronized("lock")
+    private void evict(long now) {
+        final long minimumLastUpdated = now - clientIdleEviction.toMillis();
+        Iterator<Map.Entry<String, ClientStatistics>> iterator = state.clientStatistics.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, ClientStatistics> entry = iterator.next();
+            if(entry.getValue().lastUpdated < minimumLastUpdated) {
+                iterator.remove();
+                unindexClientId(entry.getKey());
+                dirty.set(true);
+            }
+        }
+        for(String clientId : leastRecent(state.clientStatistics, c -> c.lastUpdated)) {
+            state.clientStatistics.remove(clientId);
+            unindexClientId(clientId);
+        }
+        for(Integer hostId : leastRecent(state.hostStatistics, h -> h.lastSeen)) {
+            state.hostStatistics.remove(hostId);
+        }
+    }
+
+    /**
+     * Returns the keys of the least recently used entries that exceed the maximum number of entries.
+     */
+    private <K, V> List<K> leastRecent(Map<K, V> map, ToLongFunction<V> lastUsed) {
+        if(map.size() <= maxEntries) { return Collections.emptyList(); }
+        List<Map.Entry<K, V>> entries = new ArrayList<>(map.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> lastUsed.applyAsLong(entry.getValue())));
+        List<K> result = new ArrayList<>(map.size() - maxEntries);
+        for(Map.Entry<K, V> entry : entries.subList(0, map.size() - maxEntries)) {
+            result.add(entry.getKey());
+        }
+        Log.debug(LOG_VAST, "Evicting " + result.size() + " entries, maximum of " + maxEntries + " exceeded");
+        dirty.set(true);
+        return result;
+    }
+
+    private void indexClientId(String clientId) {
+        for(String token : digitRuns(clientId)) {
+            clientIdsByToken.computeIfAbsent(token, t -> new HashSet<>()).add(clientId);
+        }
+    }
+
+    private void unindexClientId(String clientId) {
+        for(String token : digitRuns(clientId)) {
+            Set<String> clientIds = clientIdsByToken.get(token);
+            if(clientIds != null && clientIds.remove(clientId) && clientIds.isEmpty()) {
+                clientIdsByToken.remove(token);
+            }
+        }
+    }
+
+    private static List<String> digitRuns(String s) {
+        List<String> runs = new ArrayList<>(2);
+        int runBegin = -1;
+        for(int i = 0; i <= s.length(); i++) {
+            boolean isDigit = i < s.length() && Character.isDigit(s.charAt(i));
+            if(isDigit && runBegin < 0) {
+                runBegin = i;
+            } else if(!isDigit && runBegin >= 0) {
+                runs.add(s.substring(runBegin, i));
+                runBegin = -1;
+            }
         }
-        return null;
+        return runs;
     }
 
     @Getter
-    enum KnownGPU {
+    public enum KnownGPU {
         // Pascal: 10**, Titan Xp
         // Volta: V100
         // Turing: RTX 20**, Titan RTX
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Synchronized;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Accounts for what became of every index handed out to a client. Each one ends up as:
+ * - completed: reported as searched, and searched for the first time
+ * - redone: reported as searched, but already completed before, e.g. by a client the range was handed out to again
+ * - lost: searched, but never reported, because the client failed or timed out after its last status. This is
+ *   estimated from the client's hashrate and the time since its last status.
+ * - abandoned: not searched before the assignment was removed, so it was handed out again
+ * Besides, it measures how long each client is idle between the end of one assignment and the first progress on the
+ * next one (requesting it, starting John), net of the time it spent searching.
+ *
+ * The accounts are kept per client and per GPU model since the server started, so that hosts which waste work stand
+ * out and the work package size can be tuned. Words are booked as they are reported, an assignment itself when it
+ * ends, by which time the client has usually reported its GPU model. Times are in the milliseconds of the server's
+ * clock.
+ */
+public class WorkLedger {
+    private static final String UNKNOWN_GPU = "Unknown";
+
+    @Data
+    @NoArgsConstructor
+    public static class Account {
+        long assigned, completed, redone, lost, abandoned;
+        // Time spent searching, estimated from the reported hashrates, and time spent idle between assignments
+        long searchMillis, idleMillis;
+        int assignments, interruptions;
+
+        /**
+         * Returns the fraction of the searched words that were not searched in vain, 1 if nothing was searched.
+         */
+        public double getEfficiency() {
+            long searched = completed + redone + lost;
+            return searched > 0 ? (double) completed / searched : 1;
+        }
+
+        /**
+         * Returns the fraction of the time that was spent idle between assignments rather than searching.
+         */
+        public double getIdleFraction() {
+            long total = searchMillis + idleMillis;
+            return total > 0 ? (double) idleMillis / total : 0;
+        }
+
+        private Account copy() {
+            Account copy = new Account();
+            copy.assigned = assigned;
+            copy.completed = completed;
+            copy.redone = redone;
+            copy.lost = lost;
+            copy.abandoned = abandoned;
+            copy.searchMillis = searchMillis;
+            copy.idleMillis = idleMillis;
+            copy.assignments = assignments;
+            copy.interruptions = interruptions;
+            return copy;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Report {
+        private final Account total;
+        private final Map<String, Account> clients, gpuModels;
+    }
+
+    /**
+     * What is known about a client's current assignment.
+     */
+    private static class ClientState {
+        String gpuModel = null;
+        long guessesPerSecond = 0;
+        // The open assignment, or beginIndex == endIndex if there is none. Everything before reportedUntil was
+        // reported, lastReportAt is -1 until the first status with progress of the current run.
+        long beginIndex, endIndex, reportedUntil, lastReportAt = -1;
+        // How far the current run of the assignment got. Below reportedUntil if the client searches the assignment
+        // again after a restart.
+        long runReportedUntil;
+        // Start of the current idle time, or -1 if the client is searching or its idle time is not counted
+        long idleSince = -1;
+
+        boolean hasAssignment() {
+            return beginIndex < endIndex;
+        }
+    }
+
+    private final Account total = new Account();
+    private final Map<String, ClientState> states = new HashMap<>();
+    private final Map<String, Account> clients, gpuModels;
+
+    /**
+     * @param maxAccounts maximum number of per-client and per-GPU accounts each, the least recently updated is dropped
+     *                    first
+     */
+    public WorkLedger(final int maxAccounts) {
+        this.clients = lruMap(maxAccounts);
+        this.gpuModels = lruMap(maxAccounts);
+    }
+
+    private static Map<String, Account> lruMap(final int maxEntries) {
+        return new LinkedHashMap<String, Account>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Account> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Calls the given update on the total and on the accounts of the given client and its GPU model.
+     */
+    private void book(String clientId, ClientState state, Consumer<Account> update) {
+        update.accept(total);
+        update.accept(clients.computeIfAbsent(clientId, c -> new Account()));
+        update.accept(gpuModels.computeIfAbsent(state.gpuModel != null ? state.gpuModel : UNKNOWN_GPU,
+                m -> new Account()));
+    }
+
+    /**
+     * Records that [beginIndex, endIndex) was handed out to the client. An assignment it still had is interrupted.
+     */
+    @Synchronized
+    public void assigned(String clientId, long beginIndex, long endIndex, long now) {
+        ClientState state = states.computeIfAbsent(clientId, c -> new ClientState());
+        if(state.hasAssignment()) { interrupt(clientId, state, now); }
+        state.beginIndex = beginIndex;
+        state.endIndex = endIndex;
+        state.reportedUntil = state.runReportedUntil = beginIndex;
+        state.lastReportAt = -1;
+        if(state.idleSince < 0) { state.idleSince = now; }
+    }
+
+    /**
+     * Records that the client got its assignment [beginIndex, endIndex) again, e.g. after it restarted, and searches
+     * it from the beginning. What it reported before is booked as redone when it reports it again.
+     */
+    @Synchronized
+    public void resumed(String clientId, long beginIndex, long endIndex, long now) {
+        ClientState state = states.computeIfAbsent(clientId, c -> new ClientState());
+        if(state.beginIndex != beginIndex || state.endIndex != endIndex) {
+            // Handed out before the server started, what was reported before is unknown
+            state.beginIndex = beginIndex;
+            state.endIndex = endIndex;
+            state.reportedUntil = beginIndex;
+        }
+        state.runReportedUntil = beginIndex;
+        state.lastReportAt = -1;
+        state.idleSince = now;
+    }
+
+    /**
+     * Records that the client searched its assignment [beginIndex, endIndex) up to reportedUntil, which completed
+     * newlyCompleted indices that were not completed before.
+     */
+    @Synchronized
+    public void reported(String clientId, String gpuModel, long guessesPerSecond, long beginIndex, long endIndex,
+                         long reportedUntil, long newlyCompleted, long now) {
+        ClientState state = states.computeIfAbsent(clientId, c -> new ClientState());
+        if(gpuModel != null) { state.gpuModel = gpuModel; }
+        if(guessesPerSecond > 0) { state.guessesPerSecond = guessesPerSecond; }
+        if(state.beginIndex != beginIndex || state.endIndex != endIndex) {
+            // Handed out before the server started, what was reported before is unknown
+            state.beginIndex = beginIndex;
+            state.endIndex = endIndex;
+            state.reportedUntil = state.runReportedUntil = reportedUntil;
+            state.lastReportAt = now;
+            state.idleSince = -1;
+            return;
+        }
+        // Words below reportedUntil were completed before, so they are booked as redone
+        final long words = reportedUntil - Math.max(state.runReportedUntil, beginIndex);
+        if(words <= 0) { return; }
+        final long completed = Math.min(words, newlyCompleted);
+        final long searchMillis = state.guessesPerSecond > 0 ? words * 1000 / state.guessesPerSecond : 0;
+        final long idleMillis = state.lastReportAt < 0 && state.idleSince >= 0
+                ? Math.max(0, now - state.idleSince - searchMillis) : 0;
+        book(clientId, state, account -> {
+            account.completed += completed;
+            account.redone += words - completed;
+            account.searchMillis += searchMillis;
+            account.idleMillis += idleMillis;
+        });
+        state.reportedUntil = Math.max(state.reportedUntil, reportedUntil);
+        state.runReportedUntil = reportedUntil;
+        state.lastReportAt = now;
+        state.idleSince = -1;
+    }
+
+    /**
+     * Records that the client finished its assignment, after reporting it. Its idle time starts now.
+     */
+    @Synchronized
+    public void finished(String clientId, long now) {
+        ClientState state = states.get(clientId);
+        if(state == null || !state.hasAssignment()) { return; }
+        final long size = state.endIndex - state.beginIndex;
+        final long abandoned = state.endIndex - Math.max(state.reportedUntil, state.beginIndex);
+        book(clientId, state, account -> {
+            account.assigned += size;
+            account.assignments++;
+            account.abandoned += abandoned;
+        });
+        state.beginIndex = state.endIndex = state.reportedUntil = state.runReportedUntil = 0;
+        state.idleSince = now;
+    }
+
+    /**
+     * Records that the client's assignment was removed before it was finished, because the client failed at the given
+     * time or timed out. Everything it searched after its last status is lost. A client that failed restarts, so its
+     * idle time starts when it failed, while a client that timed out is forgotten.
+     */
+    @Synchronized
+    public void interrupted(String clientId, boolean timedOut, long failedAt) {
+        ClientState state = states.get(clientId);
+        if(state == null) { return; }
+        if(state.hasAssignment()) { interrupt(clientId, state, failedAt); }
+        if(timedOut) {
+            states.remove(clientId);
+        } else {
+            state.idleSince = failedAt;
+        }
+    }
+
+    private void interrupt(String clientId, ClientState state, long failedAt) {
+        final long remaining = Math.max(0, state.endIndex - Math.max(state.reportedUntil, state.beginIndex));
+        final long lost = state.lastReportAt >= 0 && state.guessesPerSecond > 0
+                ? Math.min(remaining, Math.max(0, failedAt - state.lastReportAt) * state.guessesPerSecond / 1000) : 0;
+        final long lostMillis = state.guessesPerSecond > 0 ? lost * 1000 / state.guessesPerSecond : 0;
+        final long size = state.endIndex - state.beginIndex;
+        book(clientId, state, account -> {
+            account.assigned += size;
+            account.assignments++;
+            account.lost += lost;
+            account.abandoned += remaining - lost;
+            account.searchMillis += lostMillis;
+            account.interruptions++;
+        });
+        state.beginIndex = state.endIndex = state.reportedUntil = state.runReportedUntil = 0;
+        state.lastReportAt = -1;
+        state.idleSince = -1;
+    }
+
+    /**
+     * Returns copies of all accounts, the clients and GPU models sorted by name.
+     */
+    @Synchronized
+    public Report getReport() {
+        return new Report(total.copy(), copy(clients), copy(gpuModels));
+    }
+
+    private static Map<String, Account> copy(Map<String, Account> accounts) {
+        Map<String, Account> copy = new TreeMap<>();
+        for(Map.Entry<String, Account> entry : accounts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+}
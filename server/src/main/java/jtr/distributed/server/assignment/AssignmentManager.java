@@ -8,6 +8,7 @@
 package jtr.distributed.server.assignment;
 
 import com.esotericsoftware.minlog.Log;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 
@@ -19,12 +20,29 @@ public class AssignmentManager implements Cloneable {
     private final TreeSet<CompletedAssignment> completedAssignments;
     private final TreeSet<ActiveAssignment> activeAssignments;
     private final Map<String, ActiveAssignment> activeAssignmentsByClientId;
+    // Sum of the sizes of all completed assignments, maintained by markCompleted
+    @JsonIgnore
+    private long completedSize;
+    // Coverage of the keyspace by the completed assignments, maintained by markCompleted
+    @Getter(AccessLevel.NONE)
+    private final CoverageIndex coverageIndex;
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class CoverageHeatmap {
+        long beginIndex, endIndex, completed;
+        // Cell i covers [boundaries[i], boundaries[i + 1]), coverage[i] is the fraction of it that is completed
+        long[] boundaries;
+        double[] coverage;
+    }
 
     public AssignmentManager(long size) {
         this.size = size;
         this.completedAssignments = new TreeSet<>();
         this.activeAssignments = new TreeSet<>();
         this.activeAssignmentsByClientId = new HashMap<>();
+        this.coverageIndex = new CoverageIndex(size);
     }
 
     public AssignmentManager(@JsonProperty("size") long size,
@@ -35,6 +53,20 @@ public class AssignmentManager implements Cloneable {
         this.completedAssignments = completedAssignments;
         this.activeAssignments = activeAssignments;
         this.activeAssignmentsByClientId = activeAssignmentsByClientId;
+        this.coverageIndex = new CoverageIndex(size);
+        for(CompletedAssignment assignment : completedAssignments) {
+            this.completedSize += assignment.size();
+            this.coverageIndex.add(assignment.getBeginIndex(), assignment.getEndIndex());
+        }
+    }
+
+    private AssignmentManager(AssignmentManager other) {
+        this.size = other.size;
+        this.completedAssignments = new TreeSet<>();
+        this.activeAssignments = new TreeSet<>();
+        this.activeAssignmentsByClientId = new HashMap<>();
+        this.completedSize = other.completedSize;
+        this.coverageIndex = other.coverageIndex.clone();
     }
 
     public void markCompleted(long beginIndex, long endIndex) {
@@ -45,8 +77,65 @@ public class AssignmentManager implements Cloneable {
             assignment.setEndIndex(Math.max(assignment.getEndIndex(), other.getEndIndex()));
             Log.trace(" -> Expanded to: " + assignment + " due to other assignment " + other);
             completedAssignments.remove(other);
+            completedSize -= other.size();
+            coverageIndex.remove(other.getBeginIndex(), other.getEndIndex());
         }
         completedAssignments.add(assignment);
+        completedSize += assignment.size();
+        coverageIndex.add(assignment.getBeginIndex(), assignment.getEndIndex());
+    }
+
+    /**
+     * Returns the number of completed indices in [beginIndex, endIndex). Runs in O(log n) plus the number of completed
+     * assignments that overlap the coverage index blocks containing beginIndex and endIndex.
+     */
+    public long getCompletedSize(long beginIndex, long endIndex) {
+        if(beginIndex > endIndex) { throw new IllegalArgumentException("Begin index " + beginIndex
+                + " is after end index " + endIndex); }
+        return getCompletedSizeBefore(endIndex) - getCompletedSizeBefore(beginIndex);
+    }
+
+    private long getCompletedSizeBefore(long index) {
+        index = Math.max(0, Math.min(size, index));
+        final int block = coverageIndex.blockOf(index);
+        final long blockBegin = coverageIndex.blockBegin(block);
+        long completed = coverageIndex.coveredBefore(block);
+        // Add the completed part of [blockBegin, index)
+        if(blockBegin < index) {
+            CompletedAssignment previous = completedAssignments.lower(new CompletedAssignment(blockBegin, blockBegin));
+            for(CompletedAssignment assignment : previous == null ? completedAssignments
+                    : completedAssignments.tailSet(previous, true)) {
+                if(assignment.getBeginIndex() >= index) { break; }
+                long overlapBegin = Math.max(blockBegin, assignment.getBeginIndex());
+                long overlapEnd = Math.min(index, assignment.getEndIndex());
+                if(overlapBegin < overlapEnd) { completed += overlapEnd - overlapBegin; }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Splits [beginIndex, endIndex) into the given number of equally sized cells and returns how much of each is
+     * completed.
+     */
+    public CoverageHeatmap getCoverageHeatmap(long beginIndex, long endIndex, int cells) {
+        if(beginIndex < 0 || endIndex > size || beginIndex >= endIndex) { throw new IllegalArgumentException(
+                "Invalid range [" + beginIndex + ", " + endIndex + ")"); }
+        if(cells <= 0) { throw new IllegalArgumentException("Invalid number of cells " + cells); }
+        final long rangeSize = endIndex - beginIndex;
+        cells = (int) Math.min(cells, rangeSize);
+        long[] boundaries = new long[cells + 1];
+        double[] coverage = new double[cells];
+        long previousCompleted = getCompletedSizeBefore(beginIndex);
+        boundaries[0] = beginIndex;
+        for(int i = 1; i <= cells; i++) {
+            // Equal to beginIndex + rangeSize * i / cells, without overflowing
+            boundaries[i] = beginIndex + rangeSize / cells * i + rangeSize % cells * i / cells;
+            long completed = getCompletedSizeBefore(boundaries[i]);
+            coverage[i - 1] = (double) (completed - previousCompleted) / (boundaries[i] - boundaries[i - 1]);
+            previousCompleted = completed;
+        }
+        return new CoverageHeatmap(beginIndex, endIndex, getCompletedSize(beginIndex, endIndex), boundaries, coverage);
     }
 
     public ActiveAssignment getAssignment(String clientId) {
@@ -81,6 +170,11 @@ public class AssignmentManager implements Cloneable {
     }
 
     public ActiveAssignment getOrCreateAssignment(@NonNull String clientId, long maxSize) {
+        return getOrCreateAssignment(clientId, maxSize, new LinearTraversal());
+    }
+
+    public ActiveAssignment getOrCreateAssignment(@NonNull String clientId, long maxSize,
+                                                  @NonNull TraversalPolicy traversalPolicy) {
         if(maxSize > size) { throw new IllegalArgumentException("target size exceeds wordlist size"); }
         if(maxSize <= 0) { throw new IllegalArgumentException("Invalid target size " + maxSize); }
 
@@ -96,52 +190,88 @@ public class AssignmentManager implements Cloneable {
             }
         }
 
-        long lastAssignmentEnd = 0;
-        TreeSet<Assignment> allAssignments = new TreeSet<>();
-        allAssignments.addAll(activeAssignments);
-        allAssignments.addAll(completedAssignments);
-        for(Assignment other : allAssignments) {
-            Log.trace(" - Assignment search: check: " + other, ", last: "+ lastAssignmentEnd);
-            if(lastAssignmentEnd < other.getBeginIndex()) {
-                // Found a free spot!
-                assignment =  new ActiveAssignment(clientId, lastAssignmentEnd,
-                        Math.min(other.getBeginIndex(), lastAssignmentEnd + maxSize));
-                break;
-            }
-            lastAssignmentEnd = Math.max(other.getEndIndex(), lastAssignmentEnd);
-        }
+        assignment = traversalPolicy.next(this, clientId, maxSize);
         if(assignment == null) {
-            if(allAssignments.isEmpty() || lastAssignmentEnd < size) {
-                assignment = new ActiveAssignment(clientId, lastAssignmentEnd,
-                        Math.min(size, lastAssignmentEnd + maxSize));
-            } else {
-                Log.warn(clientId, "Could not create assignment: no work left!");
-                return null;
-            }
+            Log.warn(clientId, "Could not create assignment: no work left!");
+            return null;
         }
         if(assignment.size() == 0) {
             Log.warn(clientId, "Created empty assignment " + assignment);
             return null;
         }
         putAssignment(assignment);
-        return assignment.size() > 0 ? assignment : null;
+        return assignment;
+    }
+
+    /**
+     * Returns an assignment of at most maxSize indices for the given client that starts at the lowest index in
+     * [fromIndex, toIndex) that is neither completed nor assigned, or null if there is none. The assignment is not
+     * added. Runs in O(k log n), k being the number of assignments that have to be skipped.
+     */
+    public ActiveAssignment findFreeAssignment(@NonNull String clientId, long fromIndex, long toIndex, long maxSize) {
+        long begin = Math.max(0, fromIndex);
+        toIndex = Math.min(size, toIndex);
+        // Skip the assignments covering begin, until it is free
+        boolean skipped = true;
+        while(skipped && begin < toIndex) {
+            skipped = false;
+            CompletedAssignment completed = completedAssignments.floor(new CompletedAssignment(begin, Long.MAX_VALUE));
+            if(completed != null && completed.getEndIndex() > begin) {
+                begin = completed.getEndIndex();
+                skipped = true;
+            }
+            ActiveAssignment active = activeAssignments.floor(new ActiveAssignment("", begin, Long.MAX_VALUE));
+            if(active != null && active.getEndIndex() > begin) {
+                begin = active.getEndIndex();
+                skipped = true;
+            }
+        }
+        if(begin >= toIndex) { return null; }
+        // The free range ends where the next assignment begins
+        long end = Math.min(toIndex, begin + maxSize);
+        CompletedAssignment nextCompleted = completedAssignments.ceiling(new CompletedAssignment(begin + 1, begin + 1));
+        if(nextCompleted != null) { end = Math.min(end, nextCompleted.getBeginIndex()); }
+        ActiveAssignment nextActive = activeAssignments.ceiling(new ActiveAssignment("", begin + 1, begin + 1));
+        if(nextActive != null) { end = Math.min(end, nextActive.getBeginIndex()); }
+        return new ActiveAssignment(clientId, begin, end);
     }
 
     public double getAssignmentCompletion(ActiveAssignment assignment) {
-        long completed = 0;
-        for(CompletedAssignment overlap : assignment.computeOverlap(completedAssignments)) {
-            long overlapBegin = Math.max(assignment.getBeginIndex(), overlap.getBeginIndex());
-            long overlapEnd = Math.min(assignment.getEndIndex(), overlap.getEndIndex());
-            if(overlapBegin < overlapEnd) {
-                completed += overlapEnd - overlapBegin;
+        return ((double) getCompletedSize(assignment.getBeginIndex(), assignment.getEndIndex()))
+                / ((double) assignment.size());
+    }
+
+    /**
+     * Returns the number of indices that are neither completed nor part of an active assignment.
+     */
+    @JsonIgnore
+    public long getUnassignedSize() {
+        long covered = 0, coveredUntil = 0;
+        Iterator<CompletedAssignment> completed = completedAssignments.iterator();
+        Iterator<ActiveAssignment> active = activeAssignments.iterator();
+        Assignment nextCompleted = completed.hasNext() ? completed.next() : null;
+        Assignment nextActive = active.hasNext() ? active.next() : null;
+        // Merge both sorted sets, counting each index covered by either of them once
+        while(nextCompleted != null || nextActive != null) {
+            Assignment current;
+            if(nextActive == null || (nextCompleted != null && nextCompleted.compareTo(nextActive) <= 0)) {
+                current = nextCompleted;
+                nextCompleted = completed.hasNext() ? completed.next() : null;
+            } else {
+                current = nextActive;
+                nextActive = active.hasNext() ? active.next() : null;
+            }
+            if(current.getEndIndex() > coveredUntil) {
+                covered += current.getEndIndex() - Math.max(current.getBeginIndex(), coveredUntil);
+                coveredUntil = current.getEndIndex();
             }
         }
-        return ((double) completed) / ((double) assignment.size());
+        return size - covered;
     }
 
     @Override
     public AssignmentManager clone() {
-        AssignmentManager clone = new AssignmentManager(size);
+        AssignmentManager clone = new AssignmentManager(this);
         for(ActiveAssignment assignment : activeAssignments) {
             ActiveAssignment assignmentClone = assignment.clone();
             clone.activeAssignments.add(assignmentClone);
@@ -154,25 +284,73 @@ public class AssignmentManager implements Cloneable {
         return clone;
     }
 
-    public void sanityCheckAssignments() {
-        sanityCheckAssignments(activeAssignments);
-        sanityCheckAssignments(completedAssignments);
+    /**
+     * Checks all assignments and returns a description of each violated invariant.
+     */
+    public List<String> sanityCheckAssignments() {
+        List<String> violations = new ArrayList<>();
+        sanityCheckAssignments(activeAssignments, violations);
+        sanityCheckAssignments(completedAssignments, violations);
+        if(getCompletedSizeBefore(size) != completedSize) {
+            violations.add("Coverage index counts " + getCompletedSizeBefore(size) + " completed indices, but "
+                    + completedSize + " are completed");
+        }
+        if(activeAssignmentsByClientId.size() != activeAssignments.size()) {
+            violations.add(activeAssignmentsByClientId.size() + " assignments mapped by client ID, but "
+                    + activeAssignments.size() + " active assignments");
+        }
+        for(Map.Entry<String, ActiveAssignment> entry : activeAssignmentsByClientId.entrySet()) {
+            if(!entry.getKey().equals(entry.getValue().getClientId())) {
+                violations.add("Assignment " + entry.getValue() + " is mapped by different client ID \""
+                        + entry.getKey() + "\"");
+            }
+            if(!activeAssignments.contains(entry.getValue())) {
+                violations.add("Assignment " + entry.getValue() + " is mapped by client ID, but not active");
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Like {@link #sanityCheckAssignments()}, but only checks the assignments overlapping or bordering
+     * [beginIndex, endIndex) and their direct neighbours, in O(log n + k).
+     */
+    public List<String> sanityCheckAssignments(long beginIndex, long endIndex) {
+        List<String> violations = new ArrayList<>();
+        sanityCheckAssignments(neighbourhood(activeAssignments,
+                new ActiveAssignment("", beginIndex, beginIndex), endIndex), violations);
+        sanityCheckAssignments(neighbourhood(completedAssignments,
+                new CompletedAssignment(beginIndex, beginIndex), endIndex), violations);
+        return violations;
+    }
+
+    private static <T extends Assignment> List<T> neighbourhood(TreeSet<T> set, T probe, long endIndex) {
+        // Include two predecessors, so that the pair formed by the direct predecessor and its own predecessor is
+        // checked for overlap as well
+        T previous = set.lower(probe);
+        if(previous != null && set.lower(previous) != null) { previous = set.lower(previous); }
+        List<T> result = new ArrayList<>();
+        for(T assignment : previous == null ? set : set.tailSet(previous, true)) {
+            result.add(assignment);
+            if(assignment.getBeginIndex() > endIndex) { break; }
+        }
+        return result;
     }
 
-    private void sanityCheckAssignments(TreeSet<? extends Assignment> set) {
+    private void sanityCheckAssignments(Iterable<? extends Assignment> sortedAssignments, List<String> violations) {
         Assignment previous = null;
-        for(Assignment current : set) {
+        for(Assignment current : sortedAssignments) {
             if(previous != null && previous.getEndIndex() > current.getBeginIndex()) {
-                Log.warn("", new IllegalStateException("Assignment " + current + " overlaps with " + previous));
+                violations.add("Assignment " + current + " overlaps with " + previous);
             }
             if(current.getBeginIndex() < 0 || current.getEndIndex() > size) {
-                Log.warn("", new IllegalStateException("Assignment " + current + " out of bounds!"));
+                violations.add("Assignment " + current + " out of bounds!");
             }
             if(current.getBeginIndex() > current.getEndIndex()) {
-                Log.warn("", new IllegalStateException("Assignment " + current + " endIndex is before beginIndex"));
+                violations.add("Assignment " + current + " endIndex is before beginIndex");
             }
             if(current.size() <= 0) {
-                Log.warn("", new IllegalStateException("Assignment " + current + " has invalid size " + current.size()));
+                violations.add("Assignment " + current + " has invalid size " + current.size());
             }
             previous = current;
         }
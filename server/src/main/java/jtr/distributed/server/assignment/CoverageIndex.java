@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+/**
+ * Counts how many indices before each block boundary are covered by a set of disjoint ranges. The keyspace is split
+ * into at most MAX_BLOCKS equally sized blocks. A range [b, e) contributes clamp(x - b, 0, e - b) to the count before
+ * boundary x, which is linear in the block number from the block of b up to the block of e and constant after. So
+ * adding or removing a range is two point updates on a Fenwick tree of slopes and one of intercepts, and a query is
+ * two prefix sums, both in O(log MAX_BLOCKS).
+ */
+class CoverageIndex implements Cloneable {
+    public static final int MAX_BLOCKS = 1 << 16;
+
+    private final long blockSize;
+    private final int blocks;
+    // Fenwick trees over the block boundaries 0..blocks, stored 1-based
+    private final long[] slopes, intercepts;
+
+    CoverageIndex(long size) {
+        this.blockSize = Math.max(1, (size + MAX_BLOCKS - 1) / MAX_BLOCKS);
+        this.blocks = (int) ((size + blockSize - 1) / blockSize);
+        this.slopes = new long[blocks + 2];
+        this.intercepts = new long[blocks + 2];
+    }
+
+    private CoverageIndex(CoverageIndex other) {
+        this.blockSize = other.blockSize;
+        this.blocks = other.blocks;
+        this.slopes = other.slopes.clone();
+        this.intercepts = other.intercepts.clone();
+    }
+
+    void add(long beginIndex, long endIndex) {
+        update(beginIndex, endIndex, 1);
+    }
+
+    void remove(long beginIndex, long endIndex) {
+        update(beginIndex, endIndex, -1);
+    }
+
+    private void update(long beginIndex, long endIndex, int sign) {
+        // First boundaries at or after the begin and end of the range
+        int beginBoundary = (int) ((beginIndex + blockSize - 1) / blockSize);
+        int endBoundary = (int) ((endIndex + blockSize - 1) / blockSize);
+        add(slopes, beginBoundary, sign * blockSize);
+        add(slopes, endBoundary, -sign * blockSize);
+        add(intercepts, beginBoundary, -sign * beginIndex);
+        add(intercepts, endBoundary, sign * endIndex);
+    }
+
+    /**
+     * Returns the block that contains the given index.
+     */
+    int blockOf(long index) {
+        return (int) Math.min(index / blockSize, blocks);
+    }
+
+    long blockBegin(int block) {
+        return block * blockSize;
+    }
+
+    /**
+     * Returns the number of covered indices before the beginning of the given block.
+     */
+    long coveredBefore(int block) {
+        return sum(slopes, block) * block + sum(intercepts, block);
+    }
+
+    private static void add(long[] tree, int boundary, long delta) {
+        for(int i = boundary + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private static long sum(long[] tree, int boundary) {
+        long sum = 0;
+        for(int i = boundary + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public CoverageIndex clone() {
+        return new CoverageIndex(this);
+    }
+}
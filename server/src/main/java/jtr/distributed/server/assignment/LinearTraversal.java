@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+/**
+ * Hands out the lowest free index first.
+ */
+public class LinearTraversal implements TraversalPolicy {
+    @Override
+    public ActiveAssignment next(AssignmentManager manager, String clientId, long maxSize) {
+        return manager.findFreeAssignment(clientId, 0, manager.getSize(), maxSize);
+    }
+}
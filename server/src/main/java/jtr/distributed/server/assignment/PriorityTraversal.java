@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+import jtr.distributed.core.wordlist.PriorityBlock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Searches the priority blocks supplied by the wordlist generator in order, then the rest of the keyspace linearly.
+ */
+public class PriorityTraversal implements TraversalPolicy {
+    private final long size;
+    private final List<PriorityBlock> blocks;
+
+    /**
+     * @param blocks Non-empty, disjoint blocks within [0, size), in the order they are searched in, which does not have
+     *               to be the order of their indices.
+     */
+    public PriorityTraversal(long size, List<PriorityBlock> blocks) {
+        double probability = 0;
+        for(PriorityBlock block : blocks) {
+            if(block.getBeginIndex() < 0 || block.getEndIndex() > size || block.getBeginIndex() >= block.getEndIndex()
+                    || !(block.getProbability() >= 0)) {
+                throw new IllegalArgumentException("Invalid priority block " + block);
+            }
+            probability += block.getProbability();
+        }
+        if(probability > 1.0 + 1e-9) { throw new IllegalArgumentException("Priority block probabilities sum up to "
+                + probability); }
+        // Overlapping blocks would be counted twice by getExpectedRemainingWork
+        List<PriorityBlock> sorted = new ArrayList<>(blocks);
+        sorted.sort(Comparator.comparingLong(PriorityBlock::getBeginIndex));
+        for(int i = 1; i < sorted.size(); i++) {
+            if(sorted.get(i).getBeginIndex() < sorted.get(i - 1).getEndIndex()) {
+                throw new IllegalArgumentException("Priority blocks " + sorted.get(i - 1) + " and " + sorted.get(i)
+                        + " overlap");
+            }
+        }
+        this.size = size;
+        this.blocks = new ArrayList<>(blocks);
+    }
+
+    @Override
+    public ActiveAssignment next(AssignmentManager manager, String clientId, long maxSize) {
+        for(PriorityBlock block : blocks) {
+            ActiveAssignment assignment = manager.findFreeAssignment(clientId, block.getBeginIndex(),
+                    block.getEndIndex(), maxSize);
+            if(assignment != null) { return assignment; }
+        }
+        return manager.findFreeAssignment(clientId, 0, size, maxSize);
+    }
+
+    /**
+     * Within each block and within the rest of the keyspace, the password is equally likely to be at any index that was
+     * not searched yet. The blocks are searched in order, so the password is expected after all earlier blocks plus
+     * half of its own block.
+     */
+    @Override
+    public double getExpectedRemainingWork(AssignmentManager manager) {
+        double expectedWork = 0, remainingProbability = 0, remainingBefore = 0, blockProbability = 0;
+        long blocksSize = 0;
+        for(PriorityBlock block : blocks) {
+            final long blockSize = block.getEndIndex() - block.getBeginIndex();
+            final long remaining = blockSize - manager.getCompletedSize(block.getBeginIndex(), block.getEndIndex());
+            final double probability = block.getProbability() * remaining / blockSize;
+            expectedWork += probability * (remainingBefore + remaining / 2.0);
+            remainingProbability += probability;
+            remainingBefore += remaining;
+            blockProbability += block.getProbability();
+            blocksSize += blockSize;
+        }
+        final long restSize = size - blocksSize;
+        if(restSize > 0) {
+            final double restRemaining = size - manager.getCompletedSize() - remainingBefore;
+            final double probability = Math.max(0, 1 - blockProbability) * restRemaining / restSize;
+            expectedWork += probability * (remainingBefore + restRemaining / 2.0);
+            remainingProbability += probability;
+        }
+        return remainingProbability > 0 ? expectedWork / remainingProbability : 0;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+/**
+ * Splits the keyspace into equally sized stripes and hands out the lowest free index of each stripe in turn, so that
+ * the fleet advances through all parts of the keyspace at the same rate.
+ */
+public class StridedTraversal implements TraversalPolicy {
+    private final long size;
+    private final int stripes;
+    private int nextStripe = 0;
+
+    public StridedTraversal(long size, int stripes) {
+        if(stripes <= 0) { throw new IllegalArgumentException("Invalid number of stripes " + stripes); }
+        this.size = size;
+        this.stripes = (int) Math.max(1, Math.min(stripes, size));
+    }
+
+    private long stripeBegin(int stripe) {
+        // Equal to size * stripe / stripes, without overflowing
+        return size / stripes * stripe + size % stripes * stripe / stripes;
+    }
+
+    @Override
+    public ActiveAssignment next(AssignmentManager manager, String clientId, long maxSize) {
+        for(int i = 0; i < stripes; i++) {
+            int stripe = (nextStripe + i) % stripes;
+            ActiveAssignment assignment = manager.findFreeAssignment(clientId, stripeBegin(stripe),
+                    stripeBegin(stripe + 1), maxSize);
+            if(assignment != null) {
+                nextStripe = (stripe + 1) % stripes;
+                return assignment;
+            }
+        }
+        return null;
+    }
+}
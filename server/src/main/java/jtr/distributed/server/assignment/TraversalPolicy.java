@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+import jtr.distributed.core.wordlist.WordlistGenerator;
+
+/**
+ * Decides which part of the keyspace is handed out next.
+ */
+public interface TraversalPolicy {
+    enum Type { LINEAR, STRIDED, PRIORITY }
+
+    static TraversalPolicy create(Type type, WordlistGenerator generator, int stripes) {
+        switch(type) {
+            case LINEAR: return new LinearTraversal();
+            case STRIDED: return new StridedTraversal(generator.getSize(), stripes);
+            case PRIORITY: return new PriorityTraversal(generator.getSize(), generator.getPriorityBlocks());
+            default: throw new IllegalArgumentException("Unknown traversal policy " + type);
+        }
+    }
+
+    /**
+     * Returns a new assignment of at most maxSize indices for the given client, without adding it to the manager, or
+     * null if nothing is left.
+     */
+    ActiveAssignment next(AssignmentManager manager, String clientId, long maxSize);
+
+    /**
+     * Returns the expected number of words that still have to be searched until the password is found, assuming it is
+     * in the wordlist at all. By default, all words are equally likely, so the order does not matter.
+     */
+    default double getExpectedRemainingWork(AssignmentManager manager) {
+        return (manager.getSize() - manager.getCompletedSize()) / 2.0;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.metrics;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A reentrant lock that records how long threads wait for it and how long they hold it. Only the outermost
+ * acquisition is recorded. Use with try-with-resources: {@code try(InstrumentedLock ignored = lock.acquire()) { }}
+ */
+public class InstrumentedLock implements AutoCloseable {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LatencyHistogram waitTimes, holdTimes;
+    // Only accessed by the thread holding the lock
+    private long acquiredAt;
+
+    public InstrumentedLock(LatencyHistogram waitTimes, LatencyHistogram holdTimes) {
+        this.waitTimes = waitTimes;
+        this.holdTimes = holdTimes;
+    }
+
+    public InstrumentedLock acquire() {
+        final long begin = System.nanoTime();
+        lock.lock();
+        if(lock.getHoldCount() == 1) {
+            acquiredAt = System.nanoTime();
+            waitTimes.record(acquiredAt - begin);
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if(lock.getHoldCount() == 1) {
+            holdTimes.record(System.nanoTime() - acquiredAt);
+        }
+        lock.unlock();
+    }
+}
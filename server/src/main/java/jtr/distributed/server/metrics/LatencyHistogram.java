@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with power-of-two buckets from 1 us to ~67 s. Recording is a single striped counter
+ * increment, so it can be called on hot paths from many threads.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 27;
+
+    // buckets[i] counts durations of at most 2^i us, the last bucket also counts everything above
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        // Index of the smallest power of two that is >= micros
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        buckets[Math.min(bucket, BUCKETS - 1)].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Appends this histogram in the Prometheus text format, with durations in seconds.
+     */
+    public void writeTo(StringBuilder out, String name, String labels) {
+        String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            cumulative += buckets[i].sum();
+            String le = i == BUCKETS - 1 ? "+Inf" : Double.toString((1L << i) / 1e6);
+            out.append(name).append("_bucket{").append(labelPrefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
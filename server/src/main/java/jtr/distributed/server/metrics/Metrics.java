@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.metrics;
+
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry for the server's metrics, rendered in the Prometheus text exposition format.
+ */
+public class Metrics {
+    private static final String PREFIX = "jtr_";
+
+    private static class Gauge {
+        final String help;
+        final LongSupplier supplier;
+
+        Gauge(String help, LongSupplier supplier) {
+            this.help = help;
+            this.supplier = supplier;
+        }
+    }
+
+    private static class Counter {
+        final String help;
+        final LongAdder value = new LongAdder();
+
+        Counter(String help) {
+            this.help = help;
+        }
+    }
+
+    private static class PersistenceMetrics {
+        final LatencyHistogram durations = new LatencyHistogram();
+        final LongAdder bytesWritten = new LongAdder();
+        volatile long lastBytes;
+    }
+
+    private final Map<String, LatencyHistogram> requestDurations = new ConcurrentSkipListMap<>();
+    private final Map<String, PersistenceMetrics> persistence = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+    @Getter
+    private final LatencyHistogram lockWaitTimes = new LatencyHistogram(), lockHoldTimes = new LatencyHistogram();
+
+    public void recordRequest(String route, long nanos) {
+        requestDurations.computeIfAbsent(route, r -> new LatencyHistogram()).record(nanos);
+    }
+
+    public void recordPersistence(String file, long nanos, long bytes) {
+        PersistenceMetrics metrics = persistence.computeIfAbsent(file, f -> new PersistenceMetrics());
+        metrics.durations.record(nanos);
+        metrics.bytesWritten.add(bytes);
+        metrics.lastBytes = bytes;
+    }
+
+    /**
+     * Registers a gauge that is evaluated on every scrape. The name is prefixed with "jtr_".
+     */
+    public void registerGauge(String name, String help, LongSupplier supplier) {
+        gauges.put(PREFIX + name, new Gauge(help, supplier));
+    }
+
+    /**
+     * Registers a counter and returns it for incrementing. The name is prefixed with "jtr_".
+     */
+    public LongAdder registerCounter(String name, String help) {
+        return counters.computeIfAbsent(PREFIX + name, n -> new Counter(help)).value;
+    }
+
+    public String render() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        header(out, "http_request_duration_seconds", "histogram", "Duration of HTTP requests, by route");
+        for(Map.Entry<String, LatencyHistogram> entry : requestDurations.entrySet()) {
+            entry.getValue().writeTo(out, PREFIX + "http_request_duration_seconds",
+                    "route=\"" + escape(entry.getKey()) + "\"");
+        }
+
+        header(out, "lock_wait_seconds", "histogram", "Time spent waiting for the server's global lock");
+        lockWaitTimes.writeTo(out, PREFIX + "lock_wait_seconds", "");
+        header(out, "lock_hold_seconds", "histogram", "Time the server's global lock was held");
+        lockHoldTimes.writeTo(out, PREFIX + "lock_hold_seconds", "");
+
+        header(out, "persistence_duration_seconds", "histogram", "Duration of writing state files, by file");
+        for(Map.Entry<String, PersistenceMetrics> entry : persistence.entrySet()) {
+            entry.getValue().durations.writeTo(out, PREFIX + "persistence_duration_seconds",
+                    "file=\"" + escape(entry.getKey()) + "\"");
+        }
+        header(out, "persistence_written_bytes_total", "counter", "Bytes written to state files, by file");
+        for(Map.Entry<String, PersistenceMetrics> entry : persistence.entrySet()) {
+            out.append(PREFIX).append("persistence_written_bytes_total{file=\"").append(escape(entry.getKey()))
+                    .append("\"} ").append(entry.getValue().bytesWritten.sum()).append('\n');
+        }
+        header(out, "persistence_size_bytes", "gauge", "Size of the most recently written state file, by file");
+        for(Map.Entry<String, PersistenceMetrics> entry : persistence.entrySet()) {
+            out.append(PREFIX).append("persistence_size_bytes{file=\"").append(escape(entry.getKey()))
+                    .append("\"} ").append(entry.getValue().lastBytes).append('\n');
+        }
+
+        for(Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(entry.getValue().help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(" gauge\n");
+            out.append(entry.getKey()).append(' ').append(entry.getValue().supplier.getAsLong()).append('\n');
+        }
+        for(Map.Entry<String, Counter> entry : counters.entrySet()) {
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(entry.getValue().help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(" counter\n");
+            out.append(entry.getKey()).append(' ').append(entry.getValue().value.sum()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.web;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.server.ServerMain;
+import jtr.distributed.server.StatusView;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseBroadcaster;
+import javax.ws.rs.sse.SseEventSink;
+
+/**
+ * Streams the status view to live dashboards as server-sent events. A new subscriber first gets the full view as a
+ * "snapshot" event, then a "delta" event with the changed rows whenever the view changed, at most once per
+ * STATUS_STREAM_INTERVAL. All subscribers share the same deltas, so the cost does not grow with the number of viewers.
+ * The snapshot is the view the next delta is based on, so a subscriber misses no change between the two.
+ */
+@Path("/ui/status/events")
+public class StatusStream {
+    public static final String LOG_STREAM = "status-stream";
+
+    private final ServerMain serverMain;
+    private volatile Sse sse = null;
+    private volatile SseBroadcaster broadcaster = null;
+    // Held while a delta is broadcast, so none is sent between registering a subscriber and sending its snapshot
+    private final Object publishLock = new Object();
+    // The view the last delta led to, guarded by publishLock
+    private StatusView published;
+
+    public StatusStream(ServerMain serverMain) {
+        this.serverMain = serverMain;
+
+        published = serverMain.getStatusView();
+        Thread publisherThread = new Thread(() -> {
+            while(true) {
+                try {
+                    Thread.sleep(ServerMain.STATUS_STREAM_INTERVAL.toMillis());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                StatusView current = serverMain.getStatusView();
+                synchronized(publishLock) {
+                    if(current.getVersion() == published.getVersion()) { continue; }
+                    SseBroadcaster broadcaster = this.broadcaster;
+                    if(broadcaster != null) {
+                        try {
+                            broadcaster.broadcast(sse.newEventBuilder()
+                                    .name("delta")
+                                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                                    .data(StatusView.Delta.class, current.diff(published))
+                                    .build());
+                        } catch (RuntimeException e) {
+                            Log.warn(LOG_STREAM, "Could not broadcast status delta", e);
+                        }
+                    }
+                    published = current;
+                }
+            }
+        });
+        publisherThread.setDaemon(true);
+        publisherThread.setName("status-stream");
+        publisherThread.start();
+    }
+
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void subscribe(@Context SseEventSink sink, @Context Sse sse) {
+        synchronized(this) {
+            if(broadcaster == null) {
+                this.sse = sse;
+                broadcaster = sse.newBroadcaster();
+            }
+        }
+        // Register first, deltas broadcast after the snapshot must reach the sink. Holding the lock keeps them back
+        // until the snapshot is written.
+        synchronized(publishLock) {
+            broadcaster.register(sink);
+            sink.send(sse.newEventBuilder()
+                    .name("snapshot")
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(StatusView.class, published)
+                    .build());
+        }
+    }
+}
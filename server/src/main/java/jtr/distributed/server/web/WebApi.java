@@ -7,19 +7,28 @@
 
 package jtr.distributed.server.web;
 
+import com.esotericsoftware.minlog.Log;
 import jtr.distributed.core.events.*;
 import jtr.distributed.server.assignment.ActiveAssignment;
+import jtr.distributed.server.assignment.AssignmentManager;
 import jtr.distributed.server.ServerMain;
+import jtr.distributed.server.StatusView;
+import jtr.distributed.server.ThroughputHistory;
+import jtr.distributed.server.VastStatistician;
+import jtr.distributed.server.WorkLedger;
 import lombok.AllArgsConstructor;
 
 import javax.ws.rs.*;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
+import javax.ws.rs.core.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @Path("/api")
 @AllArgsConstructor
 public class WebApi {
+    public static final int MAX_HEATMAP_CELLS = 10000;
+
     private final ServerMain serverMain;
 
     @GET
@@ -57,6 +66,28 @@ public class WebApi {
         serverMain.updateStatus(clientId, event);
     }
 
+    /**
+     * Updates the status of several clients at once, for clients that run several devices in one process.
+     *
+     * @return The IDs of the clients whose status was rejected.
+     */
+    @POST
+    @Path("/event/updateStatuses")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<String> updateStatuses(Map<String, StatusEvent> events) {
+        List<String> rejected = new ArrayList<>();
+        for(Map.Entry<String, StatusEvent> entry : events.entrySet()) {
+            try {
+                serverMain.updateStatus(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                Log.debug(entry.getKey(), "Rejected batched status: " + e.getMessage());
+                rejected.add(entry.getKey());
+            }
+        }
+        return rejected;
+    }
+
     @POST
     @Path("/getTask")
     @Produces(MediaType.APPLICATION_JSON)
@@ -66,7 +97,8 @@ public class WebApi {
             return Response.serverError().build();
         }
         return Response.ok(
-                new WordlistAssignment(activeAssignment.getBeginIndex(), activeAssignment.getEndIndex()),
+                new WordlistAssignment(activeAssignment.getBeginIndex(), activeAssignment.getEndIndex(),
+                        serverMain.getGeneratorSpec()),
                 MediaType.APPLICATION_JSON).build();
     }
 
@@ -78,6 +110,14 @@ public class WebApi {
         return serverMain.getVastStatistician().estimateGpuHashrate(clientId, hostId, gpuName, tflops);
     }
 
+    @POST
+    @Path("/estimateGpuHashrates")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<VastStatistician.HashrateEstimate> estimateGpuHashrates(List<VastStatistician.HashrateQuery> queries) {
+        return serverMain.getVastStatistician().estimateGpuHashrates(queries);
+    }
+
     @GET
     @Path("/getClientHashrate")
     @Produces(MediaType.TEXT_PLAIN)
@@ -88,6 +128,70 @@ public class WebApi {
                 .sum();
     }
 
+    @GET
+    @Path("/throughputHistory")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ThroughputHistory.History getThroughputHistory(@QueryParam("series") @DefaultValue("fleet") String series,
+                                                          @QueryParam("resolution") @DefaultValue("5") long resolutionSecs) {
+        ThroughputHistory.History history;
+        try {
+            history = serverMain.getThroughputHistory().getHistory(series,
+                    ThroughputHistory.Tier.forResolution(resolutionSecs));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        if(history == null) { throw new NotFoundException("Unknown series \"" + series + "\""); }
+        return history;
+    }
+
+    @GET
+    @Path("/throughputHistory/series")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<String> getThroughputHistorySeries() {
+        return serverMain.getThroughputHistory().getSeriesNames();
+    }
+
+    /**
+     * Returns the cached status view. Its ETag is the state version, so pollers sending If-None-Match get a 304 until
+     * something changed.
+     */
+    @GET
+    @Path("/status")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStatus(@Context Request request) {
+        StatusView view = serverMain.getStatusView();
+        EntityTag etag = new EntityTag(Long.toString(view.getVersion()));
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+        if(notModified != null) { return notModified.build(); }
+        return Response.ok(view, MediaType.APPLICATION_JSON).tag(etag).build();
+    }
+
+    @GET
+    @Path("/coverageHeatmap")
+    @Produces(MediaType.APPLICATION_JSON)
+    public AssignmentManager.CoverageHeatmap getCoverageHeatmap(@QueryParam("begin") @DefaultValue("0") long beginIndex,
+                                                                @QueryParam("end") Long endIndex,
+                                                                @QueryParam("cells") @DefaultValue("200") int cells) {
+        if(cells > MAX_HEATMAP_CELLS) { throw new BadRequestException("At most " + MAX_HEATMAP_CELLS + " cells"); }
+        try {
+            return serverMain.getCoverageHeatmap(beginIndex,
+                    endIndex != null ? endIndex : serverMain.getWordlistGenerator().getSize(), cells);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns how much of the work handed out was completed, redone, lost or abandoned, in total, per client and per
+     * GPU model.
+     */
+    @GET
+    @Path("/efficiency")
+    @Produces(MediaType.APPLICATION_JSON)
+    public WorkLedger.Report getEfficiency() {
+        return serverMain.getWorkLedger().getReport();
+    }
+
     @GET
     @Path("/isPasswordFound")
     @Produces(MediaType.TEXT_PLAIN)
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.web;
+
+import jtr.distributed.server.ServerMain;
+import lombok.AllArgsConstructor;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+@Path("/metrics")
+@AllArgsConstructor
+public class WebMetrics {
+    private final ServerMain serverMain;
+
+    @GET
+    @Produces("text/plain; version=0.0.4")
+    public String getMetrics() {
+        return serverMain.getMetrics().render();
+    }
+}
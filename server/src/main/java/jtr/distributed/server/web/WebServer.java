@@ -13,6 +13,7 @@ import freemarker.template.Configuration;
 import jtr.distributed.server.ServerMain;
 import jtr.distributed.server.web.util.ExceptionLogger;
 import jtr.distributed.server.web.util.JacksonObjectMapperProvider;
+import jtr.distributed.server.web.util.RequestMetricsListener;
 import org.glassfish.grizzly.http.server.CLStaticHttpHandler;
 import org.glassfish.grizzly.http.server.HttpHandler;
 import org.glassfish.grizzly.http.server.HttpServer;
@@ -48,6 +49,10 @@ public class WebServer {
         httpServer.getServerConfiguration().addHttpHandler(httpHandler, "/static/");
     }
 
+    public void stop() {
+        httpServer.shutdownNow();
+    }
+
     public static class JTRDistributedWebApplication extends ResourceConfig {
         @Context
         ServletContext servletContext;
@@ -69,8 +74,11 @@ public class WebServer {
 
             this.registerClasses(ExceptionLogger.class);
             this.registerInstances(
+                    new RequestMetricsListener(serverMain.getMetrics()),
                     new WebApi(serverMain),
-                    new WebUi(serverMain));
+                    new WebUi(serverMain),
+                    new StatusStream(serverMain),
+                    new WebMetrics(serverMain));
         }
     }
 }
@@ -7,23 +7,24 @@
 
 package jtr.distributed.server.web;
 
-import jtr.distributed.server.assignment.Assignment;
-import jtr.distributed.server.assignment.AssignmentManager;
 import jtr.distributed.server.ServerMain;
+import jtr.distributed.server.StatusView;
 import lombok.AllArgsConstructor;
-import lombok.val;
 import org.glassfish.jersey.server.mvc.Template;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
-import java.util.Comparator;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Path("/ui")
 @AllArgsConstructor
 public class WebUi {
+    // Number of client rows per page of the live dashboard
+    public static final int DASHBOARD_PAGE_SIZE = 50;
+    public static final Duration DASHBOARD_HEATMAP_INTERVAL = Duration.ofSeconds(10);
+
     private final ServerMain serverMain;
 
     @Path("/status")
@@ -31,41 +32,29 @@ public class WebUi {
     @Template(name = "/status.ftl")
     public Map<String, Object> showStatus() {
         Map<String, Object> args = new HashMap<>();
-        val currentState = serverMain.getState();
-        AssignmentManager assignmentManager = currentState.getFirst();
-        Map<String, ServerMain.ClientInfo> clients = currentState.getSecond();
+        StatusView view = serverMain.getStatusView();
 
-        args.put("assignments", assignmentManager);
-        args.put("clients", clients.values()
-                .stream().sorted(Comparator.comparing(ServerMain.ClientInfo::getClientId))
-                .collect(Collectors.toList()));
+        args.put("clients", view.getClients());
         args.put("targetDurationSecs", ServerMain.WORK_PACKAGE_TARGET_DURATION.getSeconds());
-
-        long numberCompleted = assignmentManager.getCompletedAssignments().stream()
-                .mapToLong(Assignment::size)
-                .sum();
-        args.put("progressPercent", ((double) numberCompleted / serverMain.getWordlistGenerator().getSize()) * 100.0);
-
-        Map<String, Long> averageHashrates = serverMain.getClientGuessesPerSecondAverages().getAverages();
-        args.put("averageHashrates", averageHashrates);
-
-        long hashrate = 0;
-        for(String clientId : clients.keySet()) {
-            Long clientHashrate = averageHashrates.get(clientId);
-            if(clientHashrate == null) { hashrate += clients.get(clientId).getLastGuessesPerSecond(); }
-            if(clientHashrate != null) {
-                hashrate += clientHashrate;
-            }
-        }
-        args.put("hashrate", hashrate);
-        if(hashrate > 0) {
-            long secondsRemaining = (serverMain.getWordlistGenerator().getSize() - numberCompleted) / hashrate;
-            args.put("timeRemaining",
-                    String.format("%dh %02dm", secondsRemaining / 3600, (secondsRemaining % 3600) / 60));
+        args.put("progressPercent", view.getProgressPercent());
+        args.put("hashrate", view.getHashrate());
+        if(view.getTimeRemaining() != null) {
+            args.put("timeRemaining", view.getTimeRemaining());
+            args.put("expectedTimeToCrack", view.getExpectedTimeToCrack());
         }
+        args.put("passwordFound", view.getPasswordFound());
+        args.put("efficiency", view.getEfficiency());
 
-        args.put("passwordFound", serverMain.getPasswordFound());
+        return args;
+    }
 
+    @Path("/dashboard")
+    @GET
+    @Template(name = "/dashboard.ftl")
+    public Map<String, Object> showDashboard() {
+        Map<String, Object> args = new HashMap<>();
+        args.put("pageSize", DASHBOARD_PAGE_SIZE);
+        args.put("heatmapIntervalMillis", DASHBOARD_HEATMAP_INTERVAL.toMillis());
         return args;
     }
 }
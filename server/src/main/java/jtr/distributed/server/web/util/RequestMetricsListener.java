@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.web.util;
+
+import jtr.distributed.server.metrics.Metrics;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import java.util.List;
+
+public class RequestMetricsListener implements ApplicationEventListener {
+    private final Metrics metrics;
+
+    public RequestMetricsListener(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onEvent(final ApplicationEvent applicationEvent) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent requestEvent) {
+        final long begin = System.nanoTime();
+        return event -> {
+            if(event.getType() == RequestEvent.Type.FINISHED) {
+                metrics.recordRequest(getRoute(event), System.nanoTime() - begin);
+            }
+        };
+    }
+
+    private static String getRoute(RequestEvent event) {
+        // Use the matched path templates rather than the actual path, so that path parameters don't create new routes
+        List<UriTemplate> templates = event.getUriInfo().getMatchedTemplates();
+        if(templates.isEmpty()) { return "unmatched"; }
+        StringBuilder route = new StringBuilder();
+        for(int i = templates.size() - 1; i >= 0; i--) {
+            route.append(templates.get(i).getTemplate());
+        }
+        return route.toString();
+    }
+}
@@ -0,0 +1,182 @@
+<#import "util/components.ftl" as components>
+
+<@components.header title="Live Status" />
+
+<div class="container">
+
+    <div id="password-found" class="alert alert-success d-none" role="alert"></div>
+
+    <h2>Progress: <span id="progress">-</span> %<span id="remaining"></span></h2>
+    <div class="progress" style="height: 30px;">
+        <div id="progress-bar" class="progress-bar" role="progressbar" style="width: 0; font-size: 12pt;"></div>
+    </div>
+    <p class="text-muted" id="expected-time-to-crack"></p>
+    <br>
+    <h4>Coverage</h4>
+    <canvas id="heatmap" width="1000" height="24" style="width: 100%; height: 24px;"
+            title="Completed fraction of each part of the keyspace"></canvas>
+    <br><br>
+    <h2>Clients <small class="text-muted" id="num-clients"></small>
+        <small class="text-muted float-end fs-6" id="connection">Connecting...</small></h2>
+    <table class="table table-sm table-striped">
+        <thead>
+            <tr>
+                <th scope="col" style="width: 20%">Client</th>
+                <th scope="col" style="width: 20%">GPU</th>
+                <th scope="col" style="width: 10%">Hashrate</th>
+                <th scope="col" style="width: 10%">Measured</th>
+                <th scope="col" style="width: 10%">Progress</th>
+                <th scope="col" style="width: 10%">Bottleneck</th>
+                <th scope="col" style="width: 30%">Last Guessed Password</th>
+            </tr>
+        </thead>
+        <tbody id="clients"></tbody>
+    </table>
+    <nav>
+        <ul class="pagination">
+            <li class="page-item"><a class="page-link" href="#" id="previous-page">Previous</a></li>
+            <li class="page-item disabled"><span class="page-link" id="page"></span></li>
+            <li class="page-item"><a class="page-link" href="#" id="next-page">Next</a></li>
+        </ul>
+    </nav>
+</div>
+
+<@components.footer>
+    <script>
+        const pageSize = ${pageSize?c};
+        // Client rows by client ID, and the sorted IDs for paging
+        const clients = new Map();
+        let clientIds = [];
+        let version = null;
+        let page = 0;
+
+        function kps(hashrate) { return Math.round(hashrate / 1000) + " kP/s"; }
+
+        function cell(row, tag, text) {
+            const element = document.createElement(tag);
+            element.textContent = text;
+            row.appendChild(element);
+        }
+
+        function renderSummary(status) {
+            document.getElementById("progress").textContent = status.progressPercent.toFixed(3);
+            document.getElementById("progress-bar").style.width = status.progressPercent.toFixed(2) + "%";
+            document.getElementById("remaining").textContent = status.hashrate > 0 && status.timeRemaining
+                ? ", " + status.timeRemaining + " remaining @ " + (status.hashrate / 1000000).toFixed(1) + " MP/s"
+                : "";
+            document.getElementById("expected-time-to-crack").textContent = status.expectedTimeToCrack
+                ? "Expected time to crack: " + status.expectedTimeToCrack : "";
+            const passwordFound = document.getElementById("password-found");
+            if(status.passwordFound !== null) {
+                passwordFound.textContent = "Password Found: \"" + status.passwordFound + "\"";
+                passwordFound.classList.remove("d-none");
+            }
+        }
+
+        // Only the rows of the current page are in the DOM
+        function renderPage() {
+            const pages = Math.max(1, Math.ceil(clientIds.length / pageSize));
+            page = Math.min(page, pages - 1);
+            const tbody = document.createElement("tbody");
+            tbody.id = "clients";
+            for(const clientId of clientIds.slice(page * pageSize, (page + 1) * pageSize)) {
+                const client = clients.get(clientId);
+                const row = document.createElement("tr");
+                cell(row, "th", client.clientId);
+                cell(row, "td", client.gpuModel !== null ? client.gpuModel : "Unknown");
+                cell(row, "td", kps(client.lastGuessesPerSecond));
+                cell(row, "td", client.measuredHashrate !== null ? kps(client.measuredHashrate) : "");
+                cell(row, "td", client.assignmentCompletion !== null
+                        ? (client.assignmentCompletion * 100).toFixed(2) + " %" : "");
+                // Without a profile, John generates the words itself (unless the client has not reported yet)
+                const profile = client.pipelineProfile;
+                cell(row, "td", profile !== null ? profile.bottleneck : client.lastGuessesPerSecond !== 0 ? "John" : "");
+                if(profile !== null) {
+                    row.lastChild.title = "Generator busy " + Math.round(profile.generatorBusyFraction * 100)
+                            + " %, blocked on John " + Math.round(profile.writerBlockedFraction * 100) + " %, "
+                            + Math.round(profile.wordsPerSecond / 1000) + " kW/s";
+                }
+                cell(row, "td", client.lastGuessedPassword !== null ? "\"" + client.lastGuessedPassword + "\"" : "");
+                tbody.appendChild(row);
+            }
+            document.getElementById("clients").replaceWith(tbody);
+            document.getElementById("num-clients").textContent = "(" + clientIds.length + ")";
+            document.getElementById("page").textContent = (page + 1) + " / " + pages;
+        }
+
+        function sortClientIds() {
+            clientIds = Array.from(clients.keys()).sort();
+        }
+
+        document.getElementById("previous-page").addEventListener("click", event => {
+            event.preventDefault();
+            if(page > 0) { page--; renderPage(); }
+        });
+        document.getElementById("next-page").addEventListener("click", event => {
+            event.preventDefault();
+            if((page + 1) * pageSize < clientIds.length) { page++; renderPage(); }
+        });
+
+        // The coverage heatmap changes slowly, so it is polled instead of streamed
+        function renderHeatmap() {
+            const canvas = document.getElementById("heatmap");
+            fetch("../api/coverageHeatmap?cells=" + canvas.width)
+                .then(response => response.json())
+                .then(heatmap => {
+                    const context = canvas.getContext("2d");
+                    const cellWidth = canvas.width / heatmap.coverage.length;
+                    heatmap.coverage.forEach((coverage, i) => {
+                        // From light grey (open) to green (completed)
+                        context.fillStyle = "hsl(" + (120 * coverage) + ", " + (60 * coverage) + "%, "
+                                + (90 - 50 * coverage) + "%)";
+                        context.fillRect(i * cellWidth, 0, Math.ceil(cellWidth), canvas.height);
+                    });
+                })
+                .catch(() => {});
+        }
+        renderHeatmap();
+        setInterval(renderHeatmap, ${heatmapIntervalMillis?c});
+
+        let events = null;
+        function connect() {
+            events = new EventSource("status/events");
+            events.onopen = () => { document.getElementById("connection").textContent = "Live"; };
+            events.onerror = () => { document.getElementById("connection").textContent = "Reconnecting..."; };
+            events.addEventListener("snapshot", onSnapshot);
+            events.addEventListener("delta", onDelta);
+        }
+        // Reconnecting makes the server send a new snapshot
+        function resync() {
+            events.close();
+            version = null;
+            connect();
+        }
+        function onSnapshot(event) {
+            const status = JSON.parse(event.data);
+            version = status.version;
+            clients.clear();
+            for(const client of status.clients) { clients.set(client.clientId, client); }
+            sortClientIds();
+            renderSummary(status);
+            renderPage();
+        }
+        function onDelta(event) {
+            const delta = JSON.parse(event.data);
+            if(version === null) { return; }
+            // Only applies on top of the view it was computed from, anything else means changes were missed
+            if(delta.baseVersion !== version) {
+                resync();
+                return;
+            }
+            version = delta.version;
+            const membershipChanged = delta.removedClients.length > 0
+                    || delta.changedClients.some(client => !clients.has(client.clientId));
+            for(const clientId of delta.removedClients) { clients.delete(clientId); }
+            for(const client of delta.changedClients) { clients.set(client.clientId, client); }
+            if(membershipChanged) { sortClientIds(); }
+            renderSummary(delta);
+            renderPage();
+        }
+        connect();
+    </script>
+</@components.footer>
@@ -1,10 +1,6 @@
 <#import "util/components.ftl" as components>
 
-<@components.header title="Status">
-    <#if !(passwordFound??)>
-        <meta http-equiv="refresh" content="2" >
-    </#if>
-</@components.header>
+<@components.header title="Status" />
 
 <div class="container">
 
@@ -16,44 +12,99 @@
 
     <h2>Progress: ${progressPercent?string["0.000"]} %<#if (hashrate > 0)>,
         ${timeRemaining} remaining @ ${(hashrate/1000000)?string["0.0"]} MP/s</#if></h2>
+    <#if expectedTimeToCrack??>
+        <p class="text-muted">Expected time to crack: ${expectedTimeToCrack}</p>
+    </#if>
     <div class="progress" style="height: 30px;">
         <div class="progress-bar" role="progressbar"
              style="width: ${progressPercent?string["0.00"]}%; font-size: 12pt;">
         </div>
     </div>
     <br>
-    <h2>Clients</h2>
+    <h2>Clients <a class="btn btn-sm btn-outline-secondary float-end" href="dashboard">Live dashboard</a></h2>
     <table class="table table-sm table-striped">
         <thead>
             <tr>
-                <th scope="col" style="width: 20%">Client</th>
-                <th scope="col" style="width: 20%">GPU</th>
+                <th scope="col" style="width: 15%">Client</th>
+                <th scope="col" style="width: 15%">GPU</th>
                 <th scope="col" style="width: 10%">Hashrate</th>
                 <th scope="col" style="width: 10%">Measured</th>
                 <th scope="col" style="width: 10%">Progress</th>
-                <th scope="col" style="width: 40%">Last Guessed Password</th>
+                <th scope="col" style="width: 10%">Bottleneck</th>
+                <th scope="col" style="width: 10%">Efficiency</th>
+                <th scope="col" style="width: 20%">Last Guessed Password</th>
             </tr>
         </thead>
         <tbody>
             <#list clients as client>
-                <#if assignments?api.getAssignment(client.clientId)??>
-                    <#assign assignment = assignments?api.getAssignment(client.clientId)>
-                </#if>
                 <tr>
                     <th scope="row">${client.clientId}</th>
                     <td>${client.gpuModel!"Unknown"}</td>
                     <td>${(client.lastGuessesPerSecond / 1000)?string["0"]} kP/s</td>
-                    <td><#if averageHashrates[client.clientId]??>
-                        ${(averageHashrates[client.clientId] / 1000)?string["0"]} kP/s
+                    <td><#if client.measuredHashrate??>
+                        ${(client.measuredHashrate / 1000)?string["0"]} kP/s
+                    </#if></td>
+                    <td><#if client.assignmentCompletion??>
+                            ${(client.assignmentCompletion * 100.0)?string["0.00"]} %
+                    </#if></td>
+                    <td><#if client.pipelineProfile??>
+                        <span title="Generator busy ${(client.pipelineProfile.generatorBusyFraction * 100.0)?string["0"]} %, blocked on John ${(client.pipelineProfile.writerBlockedFraction * 100.0)?string["0"]} %, ${(client.pipelineProfile.wordsPerSecond / 1000)?string["0"]} kW/s">${client.pipelineProfile.bottleneck}</span>
+                    <#elseif client.lastGuessesPerSecond != 0>
+                        <span class="text-muted" title="John generates the words itself">John</span>
                     </#if></td>
-                    <td><#if assignment??>
-                            ${(assignments?api.getAssignmentCompletion(assignment) * 100.0)?string["0.00"]} %
+                    <td><#if efficiency.clients[client.clientId]??>
+                        <@accountSummary efficiency.clients[client.clientId] />
                     </#if></td>
                     <td><#if client.lastGuessedPassword??>"${client.lastGuessedPassword}"</#if></td>
                 </tr>
             </#list>
         </tbody>
     </table>
+
+    <h2>Efficiency <small class="text-muted">since the server started</small></h2>
+    <table class="table table-sm table-striped">
+        <thead>
+            <tr>
+                <th scope="col" style="width: 20%">GPU</th>
+                <th scope="col" style="width: 10%" title="Words handed out">Assigned</th>
+                <th scope="col" style="width: 10%" title="Searched for the first time">Completed</th>
+                <th scope="col" style="width: 10%" title="Searched again, after someone else had completed them">Redone</th>
+                <th scope="col" style="width: 10%" title="Searched, but not reported before the client failed or timed out">Lost</th>
+                <th scope="col" style="width: 10%" title="Not searched before the assignment was removed, handed out again">Abandoned</th>
+                <th scope="col" style="width: 10%" title="Completed of all searched words">Efficiency</th>
+                <th scope="col" style="width: 10%" title="Time between assignments, of all time">Idle</th>
+                <th scope="col" style="width: 10%">Interrupted</th>
+            </tr>
+        </thead>
+        <tbody>
+            <#list efficiency.gpuModels as gpuModel, account>
+                <@accountRow gpuModel account />
+            </#list>
+            <@accountRow "Total" efficiency.total />
+        </tbody>
+    </table>
 </div>
 
+<#macro accountSummary account>
+    <span title="Redone ${words(account.redone)}, lost ${words(account.lost)}, abandoned ${words(account.abandoned)}, idle ${(account.idleFraction * 100.0)?string["0.0"]} % of the time">${(account.efficiency * 100.0)?string["0.0"]} %</span>
+</#macro>
+
+<#macro accountRow name account>
+    <tr>
+        <th scope="row">${name}</th>
+        <td>${words(account.assigned)}</td>
+        <td>${words(account.completed)}</td>
+        <td>${words(account.redone)}</td>
+        <td>${words(account.lost)}</td>
+        <td>${words(account.abandoned)}</td>
+        <td>${(account.efficiency * 100.0)?string["0.0"]} %</td>
+        <td>${(account.idleFraction * 100.0)?string["0.0"]} %</td>
+        <td>${account.interruptions} / ${account.assignments}</td>
+    </tr>
+</#macro>
+
+<#function words count>
+    <#return (count / 1000000)?string["0"] + " M">
+</#function>
+
 <@components.footer />
\ No newline at end of file
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server;
+
+import com.esotericsoftware.minlog.Log;
+import jtr.distributed.core.events.ErrorEvent;
+import jtr.distributed.core.events.PasswordNotFoundEvent;
+import jtr.distributed.core.events.StatusEvent;
+import jtr.distributed.core.wordlist.GeneratorSpec;
+import jtr.distributed.core.wordlist.WordlistGeneratorRegistry;
+import jtr.distributed.server.assignment.ActiveAssignment;
+import jtr.distributed.server.assignment.TraversalPolicy;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Drives clients through a ServerMain and checks what the work ledger booked for them.
+ */
+public class WorkLedgerTest {
+    private static final long PACKAGE_SIZE = 1000;
+
+    /**
+     * A clock that only moves when the test sets it.
+     */
+    private static class TestClock extends Clock {
+        long millis = 0;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    private final TestClock clock = new TestClock();
+    private ServerMain server;
+
+    @BeforeClass
+    public static void setUp() {
+        // Clients that fail are logged as warnings
+        Log.set(Log.LEVEL_ERROR);
+    }
+
+    @Test
+    public void booksReportedResumedAndInterruptedWork() throws IOException {
+        GeneratorSpec job = new GeneratorSpec("mask").with("mask", "?d?d?d?d");
+        server = new ServerMain(job, WordlistGeneratorRegistry.getDefault().create(job),
+                new ServerMain.SchedulingPolicy(PACKAGE_SIZE, PACKAGE_SIZE, PACKAGE_SIZE, Duration.ofMinutes(1),
+                        Duration.ofDays(1), Duration.ofDays(1), TraversalPolicy.Type.LINEAR, 1), clock, false);
+
+        // Client a searches 400 words, restarts and searches its assignment from the beginning, then finishes it
+        assertAssignment(0, at(0).getOrCreateWorkAssignment("a"));
+        at(1000).updateStatus("a", status(0, 399, 1000, "GPU-A"));
+        assertAssignment(0, at(2000).getOrCreateWorkAssignment("a"));
+        at(3000).updateStatus("a", status(0, 599, 1000, "GPU-A"));
+        at(4000).updateNotFound("a", new PasswordNotFoundEvent(0, PACKAGE_SIZE));
+
+        WorkLedger.Account a = server.getWorkLedger().getReport().getClients().get("a");
+        assertAccount(a, 1000, 1000, 400, 0, 0);
+        assertEquals(1, a.getAssignments());
+        assertEquals(0, a.getInterruptions());
+        // 400 + 600 + 400 words at 1000 p/s, idle before the first status of each run
+        assertEquals(1400, a.getSearchMillis());
+        assertEquals((1000 - 400) + (3000 - 2000 - 600), a.getIdleMillis());
+
+        // Client b searches 100 words at 100 p/s and fails two seconds after its status
+        assertAssignment(PACKAGE_SIZE, at(5000).getOrCreateWorkAssignment("b"));
+        at(6000).updateStatus("b", status(PACKAGE_SIZE, PACKAGE_SIZE + 99, 100, "GPU-B"));
+        at(8000).updateError("b", new ErrorEvent("John exited", new IllegalStateException()));
+
+        WorkLedger.Report report = server.getWorkLedger().getReport();
+        WorkLedger.Account b = report.getClients().get("b");
+        assertAccount(b, 1000, 100, 0, 200, 700);
+        assertEquals(1, b.getInterruptions());
+        assertEquals(1000 + 2000, b.getSearchMillis());
+        assertEquals(0, b.getIdleMillis());
+
+        assertAccount(report.getGpuModels().get("GPU-A"), 1000, 1000, 400, 0, 0);
+        assertAccount(report.getGpuModels().get("GPU-B"), 1000, 100, 0, 200, 700);
+        WorkLedger.Account total = report.getTotal();
+        assertAccount(total, 2000, 1100, 400, 200, 700);
+        assertEquals(2, total.getAssignments());
+        assertEquals(1, total.getInterruptions());
+        assertEquals(1100, server.getState().getFirst().getCompletedSize());
+    }
+
+    private ServerMain at(long millis) {
+        clock.millis = millis;
+        return server;
+    }
+
+    private StatusEvent status(long beginIndex, long lastGuessedIndex, long guessesPerSecond, String gpuModel) {
+        return new StatusEvent(guessesPerSecond, beginIndex, lastGuessedIndex, beginIndex + PACKAGE_SIZE,
+                Long.toString(lastGuessedIndex), gpuModel, clock.instant(), null);
+    }
+
+    private static void assertAssignment(long beginIndex, ActiveAssignment assignment) {
+        assertEquals(beginIndex, assignment.getBeginIndex());
+        assertEquals(beginIndex + PACKAGE_SIZE, assignment.getEndIndex());
+    }
+
+    private static void assertAccount(WorkLedger.Account account, long assigned, long completed, long redone,
+                                      long lost, long abandoned) {
+        assertEquals("Assigned", assigned, account.getAssigned());
+        assertEquals("Completed", completed, account.getCompleted());
+        assertEquals("Redone", redone, account.getRedone());
+        assertEquals("Lost", lost, account.getLost());
+        assertEquals("Abandoned", abandoned, account.getAbandoned());
+    }
+}
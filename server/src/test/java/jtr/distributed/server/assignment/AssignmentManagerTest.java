@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+import com.esotericsoftware.minlog.Log;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs random sequences of completions, assignments and removals and compares the range queries of the
+ * AssignmentManager with a bitmap of the keyspace.
+ */
+public class AssignmentManagerTest {
+    /**
+     * The keyspace as a bitmap, updated alongside the AssignmentManager.
+     */
+    private static class Bitmap {
+        final boolean[] completed;
+        final Map<String, long[]> active = new HashMap<>();
+
+        Bitmap(int size) {
+            completed = new boolean[size];
+        }
+
+        boolean isActive(long index) {
+            for(long[] range : active.values()) {
+                if(index >= range[0] && index < range[1]) { return true; }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the number of completed indices before each index from 0 to the size.
+         */
+        long[] completedBefore() {
+            long[] completedBefore = new long[completed.length + 1];
+            for(int i = 0; i < completed.length; i++) {
+                completedBefore[i + 1] = completedBefore[i] + (completed[i] ? 1 : 0);
+            }
+            return completedBefore;
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        // Running out of free work is expected and logged as a warning every time
+        Log.set(Log.LEVEL_ERROR);
+    }
+
+    @Test
+    public void coverageIndexMatchesBitmap() {
+        Random random = new Random(1);
+        // One index per block, several per block, and a last block that is only partially used
+        for(int size : new int[] {1, 1000, 3 * CoverageIndex.MAX_BLOCKS + 7}) {
+            CoverageIndex index = new CoverageIndex(size);
+            int[] coverage = new int[size];
+            List<long[]> ranges = new ArrayList<>();
+            for(int step = 0; step < 200; step++) {
+                if(!ranges.isEmpty() && random.nextInt(3) == 0) {
+                    long[] range = ranges.remove(random.nextInt(ranges.size()));
+                    index.remove(range[0], range[1]);
+                    for(long i = range[0]; i < range[1]; i++) { coverage[(int) i]--; }
+                } else {
+                    long begin = random.nextInt(size);
+                    long end = begin + random.nextInt((int) (size - begin) + 1);
+                    ranges.add(new long[] {begin, end});
+                    index.add(begin, end);
+                    for(long i = begin; i < end; i++) { coverage[(int) i]++; }
+                }
+                long covered = 0;
+                for(int i = 0; i < size; i++) {
+                    if(i == index.blockBegin(index.blockOf(i))) {
+                        assertEquals("Covered before block " + index.blockOf(i), covered,
+                                index.coveredBefore(index.blockOf(i)));
+                    }
+                    covered += coverage[i];
+                }
+                assertEquals(covered, index.coveredBefore(index.blockOf(size)));
+            }
+        }
+    }
+
+    @Test
+    public void rangeQueriesMatchBitmap() {
+        for(int size : new int[] {1, 97, 5000, 2 * CoverageIndex.MAX_BLOCKS + 3}) {
+            rangeQueriesMatchBitmap(size, new Random(size));
+        }
+    }
+
+    private void rangeQueriesMatchBitmap(int size, Random random) {
+        AssignmentManager manager = new AssignmentManager(size);
+        Bitmap bitmap = new Bitmap(size);
+        for(int step = 0; step < 300; step++) {
+            final int operation = random.nextInt(4);
+            final String clientId = "client" + random.nextInt(5);
+            if(operation == 0) {
+                long begin = random.nextInt(size);
+                long end = begin + 1 + random.nextInt((int) Math.min(size - begin, 1 + size / 32));
+                manager.markCompleted(begin, end);
+                for(long i = begin; i < end; i++) { bitmap.completed[(int) i] = true; }
+            } else if(operation == 1) {
+                ActiveAssignment assignment = manager.getOrCreateAssignment(clientId, 1 + random.nextInt(
+                        Math.max(1, size / 10)));
+                if(assignment != null) {
+                    bitmap.active.put(clientId, new long[] {assignment.getBeginIndex(), assignment.getEndIndex()});
+                } else {
+                    bitmap.active.remove(clientId);
+                }
+            } else if(operation == 2) {
+                assertEquals(bitmap.active.remove(clientId) != null, manager.removeAssignment(clientId));
+            } else {
+                // Completing a client's whole assignment, as a PasswordNotFoundEvent does
+                long[] range = bitmap.active.remove(clientId);
+                if(range != null) {
+                    manager.markCompleted(range[0], range[1]);
+                    manager.removeAssignment(clientId);
+                    for(long i = range[0]; i < range[1]; i++) { bitmap.completed[(int) i] = true; }
+                }
+            }
+            assertEquals(new ArrayList<String>(), manager.sanityCheckAssignments());
+            checkQueries(manager, bitmap, random);
+        }
+    }
+
+    private void checkQueries(AssignmentManager manager, Bitmap bitmap, Random random) {
+        final int size = bitmap.completed.length;
+        final long[] completedBefore = bitmap.completedBefore();
+        assertEquals(completedBefore[size], manager.getCompletedSize());
+
+        long unassigned = 0;
+        for(int i = 0; i < size; i++) {
+            if(!bitmap.completed[i] && !bitmap.isActive(i)) { unassigned++; }
+        }
+        assertEquals(unassigned, manager.getUnassignedSize());
+
+        for(int query = 0; query < 5; query++) {
+            long begin = random.nextInt(size + 1);
+            long end = begin + random.nextInt(size - (int) begin + 1);
+            assertEquals("Completed in [" + begin + ", " + end + ")",
+                    completedBefore[(int) end] - completedBefore[(int) begin], manager.getCompletedSize(begin, end));
+
+            long maxSize = 1 + random.nextInt(size);
+            checkFreeAssignment(manager, bitmap, begin, end, maxSize);
+        }
+
+        long begin = random.nextInt(size);
+        long end = begin + 1 + random.nextInt(size - (int) begin);
+        int cells = 1 + random.nextInt(20);
+        AssignmentManager.CoverageHeatmap heatmap = manager.getCoverageHeatmap(begin, end, cells);
+        cells = (int) Math.min(cells, end - begin);
+        assertEquals(cells, heatmap.getCoverage().length);
+        assertEquals(begin, heatmap.getBoundaries()[0]);
+        assertEquals(end, heatmap.getBoundaries()[cells]);
+        assertEquals(completedBefore[(int) end] - completedBefore[(int) begin], heatmap.getCompleted());
+        for(int cell = 0; cell < cells; cell++) {
+            long cellBegin = heatmap.getBoundaries()[cell], cellEnd = heatmap.getBoundaries()[cell + 1];
+            // Cells are equally sized up to rounding
+            assertTrue(Math.abs((cellEnd - cellBegin) - (end - begin) / cells) <= 1);
+            double expected = (double) (completedBefore[(int) cellEnd] - completedBefore[(int) cellBegin])
+                    / (cellEnd - cellBegin);
+            assertEquals("Coverage of cell " + cell, expected, heatmap.getCoverage()[cell], 1e-12);
+        }
+    }
+
+    private void checkFreeAssignment(AssignmentManager manager, Bitmap bitmap, long from, long to, long maxSize) {
+        ActiveAssignment free = manager.findFreeAssignment("probe", from, to, maxSize);
+        long begin = from;
+        while(begin < to && (bitmap.completed[(int) begin] || bitmap.isActive(begin))) { begin++; }
+        if(begin >= to) {
+            assertNull(free);
+            return;
+        }
+        long end = begin;
+        while(end < to && end - begin < maxSize && !bitmap.completed[(int) end] && !bitmap.isActive(end)) { end++; }
+        assertEquals("Free in [" + from + ", " + to + ") of at most " + maxSize, begin, free.getBeginIndex());
+        assertEquals("Free in [" + from + ", " + to + ") of at most " + maxSize, end, free.getEndIndex());
+    }
+}
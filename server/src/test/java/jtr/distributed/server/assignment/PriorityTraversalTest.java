@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2022-2023 Felix Kirchmann.
+ * Distributed under the MIT License (license terms are at http://opensource.org/licenses/MIT).
+ *
+ * NOTE: This was developed as a one-off - the code still needs a few days of love and refactoring to be properly usable.
+ */
+
+package jtr.distributed.server.assignment;
+
+import jtr.distributed.core.wordlist.PriorityBlock;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PriorityTraversalTest {
+    @Test
+    public void rejectsOverlappingBlocks() {
+        assertRejected(100, new PriorityBlock(0, 10, 0.1), new PriorityBlock(5, 15, 0.1));
+        // Overlaps are found regardless of the search order
+        assertRejected(100, new PriorityBlock(5, 15, 0.1), new PriorityBlock(0, 10, 0.1));
+        assertRejected(100, new PriorityBlock(0, 10, 0.1), new PriorityBlock(2, 3, 0.1));
+        assertRejected(100, new PriorityBlock(20, 30, 0.1), new PriorityBlock(0, 10, 0.1),
+                new PriorityBlock(20, 30, 0.1));
+    }
+
+    @Test
+    public void rejectsInvalidBlocks() {
+        assertRejected(100, new PriorityBlock(90, 101, 0.1));
+        assertRejected(100, new PriorityBlock(-1, 5, 0.1));
+        assertRejected(100, new PriorityBlock(5, 5, 0.1));
+        assertRejected(100, new PriorityBlock(0, 10, -0.1));
+        assertRejected(100, new PriorityBlock(0, 10, 0.6), new PriorityBlock(10, 20, 0.6));
+    }
+
+    @Test
+    public void searchesDisjointBlocksInTheGivenOrder() {
+        AssignmentManager manager = new AssignmentManager(100);
+        PriorityTraversal traversal = new PriorityTraversal(100, Arrays.asList(new PriorityBlock(50, 60, 0.5),
+                new PriorityBlock(10, 20, 0.3), new PriorityBlock(60, 61, 0.1)));
+        assertAssignment(50, 60, manager.getOrCreateAssignment("a", 20, traversal));
+        assertAssignment(10, 20, manager.getOrCreateAssignment("b", 20, traversal));
+        assertAssignment(60, 61, manager.getOrCreateAssignment("c", 20, traversal));
+        assertAssignment(0, 10, manager.getOrCreateAssignment("d", 20, traversal));
+        assertAssignment(20, 40, manager.getOrCreateAssignment("e", 20, traversal));
+    }
+
+    @Test
+    public void expectedRemainingWork() {
+        AssignmentManager manager = new AssignmentManager(100);
+        PriorityTraversal traversal = new PriorityTraversal(100,
+                Arrays.asList(new PriorityBlock(50, 60, 0.5)));
+        // Half the probability is in the block, searched first: 0.5 * 5 + 0.5 * (10 + 45)
+        assertEquals(30.0, traversal.getExpectedRemainingWork(manager), 1e-9);
+        // Only the rest is left
+        manager.markCompleted(50, 60);
+        assertEquals(45.0, traversal.getExpectedRemainingWork(manager), 1e-9);
+        // Half of the rest as well, the password is equally likely to be at any of the 45 remaining indices
+        manager.markCompleted(0, 45);
+        assertEquals(22.5, traversal.getExpectedRemainingWork(manager), 1e-9);
+    }
+
+    private static void assertRejected(long size, PriorityBlock... blocks) {
+        try {
+            new PriorityTraversal(size, Arrays.asList(blocks));
+            fail("Accepted " + Arrays.toString(blocks));
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static void assertAssignment(long beginIndex, long endIndex, ActiveAssignment assignment) {
+        assertEquals(beginIndex, assignment.getBeginIndex());
+        assertEquals(endIndex, assignment.getEndIndex());
+    }
+}
@@ -54,10 +54,8 @@ def save_state():
 def process_offers(offers):
     global total_dph, total_hashrate, total_real_hashrate, new_machines, new_hashrate, new_dph
 
-    for offer in offers:
-        offer["hashrate"] = vastlib.get_hashrate(client_id=offer["id"], host_id=offer["machine_id"],
-                                                 gpu_name=offer["gpu_name"], tflops=offer["total_flops"],
-                                                 num_gpus=offer["num_gpus"])
+    for offer, estimate in zip(offers, vastlib.get_hashrates(offers)):
+        offer["hashrate"] = estimate["estimatedHashrate"]
         max_price_orig = vastlib.max_price(offer["hashrate"])
         # If we can afford this as a fixed rental, do it
         if offer["dph_total"] <= max_price_orig * vastlib.fixed_bonus_factor_maxprice:
@@ -114,10 +112,9 @@ while True:
 
     # STEP 1: List machines
     machines = vastlib.list_machines()
-    for machine in machines:
-        hashrate = vastlib.get_hashrate(client_id=machine["id"], host_id=machine["machine_id"], gpu_name=machine["gpu_name"],
-                                        tflops=machine["total_flops"], num_gpus=machine["num_gpus"])
-        real_hashrate = vastlib.get_client_hashrate(client_id=machine["id"])
+    for machine, estimate in zip(machines, vastlib.get_hashrates(machines)):
+        hashrate = estimate["estimatedHashrate"]
+        real_hashrate = estimate["measuredHashrate"]
         max_price = vastlib.max_price(hashrate)
         if machine["is_bid"]:
             target_price = vastlib.target_price(hashrate=hashrate, min_bid=machine["min_bid"])
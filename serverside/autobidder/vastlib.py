@@ -2,7 +2,7 @@
 
 import subprocess
 import urllib
-from urllib.request import urlopen
+from urllib.request import urlopen, Request
 from datetime import datetime
 import time
 import json
@@ -127,6 +127,16 @@ def get_client_hashrate(client_id):
     return float(urlopen(api_url + "/getClientHashrate?"
                          + urllib.parse.urlencode({'clientId': client_id})).read().decode('utf-8'))
 
+def get_hashrates(items):
+    # Bulk version of get_hashrate and get_client_hashrate for a list of offers or machines, answered by the server
+    # in one request. Returns one dict with estimatedHashrate, measuredHashrate and guessesPerDollar per item.
+    queries = [{'clientId': str(item["id"]), 'hostId': item["machine_id"], 'gpuName': item["gpu_name"],
+                'totalFlops': item["total_flops"], 'numGpus': item["num_gpus"], 'pricePerHour': item["dph_total"]}
+               for item in items]
+    request = Request(api_url + "/estimateGpuHashrates", data=json.dumps(queries).encode('utf-8'),
+                      headers={'Content-Type': 'application/json'})
+    return json.loads(urlopen(request).read().decode('utf-8'))
+
 def is_password_found():
     result = urlopen(api_url + "/isPasswordFound").read().decode('utf-8')
     if "true" == result:
@@ -53,9 +53,6 @@ echo GPUS: $NUM_GPUS
 
 echo Setting up tmux
 tmux new-session -d -s ssh_tmux
-for i in $(seq 1 $NUM_GPUS)
-do
-	echo Starting instance $i
-	tmux new-window -n gpu-$i
-	tmux send-keys -t gpu-$i "jre/bin/java -jar $clientdl ${VAST_CONTAINERLABEL}-gpu${i} CHANGEME-API-KEY-HERE $workdir/john/run $i $workdir/$hashdl -lws=64 -gws=1000000 | tee -a gpu-$i.log" C-m
-done
\ No newline at end of file
+# One client process runs all GPUs, each GPU is a worker named ${VAST_CONTAINERLABEL}-gpu<n>
+tmux new-window -n gpus
+tmux send-keys -t gpus "jre/bin/java -jar $clientdl ${VAST_CONTAINERLABEL} CHANGEME-API-KEY-HERE $workdir/john/run all $workdir/$hashdl -lws=64 -gws=1000000 | tee -a gpus.log" C-m